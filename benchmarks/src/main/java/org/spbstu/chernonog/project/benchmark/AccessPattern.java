@@ -0,0 +1,106 @@
+package org.spbstu.chernonog.project.benchmark;
+
+import java.util.Random;
+
+/**
+ * Sequences of key indexes in {@code [0, size)} used to probe a map.
+ */
+public enum AccessPattern {
+
+    UNIFORM {
+        @Override
+        int[] probes(int size, int count, Random random) {
+            int[] probes = new int[count];
+            for (int i = 0; i < count; i++)
+                probes[i] = random.nextInt(size);
+            return probes;
+        }
+    },
+
+    // few hot keys take most of the accesses, hot keys are spread over the key space
+    ZIPF {
+        @Override
+        int[] probes(int size, int count, Random random) {
+            Zipf zipf = new Zipf(size, 0.99);
+            int[] probes = new int[count];
+            for (int i = 0; i < count; i++)
+                probes[i] = (int) (zipf.next(random) * 2654435761L % size);
+            return probes;
+        }
+    },
+
+    SEQUENTIAL {
+        @Override
+        int[] probes(int size, int count, Random random) {
+            int[] probes = new int[count];
+            int start = random.nextInt(size);
+            for (int i = 0; i < count; i++)
+                probes[i] = (start + i) % size;
+            return probes;
+        }
+    },
+
+    // random keys inside a small window which slowly moves through the key space
+    WORKING_SET {
+        @Override
+        int[] probes(int size, int count, Random random) {
+            int window = Math.min(size, 1024);
+            int[] probes = new int[count];
+            int start = random.nextInt(size);
+            for (int i = 0; i < count; i++)
+                probes[i] = (start + i / 64 + random.nextInt(window)) % size;
+            return probes;
+        }
+    },
+
+    // bit reversal permutation, no locality a splay tree can exploit
+    ADVERSARIAL {
+        @Override
+        int[] probes(int size, int count, Random random) {
+            int bits = 32 - Integer.numberOfLeadingZeros(Math.max(size - 1, 1));
+            int[] probes = new int[count];
+            for (int i = 0, j = 0; i < count; j++) {
+                int key = Integer.reverse(j & ((1 << bits) - 1)) >>> (32 - bits);
+                if (key < size)
+                    probes[i++] = key;
+            }
+            return probes;
+        }
+    };
+
+    abstract int[] probes(int size, int count, Random random);
+
+    // Gray et al., "Quickly generating billion-record synthetic databases"
+    private static final class Zipf {
+        private final int n;
+        private final double theta;
+        private final double alpha;
+        private final double zetaN;
+        private final double eta;
+
+        Zipf(int n, double theta) {
+            this.n = n;
+            this.theta = theta;
+            alpha = 1.0 / (1.0 - theta);
+            zetaN = zeta(n, theta);
+            eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta(2, theta) / zetaN);
+        }
+
+        private static double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++)
+                sum += 1 / Math.pow(i, theta);
+            return sum;
+        }
+
+        long next(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetaN;
+            if (uz < 1)
+                return 0;
+            if (uz < 1 + Math.pow(0.5, theta))
+                return 1;
+            return (long) (n * Math.pow(eta * u - eta + 1, alpha)) % n;
+        }
+    }
+}
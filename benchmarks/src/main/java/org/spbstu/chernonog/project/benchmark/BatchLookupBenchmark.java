@@ -0,0 +1,85 @@
+package org.spbstu.chernonog.project.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.spbstu.chernonog.project.SplayTreeMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A batch of keys looked up with {@link SplayTreeMap#getAll} against one {@code get} per key.
+ * The sweep shares the upper parts of the search paths, so it gains more as the batch gets denser.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class BatchLookupBenchmark {
+
+    private static final int BATCHES = 256;
+
+    @Param({"1000000"})
+    int size;
+
+    @Param({"1000", "20000"})
+    int batch;
+
+    @Param({"UNIFORM", "ZIPF"})
+    AccessPattern pattern;
+
+    SplayTreeMap<Long, Long> map;
+
+    List<List<Long>> batches;
+
+    int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        List<Long> keys = new ArrayList<>(size);
+        for (long i = 0; i < size; i++)
+            keys.add(i * 2);
+        Collections.shuffle(keys, random);
+        map = new SplayTreeMap<>();
+        for (Long key : keys)
+            map.put(key, key);
+        batches = new ArrayList<>();
+        for (int b = 0; b < BATCHES; b++) {
+            List<Long> probes = new ArrayList<>(batch);
+            for (int index : pattern.probes(size, batch, random))
+                probes.add(index * 2L + random.nextInt(2)); // half of the keys are missing
+            batches.add(probes);
+        }
+    }
+
+    private List<Long> nextBatch() {
+        List<Long> keys = batches.get(cursor);
+        cursor = (cursor + 1) & (BATCHES - 1);
+        return keys;
+    }
+
+    @Benchmark
+    public long getEach() {
+        long sum = 0;
+        for (Long key : nextBatch()) {
+            Long value = map.get(key);
+            if (value != null)
+                sum += value;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long getAll() {
+        long sum = 0;
+        for (Map.Entry<Long, Long> e : map.getAll(nextBatch()).entrySet())
+            sum += e.getValue();
+        return sum;
+    }
+}
@@ -0,0 +1,80 @@
+package org.spbstu.chernonog.project.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.spbstu.chernonog.project.BytesSplayTreeMap;
+import org.spbstu.chernonog.project.SplayTreeMap;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code SplayTreeMap<byte[], Long>} with an unsigned comparator against {@link BytesSplayTreeMap}
+ * on keys that share a common prefix of the given length, e.g. a tenant or table id.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class BytesKeyBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({"100000", "1000000"})
+    int size;
+
+    @Param({"0", "24"})
+    int commonPrefix;
+
+    @Param({"UNIFORM", "ZIPF"})
+    AccessPattern pattern;
+
+    SplayTreeMap<byte[], Long> comparatorMap;
+
+    BytesSplayTreeMap<Long> bytesMap;
+
+    byte[][] probes;
+
+    int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        comparatorMap = new SplayTreeMap<>(Arrays::compareUnsigned);
+        bytesMap = new BytesSplayTreeMap<>();
+        byte[][] keys = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            byte[] key = new byte[commonPrefix + 16];
+            Arrays.fill(key, 0, commonPrefix, (byte) 'p');
+            for (int j = commonPrefix; j < key.length; j++)
+                key[j] = (byte) random.nextInt(256);
+            keys[i] = key;
+            comparatorMap.put(key, (long) i);
+            bytesMap.put(key, (long) i);
+        }
+        Arrays.sort(keys, Arrays::compareUnsigned);
+
+        int[] indexes = pattern.probes(size, PROBES, random);
+        probes = new byte[PROBES][];
+        for (int i = 0; i < PROBES; i++)
+            probes[i] = keys[indexes[i]].clone();
+    }
+
+    private byte[] nextProbe() {
+        byte[] key = probes[cursor];
+        cursor = (cursor + 1) & (PROBES - 1);
+        return key;
+    }
+
+    @Benchmark
+    public Long comparatorGet() {
+        return comparatorMap.get(nextProbe());
+    }
+
+    @Benchmark
+    public Long bytesGet() {
+        return bytesMap.get(nextProbe());
+    }
+}
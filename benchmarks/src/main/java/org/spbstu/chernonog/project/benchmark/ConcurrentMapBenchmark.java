@@ -0,0 +1,100 @@
+package org.spbstu.chernonog.project.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.spbstu.chernonog.project.ConcurrentSplayTreeMap;
+import org.spbstu.chernonog.project.SplayTreeMap;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-threaded gets mixed with puts and removes on a shared map: {@link ConcurrentSplayTreeMap}
+ * against {@link ConcurrentSkipListMap} and a synchronized {@link SplayTreeMap}.
+ * The map holds the even keys {@code 0, 2, ..., 2 * (size - 1)}; writes put and remove odd keys,
+ * so the size stays close to the initial one. Runs on all available cores by default,
+ * pass {@code -t 1}, {@code -t 2}, ..., {@code -t 64} to measure the scaling.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class ConcurrentMapBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({"ConcurrentSplayTreeMap", "ConcurrentSkipListMap", "SynchronizedSplayTreeMap"})
+    String implementation;
+
+    @Param({"100000", "1000000"})
+    int size;
+
+    // percentage of gets, the rest are split evenly between puts and removes
+    @Param({"95", "50"})
+    int readPercent;
+
+    @Param({"UNIFORM", "ZIPF"})
+    AccessPattern pattern;
+
+    SortedMap<Integer, Integer> map;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        map = newMap(implementation);
+        for (int key = 0; key < size; key++)
+            map.put(2 * key, key);
+    }
+
+    static SortedMap<Integer, Integer> newMap(String implementation) {
+        switch (implementation) {
+            case "ConcurrentSplayTreeMap":
+                return new ConcurrentSplayTreeMap<>();
+            case "ConcurrentSkipListMap":
+                return new ConcurrentSkipListMap<>();
+            case "SynchronizedSplayTreeMap":
+                return Collections.synchronizedSortedMap(new SplayTreeMap<>());
+            default:
+                throw new IllegalArgumentException(implementation);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Probes {
+
+        Integer[] keys;
+
+        int cursor;
+
+        @Setup(Level.Trial)
+        public void setUp(ConcurrentMapBenchmark benchmark) {
+            Random random = new Random(ThreadLocalRandom.current().nextLong());
+            int[] indexes = benchmark.pattern.probes(benchmark.size, PROBES, random);
+            keys = new Integer[PROBES];
+            for (int i = 0; i < PROBES; i++)
+                keys[i] = 2 * indexes[i];
+        }
+
+        int next() {
+            int i = cursor;
+            cursor = (i + 1) & (PROBES - 1);
+            return i;
+        }
+    }
+
+    @Benchmark
+    public Integer operation(Probes probes) {
+        int i = probes.next();
+        Integer key = probes.keys[i];
+        int dice = ThreadLocalRandom.current().nextInt(100);
+        if (dice < readPercent)
+            return map.get(key);
+        Integer odd = key + 1;
+        return (dice & 1) == 0 ? map.put(odd, i) : map.remove(odd);
+    }
+}
@@ -0,0 +1,56 @@
+package org.spbstu.chernonog.project.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.spbstu.chernonog.project.SplayTreeMap;
+
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequential and parallel aggregation over the entry set of a {@link SplayTreeMap},
+ * with {@link TreeMap} as the baseline. The parallel stream scales only as far as
+ * the spliterator of the view splits.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ParallelStreamBenchmark {
+
+    @Param({"1000000", "5000000"})
+    int size;
+
+    SplayTreeMap<Long, Long> splayTreeMap;
+
+    TreeMap<Long, Long> treeMap;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        splayTreeMap = new SplayTreeMap<>();
+        treeMap = new TreeMap<>();
+        for (int i = 0; i < size; i++) {
+            long key = random.nextLong();
+            splayTreeMap.put(key, (long) i);
+            treeMap.put(key, (long) i);
+        }
+    }
+
+    @Benchmark
+    public long splayTreeMapSequential() {
+        return splayTreeMap.entrySet().stream().mapToLong(e -> e.getKey() ^ e.getValue()).sum();
+    }
+
+    @Benchmark
+    public long splayTreeMapParallel() {
+        return splayTreeMap.entrySet().parallelStream().mapToLong(e -> e.getKey() ^ e.getValue()).sum();
+    }
+
+    @Benchmark
+    public long treeMapParallel() {
+        return treeMap.entrySet().parallelStream().mapToLong(e -> e.getKey() ^ e.getValue()).sum();
+    }
+}
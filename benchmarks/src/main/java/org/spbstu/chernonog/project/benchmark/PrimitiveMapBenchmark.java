@@ -0,0 +1,91 @@
+package org.spbstu.chernonog.project.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.spbstu.chernonog.project.LongLongSplayTreeMap;
+import org.spbstu.chernonog.project.SplayTreeMap;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code SplayTreeMap<Long, Long>} against {@link LongLongSplayTreeMap} on the same
+ * key set and probe sequence, both holding the even keys as in {@link SortedMapBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class PrimitiveMapBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({"100000", "1000000"})
+    int size;
+
+    @Param({"UNIFORM", "ZIPF", "SEQUENTIAL"})
+    AccessPattern pattern;
+
+    SplayTreeMap<Long, Long> boxed;
+
+    LongLongSplayTreeMap primitive;
+
+    long[] probes;
+
+    int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        boxed = new SplayTreeMap<>();
+        primitive = new LongLongSplayTreeMap();
+        int[] keys = new int[size];
+        for (int i = 0; i < size; i++)
+            keys[i] = i;
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = keys[i];
+            keys[i] = keys[j];
+            keys[j] = t;
+        }
+        for (int key : keys) {
+            boxed.put(2L * key, (long) key);
+            primitive.put(2L * key, key);
+        }
+
+        int[] indexes = pattern.probes(size, PROBES, random);
+        probes = new long[PROBES];
+        for (int i = 0; i < PROBES; i++)
+            probes[i] = 2L * indexes[i];
+    }
+
+    private int next() {
+        int i = cursor;
+        cursor = (i + 1) & (PROBES - 1);
+        return i;
+    }
+
+    @Benchmark
+    public Long boxedGet() {
+        return boxed.get(probes[next()]);
+    }
+
+    @Benchmark
+    public long primitiveGet() {
+        return primitive.get(probes[next()]);
+    }
+
+    // overwrites the value of a present key, a new Long is boxed for each value
+    @Benchmark
+    public Long boxedPut() {
+        long key = probes[next()];
+        return boxed.put(key, key + 1);
+    }
+
+    @Benchmark
+    public long primitivePut() {
+        long key = probes[next()];
+        return primitive.put(key, key + 1);
+    }
+}
@@ -0,0 +1,74 @@
+package org.spbstu.chernonog.project.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.spbstu.chernonog.project.AggregatingSplayTreeMap;
+import org.spbstu.chernonog.project.Monoid;
+import org.spbstu.chernonog.project.SplayTreeMap;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sum of the values over a key range: {@link AggregatingSplayTreeMap#aggregate} against
+ * summing {@code subMap(lo, hi).values()} of a {@link SplayTreeMap}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class RangeAggregateBenchmark {
+
+    private static final int PROBES = 1 << 12;
+
+    @Param({"1000000"})
+    int size;
+
+    @Param({"100", "10000"})
+    int range;
+
+    SplayTreeMap<Long, Long> map;
+
+    AggregatingSplayTreeMap<Long, Long, Long> aggregatingMap;
+
+    long[] probes;
+
+    int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        map = new SplayTreeMap<>();
+        aggregatingMap = new AggregatingSplayTreeMap<>(Monoid.longSum(), v -> v);
+        for (int i = 0; i < size; i++) {
+            long key = random.nextInt(4 * size);
+            map.put(key, (long) i);
+            aggregatingMap.put(key, (long) i);
+        }
+        probes = new long[PROBES];
+        for (int i = 0; i < PROBES; i++)
+            probes[i] = random.nextInt(4 * size);
+    }
+
+    private long nextProbe() {
+        long key = probes[cursor];
+        cursor = (cursor + 1) & (PROBES - 1);
+        return key;
+    }
+
+    @Benchmark
+    public long subMapSum() {
+        long lo = nextProbe();
+        long sum = 0;
+        for (long v : map.subMap(lo, lo + 4L * range).values())
+            sum += v;
+        return sum;
+    }
+
+    @Benchmark
+    public long aggregate() {
+        long lo = nextProbe();
+        return aggregatingMap.aggregate(lo, lo + 4L * range);
+    }
+}
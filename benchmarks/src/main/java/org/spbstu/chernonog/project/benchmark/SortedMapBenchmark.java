@@ -0,0 +1,132 @@
+package org.spbstu.chernonog.project.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.spbstu.chernonog.project.SplayTreeMap;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link SplayTreeMap} with the JDK sorted maps.
+ * The map holds the even keys {@code 0, 2, ..., 2 * (size - 1)}, inserted in random order;
+ * probe keys are taken from the {@link AccessPattern} sequence.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class SortedMapBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    private static final int RANGE = 1000;
+
+    @Param({"SplayTreeMap", "TreeMap", "ConcurrentSkipListMap"})
+    String implementation;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    int size;
+
+    @Param({"UNIFORM", "ZIPF", "SEQUENTIAL", "WORKING_SET", "ADVERSARIAL"})
+    AccessPattern pattern;
+
+    SortedMap<Integer, Integer> map;
+
+    Integer[] probes;
+
+    Integer[] rangeEnds;
+
+    int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        map = newMap(implementation);
+        int[] keys = new int[size];
+        for (int i = 0; i < size; i++)
+            keys[i] = i;
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = keys[i];
+            keys[i] = keys[j];
+            keys[j] = t;
+        }
+        for (int key : keys)
+            map.put(2 * key, key);
+
+        int[] indexes = pattern.probes(size, PROBES, random);
+        probes = new Integer[PROBES];
+        rangeEnds = new Integer[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = 2 * indexes[i];
+            rangeEnds[i] = 2 * (indexes[i] + RANGE);
+        }
+    }
+
+    static SortedMap<Integer, Integer> newMap(String implementation) {
+        switch (implementation) {
+            case "SplayTreeMap":
+                return new SplayTreeMap<>();
+            case "TreeMap":
+                return new TreeMap<>();
+            case "ConcurrentSkipListMap":
+                return new ConcurrentSkipListMap<>();
+            default:
+                throw new IllegalArgumentException(implementation);
+        }
+    }
+
+    private int next() {
+        int i = cursor;
+        cursor = (i + 1) & (PROBES - 1);
+        return i;
+    }
+
+    @Benchmark
+    public Integer get() {
+        return map.get(probes[next()]);
+    }
+
+    // overwrites the value of a present key
+    @Benchmark
+    public Integer put() {
+        Integer key = probes[next()];
+        return map.put(key, key);
+    }
+
+    // the removed key is put back to keep the map size stable
+    @Benchmark
+    public Integer removeAndPut() {
+        Integer key = probes[next()];
+        Integer value = map.remove(key);
+        map.put(key, value);
+        return value;
+    }
+
+    // an access elsewhere first, so a self-adjusting map can't keep the least key on top
+    @Benchmark
+    public void firstKeyAfterGet(Blackhole bh) {
+        bh.consume(map.get(probes[next()]));
+        bh.consume(map.firstKey());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void iterate(Blackhole bh) {
+        for (Map.Entry<Integer, Integer> e : map.entrySet())
+            bh.consume(e.getValue());
+    }
+
+    // iterates over up to RANGE entries starting at a probe key
+    @Benchmark
+    public void subMap(Blackhole bh) {
+        int i = next();
+        for (Map.Entry<Integer, Integer> e : map.subMap(probes[i], rangeEnds[i]).entrySet())
+            bh.consume(e.getValue());
+    }
+}
@@ -0,0 +1,96 @@
+package org.spbstu.chernonog.project.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.spbstu.chernonog.project.SplayPolicy;
+import org.spbstu.chernonog.project.SplayTreeMap;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookups in {@link SplayTreeMap} under the different {@link SplayPolicy} choices.
+ * Throughput shows the average gain, the sampled latencies show how much of it
+ * comes from skipping restructuring at the cost of occasional deep walks.
+ * The map holds the even keys as in {@link SortedMapBenchmark}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Thread)
+public class SplayPolicyBenchmark {
+
+    private static final int PROBES = 1 << 16;
+
+    @Param({"ALWAYS", "SEMI_SPLAY", "DEPTH_THRESHOLD", "PROBABILISTIC"})
+    String policy;
+
+    @Param({"100000", "1000000"})
+    int size;
+
+    @Param({"UNIFORM", "ZIPF", "WORKING_SET"})
+    AccessPattern pattern;
+
+    SplayTreeMap<Integer, Integer> map;
+
+    Integer[] probes;
+
+    int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        map = new SplayTreeMap<>(null, newPolicy(policy, size));
+        int[] keys = new int[size];
+        for (int i = 0; i < size; i++)
+            keys[i] = i;
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = keys[i];
+            keys[i] = keys[j];
+            keys[j] = t;
+        }
+        for (int key : keys)
+            map.put(2 * key, key);
+
+        int[] indexes = pattern.probes(size, PROBES, random);
+        probes = new Integer[PROBES];
+        for (int i = 0; i < PROBES; i++)
+            probes[i] = 2 * indexes[i];
+    }
+
+    // the threshold is twice the depth of a balanced tree of the given size
+    static SplayPolicy newPolicy(String policy, int size) {
+        switch (policy) {
+            case "ALWAYS":
+                return SplayPolicy.always();
+            case "SEMI_SPLAY":
+                return SplayPolicy.semiSplay();
+            case "DEPTH_THRESHOLD":
+                return SplayPolicy.depthThreshold(2 * (32 - Integer.numberOfLeadingZeros(size)));
+            case "PROBABILISTIC":
+                return SplayPolicy.probabilistic(0.1);
+            default:
+                throw new IllegalArgumentException(policy);
+        }
+    }
+
+    private int next() {
+        int i = cursor;
+        cursor = (i + 1) & (PROBES - 1);
+        return i;
+    }
+
+    @Benchmark
+    public Integer get() {
+        return map.get(probes[next()]);
+    }
+
+    // overwrites the value of a present key
+    @Benchmark
+    public Integer put() {
+        Integer key = probes[next()];
+        return map.put(key, key);
+    }
+}
@@ -0,0 +1,448 @@
+package org.spbstu.chernonog.project;
+
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Splay tree map in which every entry caches the aggregate of the values in its subtree
+ * under a {@link Monoid}, e.g. their sum, maximum or count. The aggregates are restored
+ * bottom-up along the search path after every splay, insert and delete, so
+ * {@link #aggregate(Object, Object)} over a key range splays its two bounds and combines
+ * at most three cached aggregates, in amortized O(log n) however large the range is.
+ * <p>
+ * A value is measured once, when it is put; values must not be changed in place.
+ * Null keys are not permitted unless the comparator handles them.
+ */
+public class AggregatingSplayTreeMap<K, V, A> extends AbstractMap<K, V> {
+
+    private final Comparator<? super K> comparator;
+
+    private final Monoid<A> monoid;
+
+    private final Function<? super V, ? extends A> measure;
+
+    private int size = 0;
+
+    private int modCount = 0;
+
+    // changes whenever the tree is restructured, including splays made by lookups
+    private int splayCount = 0;
+
+    Entry<K, V, A> root;
+
+    // scratch node holding the left and right trees during a top-down splay
+    private final Entry<K, V, A> splayHeader = new Entry<>(null, null, null);
+
+    // nodes linked into the left and right trees by the current splay, their aggregates are restored afterwards
+    private Entry<K, V, A>[] leftSpine, rightSpine;
+
+    private transient EntrySet entrySet;
+
+
+    ///////CONSTRUCTORS
+
+    /**
+     * @param measure maps a value to its aggregate, e.g. {@code v -> 1L} to count entries
+     */
+    public AggregatingSplayTreeMap(Monoid<A> monoid, Function<? super V, ? extends A> measure) {
+        this(null, monoid, measure);
+    }
+
+    @SuppressWarnings("unchecked")
+    public AggregatingSplayTreeMap(Comparator<? super K> comparator, Monoid<A> monoid,
+                                   Function<? super V, ? extends A> measure) {
+        this.comparator = comparator;
+        this.monoid = Objects.requireNonNull(monoid);
+        this.measure = Objects.requireNonNull(measure);
+        leftSpine = (Entry<K, V, A>[]) new Entry[16];
+        rightSpine = (Entry<K, V, A>[]) new Entry[16];
+    }
+
+    ///////QUERY OPS
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getEntry(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Entry<K, V, A> p = getEntry(key);
+        return p == null ? null : p.value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        A own = measure.apply(value);
+        if (root == null) {
+            compare(key, key); // type (and possibly null) check
+            root = new Entry<>(key, value, own);
+            modCount++;
+            size = 1;
+            return null;
+        }
+        Entry<K, V, A> t = root = splay(root, key);
+        int cmp = compare(key, t.key);
+        if (cmp == 0) {
+            V oldValue = t.value;
+            t.value = value;
+            t.own = own;
+            update(t);
+            return oldValue;
+        }
+        Entry<K, V, A> e = new Entry<>(key, value, own);
+        if (cmp < 0) {
+            e.left = t.left;
+            e.right = t;
+            t.left = null;
+        } else {
+            e.right = t.right;
+            e.left = t;
+            t.right = null;
+        }
+        update(t);
+        update(e);
+        root = e;
+        modCount++;
+        size++;
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        Entry<K, V, A> e = getEntry(key);
+        if (e == null)
+            return null;
+        if (e.left == null) {
+            root = e.right;
+        } else {
+            Entry<K, V, A> r = e.right;
+            root = splay(e.left, key); // the greatest key of the left subtree comes up, its right is empty
+            root.right = r;
+            update(root);
+        }
+        e.left = e.right = null;
+        size--;
+        modCount++;
+        return e.value;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        root = null;
+        size = 0;
+        modCount++;
+    }
+
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    public K firstKey() {
+        Entry<K, V, A> p = root;
+        if (p == null)
+            throw new NoSuchElementException();
+        while (p.left != null)
+            p = p.left;
+        return (root = splay(root, p.key)).key;
+    }
+
+    public K lastKey() {
+        Entry<K, V, A> p = root;
+        if (p == null)
+            throw new NoSuchElementException();
+        while (p.right != null)
+            p = p.right;
+        return (root = splay(root, p.key)).key;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        for (EntryIterator it = new EntryIterator(); it.hasNext(); ) {
+            Entry<K, V, A> p = it.nextEntry();
+            action.accept(p.key, p.value);
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /////////AGGREGATES
+
+    // aggregate of all values, in constant time
+    public A aggregate() {
+        return aggregateOf(root);
+    }
+
+    /**
+     * Aggregate of the values with keys from {@code fromKey}, inclusive, to {@code toKey},
+     * exclusive, like {@link SortedMap#subMap(Object, Object)}.
+     */
+    public A aggregate(K fromKey, K toKey) {
+        return aggregate(fromKey, true, toKey, false);
+    }
+
+    /**
+     * Aggregate of the values with keys between the given bounds. The lower bound is splayed
+     * to the root and the upper one to the root of its right subtree; the range is then
+     * made of at most the root, the left subtree of that entry and the entry itself.
+     *
+     * @throws IllegalArgumentException if {@code fromKey} is greater than {@code toKey}
+     */
+    public A aggregate(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if (compare(fromKey, toKey) > 0)
+            throw new IllegalArgumentException("fromKey > toKey");
+        if (root == null)
+            return monoid.identity();
+        Entry<K, V, A> t = root = splay(root, fromKey);
+        int cmp = compare(t.key, fromKey);
+        A result = monoid.identity();
+        // the keys of the right subtree are greater than fromKey whatever the root is
+        if (cmp > 0 || (cmp == 0 && fromInclusive)) {
+            cmp = compare(t.key, toKey);
+            if (cmp > 0 || (cmp == 0 && !toInclusive))
+                return result;
+            result = t.own;
+        }
+        if (t.right == null)
+            return result;
+        Entry<K, V, A> r = t.right = splay(t.right, toKey);
+        // t keeps its aggregate, its subtrees hold the same entries in the same order
+        result = monoid.combine(result, aggregateOf(r.left));
+        cmp = compare(r.key, toKey);
+        if (cmp < 0 || (cmp == 0 && toInclusive))
+            result = monoid.combine(result, r.own);
+        return result;
+    }
+
+    /////////VIEWS
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        EntrySet es = entrySet;
+        return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            AggregatingSplayTreeMap.this.clear();
+        }
+    }
+
+    // in-order walk with an explicit stack of the entries whose left subtrees are being visited;
+    // when a lookup has splayed the tree meanwhile, the stack is rebuilt from the root for the
+    // next key. Entries are immutable, values are changed with put
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        @SuppressWarnings("unchecked")
+        Entry<K, V, A>[] stack = (Entry<K, V, A>[]) new Entry[16];
+        int depth;
+        Entry<K, V, A> lastReturned;
+        int expectedModCount = modCount;
+        int expectedSplayCount = splayCount;
+
+        EntryIterator() {
+            for (Entry<K, V, A> p = root; p != null; p = p.left)
+                push(p);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            Entry<K, V, A> e = nextEntry();
+            return new AbstractMap.SimpleImmutableEntry<>(e.key, e.value);
+        }
+
+        final Entry<K, V, A> nextEntry() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (depth == 0)
+                throw new NoSuchElementException();
+            Entry<K, V, A> e = stack[--depth];
+            if (expectedSplayCount != splayCount) {
+                seekHigher(e.key);
+            } else {
+                for (Entry<K, V, A> p = e.right; p != null; p = p.left)
+                    push(p);
+            }
+            return lastReturned = e;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            AggregatingSplayTreeMap.this.remove(lastReturned.key);
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+
+        // rebuilds the stack for the entries with keys greater than the given one
+        private void seekHigher(Object key) {
+            depth = 0;
+            for (Entry<K, V, A> p = root; p != null; ) {
+                if (compare(key, p.key) < 0) {
+                    push(p);
+                    p = p.left;
+                } else {
+                    p = p.right;
+                }
+            }
+            expectedSplayCount = splayCount;
+        }
+
+        private void push(Entry<K, V, A> e) {
+            if (depth == stack.length)
+                stack = Arrays.copyOf(stack, depth * 2);
+            stack[depth++] = e;
+        }
+    }
+
+
+    //INTERNAL OPS
+
+    private Entry<K, V, A> getEntry(Object key) {
+        if (root == null)
+            return null;
+        Entry<K, V, A> t = root = splay(root, key);
+        return compare(key, t.key) == 0 ? t : null;
+    }
+
+    private A aggregateOf(Entry<K, V, A> e) {
+        return e == null ? monoid.identity() : e.aggregate;
+    }
+
+    // recomputes the aggregate of the entry from its own value and its children
+    private void update(Entry<K, V, A> e) {
+        A a = e.left == null ? e.own : monoid.combine(e.left.aggregate, e.own);
+        e.aggregate = e.right == null ? a : monoid.combine(a, e.right.aggregate);
+    }
+
+    /**
+     * Top-down splay of the subtree rooted at {@code t}, as in {@link SplayTreeMap}.
+     * Instead of the subtree sizes, the entries linked into the left and right trees
+     * are recorded and their aggregates restored bottom-up once the trees are assembled,
+     * since an aggregate can't be taken apart like a size.
+     *
+     * @return new root of the subtree
+     */
+    private Entry<K, V, A> splay(Entry<K, V, A> t, Object key) {
+        Entry<K, V, A> header = splayHeader;
+        Entry<K, V, A> l = header; // greatest node of the left tree
+        Entry<K, V, A> r = header; // least node of the right tree
+        int lCount = 0, rCount = 0;
+        int cmp = compare(key, t.key);
+        for (; ; ) {
+            if (cmp < 0) {
+                Entry<K, V, A> y = t.left;
+                if (y == null)
+                    break;
+                cmp = compare(key, y.key);
+                if (cmp < 0) { //zig-zig: rotate right
+                    t.left = y.right;
+                    y.right = t;
+                    update(t);
+                    t = y;
+                    y = t.left;
+                    if (y == null)
+                        break;
+                    cmp = compare(key, y.key);
+                }
+                r.left = t; //link right
+                r = t;
+                if (rCount == rightSpine.length)
+                    rightSpine = Arrays.copyOf(rightSpine, rCount * 2);
+                rightSpine[rCount++] = t;
+                t = y;
+            } else if (cmp > 0) {
+                Entry<K, V, A> y = t.right;
+                if (y == null)
+                    break;
+                cmp = compare(key, y.key);
+                if (cmp > 0) { //zig-zig: rotate left
+                    t.right = y.left;
+                    y.left = t;
+                    update(t);
+                    t = y;
+                    y = t.right;
+                    if (y == null)
+                        break;
+                    cmp = compare(key, y.key);
+                }
+                l.right = t; //link left
+                l = t;
+                if (lCount == leftSpine.length)
+                    leftSpine = Arrays.copyOf(leftSpine, lCount * 2);
+                leftSpine[lCount++] = t;
+                t = y;
+            } else {
+                break;
+            }
+        }
+        //assemble
+        l.right = t.left;
+        r.left = t.right;
+        t.left = header.right;
+        t.right = header.left;
+        header.left = header.right = null;
+        // the entries linked last are the deepest, so they are restored first
+        while (lCount > 0) {
+            update(leftSpine[--lCount]);
+            leftSpine[lCount] = null;
+        }
+        while (rCount > 0) {
+            update(rightSpine[--rCount]);
+            rightSpine[rCount] = null;
+        }
+        update(t);
+        splayCount++;
+        return t;
+    }
+
+    @SuppressWarnings("unchecked")
+    final int compare(Object k1, Object k2) {
+        return comparator == null ? ((Comparable<? super K>) k1).compareTo((K) k2)
+                : comparator.compare((K) k1, (K) k2);
+    }
+
+    static final class Entry<K, V, A> {
+        final K key;
+        V value;
+        Entry<K, V, A> left;
+        Entry<K, V, A> right;
+        // measure of the value alone, and aggregate of the subtree in key order
+        A own;
+        A aggregate;
+
+        Entry(K key, V value, A own) {
+            this.key = key;
+            this.value = value;
+            this.own = own;
+            aggregate = own;
+        }
+    }
+}
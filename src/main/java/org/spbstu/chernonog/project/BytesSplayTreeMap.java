@@ -0,0 +1,360 @@
+package org.spbstu.chernonog.project;
+
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Sorted map from {@code byte[]} keys to object values, ordered as unsigned bytes
+ * (as {@link Arrays#compareUnsigned(byte[], byte[])}). Meant for long keys with common
+ * prefixes, which a {@code SplayTreeMap<byte[], V>} with a comparator reads from the
+ * first byte on every comparison. Here the map tracks how many leading bytes all its
+ * keys have in common, and each entry keeps the next 8 bytes of its key inline as a
+ * {@code long}, so most comparisons are settled without touching the key array. A search
+ * also remembers how many leading bytes the keys bounding the current subtree share with
+ * the searched key, so ties on the inline bytes are compared from there on instead of
+ * from the start.
+ * <p>
+ * A new key that does not share the common prefix shortens it, and the inline bytes of
+ * all entries are recomputed; that takes linear time and happens at most once per byte
+ * of the first key inserted.
+ * <p>
+ * Keys are not copied and must not be modified while in the map.
+ * Absent keys read as {@code null}, null values are permitted.
+ */
+public class BytesSplayTreeMap<V> {
+
+    static final int PREFIX_BYTES = Long.BYTES;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private int size = 0;
+
+    private int modCount = 0;
+
+    Entry<V> root;
+
+    // scratch node holding the left and right trees during a top-down splay
+    private final Entry<V> splayHeader = new Entry<>(EMPTY, null, 0);
+
+    // number of leading bytes all keys have in common, the inline prefixes start there
+    private int prefixOffset;
+
+    // the key being searched for, whether it shares the common prefix and its inline bytes if so
+    private byte[] searchKey;
+    private boolean searchShared;
+    private long searchPrefix;
+    // leading bytes the searched key shares with the nearest keys below and above the current subtree
+    private int lcpLow, lcpHigh;
+    // the searched key compared with the root left by the last splay
+    private int splayCmp;
+
+
+    ///////QUERY OPS
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(byte[] key) {
+        return getEntry(key) != null;
+    }
+
+    public V get(byte[] key) {
+        return getOrDefault(key, null);
+    }
+
+    public V getOrDefault(byte[] key, V defaultValue) {
+        Entry<V> p = getEntry(key);
+        return p == null ? defaultValue : p.value;
+    }
+
+    /**
+     * @return the previous value, or {@code null} if the key was absent
+     */
+    public V put(byte[] key, V value) {
+        Objects.requireNonNull(key);
+        if (root == null) {
+            prefixOffset = key.length;
+            root = new Entry<>(key, value, prefixOffset);
+            modCount++;
+            size = 1;
+            return null;
+        }
+        Entry<V> e = root = splay(root, key);
+        int cmp = splayCmp;
+        if (cmp == 0) {
+            V oldValue = e.value;
+            e.value = value;
+            return oldValue;
+        }
+        if (!searchShared)
+            shortenPrefix(Math.max(0, Arrays.mismatch(key, e.key)));
+        Entry<V> n = new Entry<>(key, value, prefixOffset);
+        if (cmp < 0) {
+            n.left = e.left;
+            n.right = e;
+            e.left = null;
+        } else {
+            n.right = e.right;
+            n.left = e;
+            e.right = null;
+        }
+        root = n;
+        modCount++;
+        size++;
+        return null;
+    }
+
+    /**
+     * @return the removed value, or {@code null} if the key was absent
+     */
+    public V remove(byte[] key) {
+        Entry<V> e = getEntry(key);
+        if (e == null)
+            return null;
+        if (e.left == null) {
+            root = e.right;
+        } else {
+            Entry<V> r = e.right;
+            root = splay(e.left, key); // the greatest key of the left subtree comes up, its right is empty
+            root.right = r;
+        }
+        e.left = e.right = null;
+        size--;
+        modCount++;
+        return e.value;
+    }
+
+    public void clear() {
+        size = 0;
+        root = null;
+        modCount++;
+    }
+
+    public byte[] firstKey() {
+        if (root == null)
+            throw new NoSuchElementException();
+        return (root = splay(root, EMPTY)).key; // the empty key is the least one
+    }
+
+    public byte[] lastKey() {
+        if (root == null)
+            throw new NoSuchElementException();
+        Entry<V> p = root;
+        while (p.right != null)
+            p = p.right;
+        return (root = splay(root, p.key)).key;
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(byte[] key, V value);
+    }
+
+    /**
+     * Passes the entries to the action in ascending key order, the tree is not restructured.
+     */
+    public void forEach(EntryConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        @SuppressWarnings("unchecked")
+        Entry<V>[] stack = (Entry<V>[]) new Entry[16];
+        int depth = 0;
+        Entry<V> p = root;
+        while (p != null || depth > 0) {
+            for (; p != null; p = p.left) {
+                if (depth == stack.length)
+                    stack = Arrays.copyOf(stack, depth * 2);
+                stack[depth++] = p;
+            }
+            p = stack[--depth];
+            action.accept(p.key, p.value);
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+            p = p.right;
+        }
+    }
+
+    // keys in ascending order
+    public byte[][] keys() {
+        byte[][] keys = new byte[size][];
+        int[] i = {0};
+        forEach((key, value) -> keys[i[0]++] = key);
+        return keys;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach((key, value) -> {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(Arrays.toString(key)).append('=').append(value);
+        });
+        return sb.append('}').toString();
+    }
+
+
+    //INTERNAL OPS
+    private Entry<V> getEntry(byte[] key) {
+        Objects.requireNonNull(key);
+        if (root == null)
+            return null;
+        Entry<V> e = root = splay(root, key);
+        return splayCmp == 0 ? e : null;
+    }
+
+    // the keys now share only the given number of leading bytes, the inline prefixes move there
+    private void shortenPrefix(int offset) {
+        if (offset >= prefixOffset)
+            return;
+        prefixOffset = offset;
+        @SuppressWarnings("unchecked")
+        Entry<V>[] stack = (Entry<V>[]) new Entry[16];
+        int depth = 0;
+        stack[depth++] = root;
+        while (depth > 0) {
+            Entry<V> p = stack[--depth];
+            p.prefix = prefix(p.key, offset);
+            if (depth + 2 > stack.length)
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            if (p.left != null)
+                stack[depth++] = p.left;
+            if (p.right != null)
+                stack[depth++] = p.right;
+        }
+    }
+
+    /**
+     * Top-down splay of the subtree rooted at {@code t}, as in {@link SplayTreeMap}
+     * without the subtree sizes. The result of comparing the key with the new root is left
+     * in {@code splayCmp}.
+     *
+     * @return new root of the subtree
+     */
+    private Entry<V> splay(Entry<V> t, byte[] key) {
+        int offset = prefixOffset;
+        searchKey = key;
+        // any key in the map has the common prefix, so the one at t will do
+        searchShared = key.length >= offset && Arrays.mismatch(key, 0, offset, t.key, 0, offset) < 0;
+        searchPrefix = searchShared ? prefix(key, offset) : 0;
+        lcpLow = lcpHigh = searchShared ? offset : 0;
+        Entry<V> header = splayHeader;
+        Entry<V> l = header; // greatest node of the left tree
+        Entry<V> r = header; // least node of the right tree
+        int cmp = compare(t);
+        for (; ; ) {
+            if (cmp < 0) {
+                Entry<V> y = t.left;
+                if (y == null)
+                    break;
+                cmp = compare(y);
+                if (cmp < 0) { //zig-zig: rotate right
+                    t.left = y.right;
+                    y.right = t;
+                    t = y;
+                    y = t.left;
+                    if (y == null)
+                        break;
+                    cmp = compare(y);
+                }
+                r.left = t; //link right
+                r = t;
+                t = y;
+            } else if (cmp > 0) {
+                Entry<V> y = t.right;
+                if (y == null)
+                    break;
+                cmp = compare(y);
+                if (cmp > 0) { //zig-zig: rotate left
+                    t.right = y.left;
+                    y.left = t;
+                    t = y;
+                    y = t.right;
+                    if (y == null)
+                        break;
+                    cmp = compare(y);
+                }
+                l.right = t; //link left
+                l = t;
+                t = y;
+            } else {
+                break;
+            }
+        }
+        //assemble
+        l.right = t.left;
+        r.left = t.right;
+        t.left = header.right;
+        t.right = header.left;
+        header.left = header.right = null;
+        splayCmp = cmp;
+        return t;
+    }
+
+    /**
+     * Compares the searched key with the key of the entry. Every key visited on the way
+     * down lies between the nearest keys compared below and above it, so the searched key
+     * shares at least {@code min(lcpLow, lcpHigh)} leading bytes with it; the entry then
+     * becomes the new bound on its side.
+     */
+    private int compare(Entry<V> e) {
+        byte[] a = searchKey, b = e.key;
+        int skip = Math.min(lcpLow, lcpHigh);
+        int shorter = Math.min(a.length, b.length);
+        int cmp, lcp;
+        if (searchShared && searchPrefix != e.prefix) {
+            // both keys have the common prefix; zero padding orders short keys before their extensions
+            cmp = Long.compareUnsigned(searchPrefix, e.prefix);
+            lcp = Math.min(prefixOffset + (Long.numberOfLeadingZeros(searchPrefix ^ e.prefix) >>> 3), shorter);
+        } else {
+            if (searchShared)
+                skip = Math.max(skip, Math.min(prefixOffset + PREFIX_BYTES, shorter));
+            int i = Arrays.mismatch(a, skip, a.length, b, skip, b.length);
+            if (i < 0) {
+                cmp = 0;
+                lcp = a.length;
+            } else {
+                lcp = skip + i;
+                cmp = lcp == shorter ? a.length - b.length
+                        : Byte.toUnsignedInt(a[lcp]) - Byte.toUnsignedInt(b[lcp]);
+            }
+        }
+        if (cmp < 0)
+            lcpHigh = lcp;
+        else if (cmp > 0)
+            lcpLow = lcp;
+        return cmp;
+    }
+
+    // 8 bytes from the offset, big-endian and zero padded, so prefixes compare as unsigned longs
+    static long prefix(byte[] key, int offset) {
+        long p = 0;
+        int n = Math.min(PREFIX_BYTES, key.length - offset);
+        for (int i = 0; i < n; i++)
+            p |= (key[offset + i] & 0xFFL) << (8 * (PREFIX_BYTES - 1 - i));
+        return p;
+    }
+
+    static final class Entry<V> {
+        final byte[] key;
+        // inline bytes of the key after the common prefix of the map
+        long prefix;
+        V value;
+        Entry<V> left;
+        Entry<V> right;
+
+        Entry(byte[] key, V value, int prefixOffset) {
+            this.key = key;
+            this.prefix = prefix(key, prefixOffset);
+            this.value = value;
+        }
+    }
+}
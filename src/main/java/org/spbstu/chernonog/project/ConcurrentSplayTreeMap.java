@@ -0,0 +1,586 @@
+package org.spbstu.chernonog.project;
+
+
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Thread-safe sorted map on top of a {@link SplayTreeMap}.
+ * <p>
+ * Lookups don't restructure the tree. They search it under an optimistic
+ * {@link StampedLock} stamp, which writes nothing to shared memory, and fall back
+ * to a read lock only when a writer got in the way. To let hot keys still move
+ * up, one hit in {@code splayOneIn} is recorded in a small lossy buffer, and about
+ * once per buffer length the recorded keys are splayed together, if the write lock
+ * is free at that moment. Readers never wait for splaying, and a batch invalidates
+ * the optimistic stamps of concurrent readers once instead of once per splay.
+ * Updates take the write lock.
+ * <p>
+ * Iterators are weakly consistent: they copy entries from the tree in small
+ * batches and never throw {@link ConcurrentModificationException}. Like
+ * {@link java.util.concurrent.ConcurrentSkipListMap}, the map doesn't accept null
+ * keys or values.
+ */
+public class ConcurrentSplayTreeMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>, SortedMap<K, V> {
+
+    private static final int DEFAULT_SPLAY_ONE_IN = 32;
+
+    // entries copied by an iterator under one read lock
+    private static final int BATCH = 64;
+
+    // slots of the buffer of hits to splay, a batch is splayed after about as many hits are recorded
+    private static final int SPLAY_BATCH = 64;
+
+    final SplayTreeMap<K, V> m;
+
+    // keys of recorded hits, a hit overwrites whatever its random slot holds
+    private final AtomicReferenceArray<Object> pendingSplays = new AtomicReferenceArray<>(SPLAY_BATCH);
+
+    private final StampedLock lock = new StampedLock();
+
+    private final int splayOneIn;
+
+
+    ///////CONSTRUCTORS
+
+    public ConcurrentSplayTreeMap() {
+        this(null, DEFAULT_SPLAY_ONE_IN);
+    }
+
+    public ConcurrentSplayTreeMap(Comparator<? super K> comparator) {
+        this(comparator, DEFAULT_SPLAY_ONE_IN);
+    }
+
+    /**
+     * @param splayOneIn one lookup hit in this many is recorded for splaying, 1 to record every hit
+     */
+    public ConcurrentSplayTreeMap(Comparator<? super K> comparator, int splayOneIn) {
+        if (splayOneIn < 1)
+            throw new IllegalArgumentException("splayOneIn < 1");
+        m = new SplayTreeMap<>(comparator);
+        this.splayOneIn = splayOneIn;
+    }
+
+    ///////QUERY OPS
+
+    @Override
+    public V get(Object key) {
+        V value = lookup(key);
+        if (value != null)
+            maybeSplay(key);
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        Objects.requireNonNull(value);
+        long stamp = lock.readLock();
+        try {
+            for (Iterator<V> it = new SplayTreeMap.ValueIterator<>(m, m.getFirstEntry(), null); it.hasNext(); )
+                if (value.equals(it.next()))
+                    return true;
+            return false;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int size = m.size();
+        if (lock.validate(stamp))
+            return size;
+        stamp = lock.readLock();
+        try {
+            return m.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        long stamp = lock.writeLock();
+        try {
+            return m.put(key, value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        Objects.requireNonNull(key);
+        long stamp = lock.writeLock();
+        try {
+            return m.remove(key);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            m.clear();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        long stamp = lock.writeLock();
+        try {
+            V oldValue = m.get(key);
+            if (oldValue == null)
+                m.put(key, value);
+            return oldValue;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        Objects.requireNonNull(key);
+        if (value == null)
+            return false;
+        long stamp = lock.writeLock();
+        try {
+            return m.remove(key, value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        long stamp = lock.writeLock();
+        try {
+            return m.replace(key, oldValue, newValue);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        long stamp = lock.writeLock();
+        try {
+            return m.replace(key, value);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /////////SORTED MAP METHODS
+    @Override
+    public Comparator<? super K> comparator() {
+        return m.comparator();
+    }
+
+    @Override
+    public K firstKey() {
+        long stamp = lock.readLock();
+        try {
+            return SplayTreeMap.key(m.getFirstEntry());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public K lastKey() {
+        long stamp = lock.readLock();
+        try {
+            return SplayTreeMap.key(m.getLastEntry());
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return new SubMap(false, fromKey, false, toKey);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return new SubMap(true, null, false, toKey);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return new SubMap(false, fromKey, true, null);
+    }
+
+    /////////VIEWS
+    private EntrySet entrySet;
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        EntrySet es = entrySet;
+        return (es != null) ? es : (entrySet = new EntrySet(null));
+    }
+
+    class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        // null for the whole map
+        private final SubMap range;
+
+        EntrySet(SubMap range) {
+            this.range = range;
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator(range);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            Object key = entry.getKey();
+            if (key == null || (range != null && !range.inRange(key)))
+                return false;
+            V value = ConcurrentSplayTreeMap.this.get(key);
+            return value != null && value.equals(entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            Object key = entry.getKey();
+            if (key == null || (range != null && !range.inRange(key)))
+                return false;
+            return ConcurrentSplayTreeMap.this.remove(key, entry.getValue());
+        }
+
+        @Override
+        public int size() {
+            return range == null ? ConcurrentSplayTreeMap.this.size() : range.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return range == null ? ConcurrentSplayTreeMap.this.isEmpty() : range.isEmpty();
+        }
+
+        @Override
+        public void clear() {
+            if (range == null)
+                ConcurrentSplayTreeMap.this.clear();
+            else
+                super.clear();
+        }
+    }
+
+    final class SubMap extends AbstractMap<K, V> implements SortedMap<K, V> {
+        // lo is inclusive, hi is exclusive
+        final K lo, hi;
+        final boolean fromStart, toEnd;
+
+        SubMap(boolean fromStart, K lo, boolean toEnd, K hi) {
+            if (!fromStart && !toEnd) {
+                if (m.compare(lo, hi) > 0)
+                    throw new IllegalArgumentException("fromKey > toKey");
+            } else {
+                if (!fromStart) // type check
+                    m.compare(lo, lo);
+                if (!toEnd)
+                    m.compare(hi, hi);
+            }
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.toEnd = toEnd;
+            this.hi = hi;
+        }
+
+        boolean tooLow(Object key) {
+            return !fromStart && m.compare(key, lo) < 0;
+        }
+
+        boolean tooHigh(Object key) {
+            return !toEnd && m.compare(key, hi) >= 0;
+        }
+
+        boolean inRange(Object key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        // the first entry in range, called under a lock
+        SplayTreeMap.Entry<K, V> lowest() {
+            SplayTreeMap.Entry<K, V> e = fromStart ? m.getFirstEntry() : m.getCeilingEntry(lo);
+            return (e == null || tooHigh(e.key)) ? null : e;
+        }
+
+        // the last entry in range, called under a lock
+        SplayTreeMap.Entry<K, V> highest() {
+            SplayTreeMap.Entry<K, V> e = toEnd ? m.getLastEntry() : m.getLowerEntry(hi);
+            return (e == null || tooLow(e.key)) ? null : e;
+        }
+
+        @Override
+        public int size() {
+            long stamp = lock.readLock();
+            try {
+                int count = toEnd ? m.size() : m.peekCountBelow(hi, false);
+                return fromStart ? count : Math.max(0, count - m.peekCountBelow(lo, false));
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        @Override
+        public boolean isEmpty() {
+            long stamp = lock.readLock();
+            try {
+                return lowest() == null;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inRange(key) && ConcurrentSplayTreeMap.this.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return !inRange(key) ? null : ConcurrentSplayTreeMap.this.get(key);
+        }
+
+        @Override
+        public V put(K key, V value) {
+            if (!inRange(key))
+                throw new IllegalArgumentException("key out of range");
+            return ConcurrentSplayTreeMap.this.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return !inRange(key) ? null : ConcurrentSplayTreeMap.this.remove(key);
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return m.comparator();
+        }
+
+        @Override
+        public K firstKey() {
+            long stamp = lock.readLock();
+            try {
+                return SplayTreeMap.key(lowest());
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        @Override
+        public K lastKey() {
+            long stamp = lock.readLock();
+            try {
+                return SplayTreeMap.key(highest());
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            if (!inRange(fromKey))
+                throw new IllegalArgumentException("fromKey out of range");
+            if (!toEnd && m.compare(toKey, hi) > 0 || tooLow(toKey))
+                throw new IllegalArgumentException("toKey out of range");
+            return new SubMap(false, fromKey, false, toKey);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            if (!toEnd && m.compare(toKey, hi) > 0 || tooLow(toKey))
+                throw new IllegalArgumentException("toKey out of range");
+            return new SubMap(fromStart, lo, false, toKey);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            if (!inRange(fromKey))
+                throw new IllegalArgumentException("fromKey out of range");
+            return new SubMap(false, fromKey, toEnd, hi);
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new EntrySet(this);
+        }
+    }
+
+
+    // ITERATORS
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        // null for the whole map
+        private final SubMap range;
+        private final List<Map.Entry<K, V>> batch = new ArrayList<>(BATCH);
+        // steps from entry to entry and resumes the next batch without walks from the root
+        private final SplayTreeMap.Finger<K, V> finger = new SplayTreeMap.Finger<>(m);
+        private int index;
+        private boolean started;
+        private boolean exhausted;
+        private Map.Entry<K, V> lastReturned;
+
+        EntryIterator(SubMap range) {
+            this.range = range;
+        }
+
+        // copies the entries following the current batch
+        private void fill() {
+            K after = batch.isEmpty() ? null : batch.get(batch.size() - 1).getKey();
+            batch.clear();
+            index = 0;
+            long stamp = lock.readLock();
+            try {
+                SplayTreeMap.Entry<K, V> e;
+                if (started) {
+                    e = finger.ceiling(after, false);
+                } else {
+                    e = range == null ? m.getFirstEntry() : range.lowest();
+                    if (e != null)
+                        finger.ceiling(e.key, true);
+                }
+                started = true;
+                while (e != null && batch.size() < BATCH) {
+                    if (range != null && range.tooHigh(e.getKey()))
+                        break;
+                    batch.add(new AbstractMap.SimpleImmutableEntry<>(e));
+                    e = finger.ceiling(e.key, false);
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            exhausted = batch.size() < BATCH;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (index < batch.size())
+                return true;
+            if (exhausted)
+                return false;
+            fill();
+            return index < batch.size();
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            lastReturned = batch.get(index++);
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null)
+                throw new IllegalStateException();
+            ConcurrentSplayTreeMap.this.remove(lastReturned.getKey());
+            lastReturned = null;
+        }
+    }
+
+
+    //INTERNAL OPS
+
+    // the value for the key or null, the tree is not restructured
+    private V lookup(Object key) {
+        Objects.requireNonNull(key);
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                V value = optimisticLookup(key);
+                if (lock.validate(stamp))
+                    return value;
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp))
+                    throw e; // not caused by a writer, e.g. ClassCastException
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            SplayTreeMap.Entry<K, V> e = m.peekEntry(key);
+            return e == null ? null : e.value;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // may read a tree which is being restructured, so the result is only good if the stamp validates
+    private V optimisticLookup(Object key) {
+        int steps = m.size() + 1; // no path is longer, a cycle seen mid-rotation can't hang the reader
+        SplayTreeMap.Entry<K, V> p = m.root;
+        while (p != null && steps-- > 0) {
+            int cmp = m.compare(key, p.key);
+            if (cmp < 0)
+                p = p.left;
+            else if (cmp > 0)
+                p = p.right;
+            else
+                return p.value;
+        }
+        return null;
+    }
+
+    // records some of the hits, now and then splays the recorded ones; never waits for the write lock
+    private void maybeSplay(Object key) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (splayOneIn != 1 && random.nextInt(splayOneIn) != 0)
+            return;
+        pendingSplays.lazySet(random.nextInt(SPLAY_BATCH), key);
+        if (random.nextInt(SPLAY_BATCH) == 0)
+            splayPending();
+    }
+
+    private void splayPending() {
+        long stamp = lock.tryWriteLock();
+        if (stamp == 0L)
+            return;
+        try {
+            for (int i = 0; i < SPLAY_BATCH; i++) {
+                Object key = pendingSplays.getAndSet(i, null);
+                if (key != null)
+                    m.containsKey(key);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+}
@@ -0,0 +1,808 @@
+package org.spbstu.chernonog.project;
+
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Sorted map whose entries may be given a time to live. An entry put with a TTL carries
+ * its deadline and is also kept in a binary heap ordered by deadline, next to the
+ * {@link SplayTreeMap} that orders the keys. Expired entries are removed lazily when
+ * a lookup or navigation meets them, and by {@link #sweep}, which pops them off the
+ * heap in expiry order, so its cost is proportional to the number of expired entries,
+ * not to the size of the map. Every {@link #put} also sweeps a few expired entries.
+ * <p>
+ * {@link #size()} sweeps first, so it counts live entries only. The views see live
+ * entries only, they step from key to key. Like the map, this class is not synchronized.
+ */
+public class ExpiringSplayTreeMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+    // expired entries removed by each put
+    static final int PUT_SWEEP = 4;
+
+    private static final int NO_DEADLINE = -1;
+
+    private final SplayTreeMap<K, Node<K, V>> tree;
+
+    private final LongSupplier clock;
+
+    // entries with a deadline, a min-heap by deadline
+    @SuppressWarnings("unchecked")
+    private Node<K, V>[] heap = (Node<K, V>[]) new Node[16];
+
+    private int heapSize;
+
+    private BiConsumer<? super K, ? super V> expirationListener;
+
+    private transient EntrySet<K, V> entrySet;
+
+    private transient SplayTreeMap.KeySet<K> navigableKeySet;
+
+    public ExpiringSplayTreeMap() {
+        this(null);
+    }
+
+    public ExpiringSplayTreeMap(Comparator<? super K> comparator) {
+        this(comparator, System::nanoTime);
+    }
+
+    /**
+     * @param nanoClock source of the current time in nanoseconds, like {@link System#nanoTime()}
+     */
+    public ExpiringSplayTreeMap(Comparator<? super K> comparator, LongSupplier nanoClock) {
+        tree = new SplayTreeMap<>(comparator);
+        clock = Objects.requireNonNull(nanoClock);
+    }
+
+    static final class Node<K, V> {
+        final K key;
+        V value;
+        long deadline;
+        int heapIndex = NO_DEADLINE;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Sets the action called with every entry removed because it expired.
+     */
+    public void setExpirationListener(BiConsumer<? super K, ? super V> listener) {
+        expirationListener = listener;
+    }
+
+    ///////QUERY OPS
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> n = liveNode(key);
+        return n == null ? null : n.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return liveNode(key) != null;
+    }
+
+    @Override
+    public int size() {
+        sweep();
+        return tree.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Maps the key to the value with no deadline; a deadline the key had is dropped.
+     */
+    @Override
+    public V put(K key, V value) {
+        return put(key, value, NO_DEADLINE, false);
+    }
+
+    /**
+     * Maps the key to the value until the given time to live passes.
+     */
+    public V put(K key, V value, long ttl, TimeUnit unit) {
+        return put(key, value, deadline(ttl, unit), true);
+    }
+
+    /**
+     * Gives a live entry a new time to live, e.g. on every use of a session.
+     *
+     * @return false if there is no live entry with the key
+     */
+    public boolean expireAfter(K key, long ttl, TimeUnit unit) {
+        Node<K, V> n = liveNode(key);
+        if (n == null)
+            return false;
+        setDeadline(n, deadline(ttl, unit), true);
+        return true;
+    }
+
+    /**
+     * @return nanoseconds the entry has left to live, {@link Long#MAX_VALUE} if it has
+     * no deadline, or -1 if there is no live entry with the key
+     */
+    public long remainingNanos(K key) {
+        Node<K, V> n = liveNode(key);
+        if (n == null)
+            return -1;
+        return n.heapIndex == NO_DEADLINE ? Long.MAX_VALUE : n.deadline - clock.getAsLong();
+    }
+
+    /**
+     * Removes the entry with the key; an expired one is passed to the expiration listener
+     * and null is returned, as if it had been swept first.
+     */
+    @Override
+    public V remove(Object key) {
+        Node<K, V> n = liveNode(key);
+        if (n == null)
+            return null;
+        tree.remove(key);
+        unlinkHeap(n);
+        return n.value;
+    }
+
+    @Override
+    public void clear() {
+        tree.clear();
+        Arrays.fill(heap, 0, heapSize, null);
+        heapSize = 0;
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return tree.comparator();
+    }
+
+    /////////SWEEP
+
+    /**
+     * Removes all expired entries.
+     *
+     * @return the number of entries removed
+     */
+    public int sweep() {
+        return sweep(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes at most the given number of expired entries, those that expired first;
+     * takes O(log n) time per entry removed.
+     *
+     * @return the number of entries removed
+     */
+    public int sweep(int limit) {
+        if (heapSize == 0)
+            return 0;
+        long now = clock.getAsLong();
+        int removed = 0;
+        while (removed < limit && heapSize > 0 && expired(heap[0], now)) {
+            Node<K, V> n = heap[0];
+            tree.remove(n.key);
+            unlinkHeap(n);
+            removed++;
+            if (expirationListener != null)
+                expirationListener.accept(n.key, n.value);
+        }
+        return removed;
+    }
+
+    /////////NAVIGATION
+
+    // the navigation methods remove the expired entries they pass
+
+    @Override
+    public Map.Entry<K, V> firstEntry() {
+        return skipExpired(tree.firstEntry(), true);
+    }
+
+    @Override
+    public Map.Entry<K, V> lastEntry() {
+        return skipExpired(tree.lastEntry(), false);
+    }
+
+    @Override
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return skipExpired(tree.ceilingEntry(key), true);
+    }
+
+    @Override
+    public Map.Entry<K, V> higherEntry(K key) {
+        return skipExpired(tree.higherEntry(key), true);
+    }
+
+    @Override
+    public Map.Entry<K, V> floorEntry(K key) {
+        return skipExpired(tree.floorEntry(key), false);
+    }
+
+    @Override
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return skipExpired(tree.lowerEntry(key), false);
+    }
+
+    @Override
+    public K firstKey() {
+        return checkedKey(firstEntry());
+    }
+
+    @Override
+    public K lastKey() {
+        return checkedKey(lastEntry());
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return keyOrNull(ceilingEntry(key));
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return keyOrNull(higherEntry(key));
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return keyOrNull(floorEntry(key));
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return keyOrNull(lowerEntry(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry() {
+        return removed(firstEntry());
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry() {
+        return removed(lastEntry());
+    }
+
+    /////////VIEWS
+
+    /**
+     * Live entries in key order. The iterator steps from key to key and is not fail-fast:
+     * it sees the entries live when it reaches their keys.
+     */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        EntrySet<K, V> es = entrySet;
+        return (es != null) ? es : (entrySet = new EntrySet<>(this));
+    }
+
+    @Override
+    public Set<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        SplayTreeMap.KeySet<K> nks = navigableKeySet;
+        return (nks != null) ? nks : (navigableKeySet = new SplayTreeMap.KeySet<>(this));
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        return new SubMap<>(this, true, null, false, true, null, false, true);
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        return new SubMap<>(this, false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return new SubMap<>(this, true, null, false, false, toKey, inclusive, false);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return new SubMap<>(this, false, fromKey, inclusive, true, null, false, false);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+    static final class EntrySet<K, V> extends AbstractSet<Map.Entry<K, V>> {
+        private final NavigableMap<K, V> m;
+
+        EntrySet(NavigableMap<K, V> map) {
+            m = map;
+        }
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator<>(m);
+        }
+
+        @Override
+        public int size() {
+            return m.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return m.isEmpty();
+        }
+
+        @Override
+        public void clear() {
+            if (m instanceof ExpiringSplayTreeMap)
+                m.clear();
+            else
+                super.clear();
+        }
+    }
+
+    // steps from key to key, so it tolerates changes to the map and removes the expired entries it passes
+    static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final NavigableMap<K, V> m;
+        Map.Entry<K, V> next;
+        Map.Entry<K, V> lastReturned;
+
+        EntryIterator(NavigableMap<K, V> map) {
+            m = map;
+            next = map.firstEntry();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next == null)
+                throw new NoSuchElementException();
+            lastReturned = next;
+            next = m.higherEntry(next.getKey());
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null)
+                throw new IllegalStateException();
+            m.remove(lastReturned.getKey());
+            lastReturned = null;
+        }
+    }
+
+    // a range of the map, in either direction; the bounds are in the order of the map
+    static final class SubMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+        private final ExpiringSplayTreeMap<K, V> m;
+        private final K lo, hi;
+        private final boolean fromStart, toEnd;
+        private final boolean loInclusive, hiInclusive;
+        private final boolean descending;
+
+        SubMap(ExpiringSplayTreeMap<K, V> m,
+               boolean fromStart, K lo, boolean loInclusive,
+               boolean toEnd, K hi, boolean hiInclusive, boolean descending) {
+            if (!fromStart && !toEnd) {
+                if (m.tree.compare(lo, hi) > 0)
+                    throw new IllegalArgumentException("fromKey > toKey");
+            } else {
+                if (!fromStart) // type check
+                    m.tree.compare(lo, lo);
+                if (!toEnd)
+                    m.tree.compare(hi, hi);
+            }
+            this.m = m;
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.toEnd = toEnd;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+        }
+
+        private boolean tooLow(Object key) {
+            if (fromStart)
+                return false;
+            int c = m.tree.compare(key, lo);
+            return c < 0 || (c == 0 && !loInclusive);
+        }
+
+        private boolean tooHigh(Object key) {
+            if (toEnd)
+                return false;
+            int c = m.tree.compare(key, hi);
+            return c > 0 || (c == 0 && !hiInclusive);
+        }
+
+        private boolean inRange(Object key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        // a bound of a narrower view may equal an exclusive bound of this one if it is exclusive too
+        private boolean inRange(Object key, boolean inclusive) {
+            if (inclusive)
+                return inRange(key);
+            return (fromStart || m.tree.compare(key, lo) >= 0) && (toEnd || m.tree.compare(key, hi) <= 0);
+        }
+
+        private Map.Entry<K, V> lowest() {
+            Map.Entry<K, V> e = fromStart ? m.firstEntry() : loInclusive ? m.ceilingEntry(lo) : m.higherEntry(lo);
+            return (e == null || tooHigh(e.getKey())) ? null : e;
+        }
+
+        private Map.Entry<K, V> highest() {
+            Map.Entry<K, V> e = toEnd ? m.lastEntry() : hiInclusive ? m.floorEntry(hi) : m.lowerEntry(hi);
+            return (e == null || tooLow(e.getKey())) ? null : e;
+        }
+
+        private Map.Entry<K, V> ceiling(K key) {
+            if (tooLow(key))
+                return lowest();
+            Map.Entry<K, V> e = m.ceilingEntry(key);
+            return (e == null || tooHigh(e.getKey())) ? null : e;
+        }
+
+        private Map.Entry<K, V> higher(K key) {
+            if (tooLow(key))
+                return lowest();
+            Map.Entry<K, V> e = m.higherEntry(key);
+            return (e == null || tooHigh(e.getKey())) ? null : e;
+        }
+
+        private Map.Entry<K, V> floor(K key) {
+            if (tooHigh(key))
+                return highest();
+            Map.Entry<K, V> e = m.floorEntry(key);
+            return (e == null || tooLow(e.getKey())) ? null : e;
+        }
+
+        private Map.Entry<K, V> lower(K key) {
+            if (tooHigh(key))
+                return highest();
+            Map.Entry<K, V> e = m.lowerEntry(key);
+            return (e == null || tooLow(e.getKey())) ? null : e;
+        }
+
+        private NavigableMap<K, V> view(boolean fromStart, K lo, boolean loInclusive,
+                                        boolean toEnd, K hi, boolean hiInclusive) {
+            if (!fromStart && !inRange(lo, loInclusive) || !toEnd && !inRange(hi, hiInclusive))
+                throw new IllegalArgumentException("key out of range");
+            return new SubMap<>(m, fromStart, lo, loInclusive, toEnd, hi, hiInclusive, descending);
+        }
+
+        @Override
+        public int size() {
+            m.sweep();
+            int count = toEnd ? m.tree.size() : m.tree.peekCountBelow(hi, hiInclusive);
+            return fromStart ? count : Math.max(0, count - m.tree.peekCountBelow(lo, !loInclusive));
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return lowest() == null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return inRange(key) && m.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            return !inRange(key) ? null : m.get(key);
+        }
+
+        @Override
+        public V put(K key, V value) {
+            if (!inRange(key))
+                throw new IllegalArgumentException("key out of range");
+            return m.put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return !inRange(key) ? null : m.remove(key);
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return descending ? Collections.reverseOrder(m.comparator()) : m.comparator();
+        }
+
+        @Override
+        public Map.Entry<K, V> firstEntry() {
+            return descending ? highest() : lowest();
+        }
+
+        @Override
+        public Map.Entry<K, V> lastEntry() {
+            return descending ? lowest() : highest();
+        }
+
+        @Override
+        public Map.Entry<K, V> ceilingEntry(K key) {
+            return descending ? floor(key) : ceiling(key);
+        }
+
+        @Override
+        public Map.Entry<K, V> higherEntry(K key) {
+            return descending ? lower(key) : higher(key);
+        }
+
+        @Override
+        public Map.Entry<K, V> floorEntry(K key) {
+            return descending ? ceiling(key) : floor(key);
+        }
+
+        @Override
+        public Map.Entry<K, V> lowerEntry(K key) {
+            return descending ? higher(key) : lower(key);
+        }
+
+        @Override
+        public K firstKey() {
+            return checkedKey(firstEntry());
+        }
+
+        @Override
+        public K lastKey() {
+            return checkedKey(lastEntry());
+        }
+
+        @Override
+        public K ceilingKey(K key) {
+            return keyOrNull(ceilingEntry(key));
+        }
+
+        @Override
+        public K higherKey(K key) {
+            return keyOrNull(higherEntry(key));
+        }
+
+        @Override
+        public K floorKey(K key) {
+            return keyOrNull(floorEntry(key));
+        }
+
+        @Override
+        public K lowerKey(K key) {
+            return keyOrNull(lowerEntry(key));
+        }
+
+        @Override
+        public Map.Entry<K, V> pollFirstEntry() {
+            return m.removed(firstEntry());
+        }
+
+        @Override
+        public Map.Entry<K, V> pollLastEntry() {
+            return m.removed(lastEntry());
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new EntrySet<>(this);
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return navigableKeySet();
+        }
+
+        @Override
+        public NavigableSet<K> navigableKeySet() {
+            return new SplayTreeMap.KeySet<>(this);
+        }
+
+        @Override
+        public NavigableSet<K> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        @Override
+        public NavigableMap<K, V> descendingMap() {
+            return new SubMap<>(m, fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending);
+        }
+
+        @Override
+        public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+            return descending
+                    ? view(false, toKey, toInclusive, false, fromKey, fromInclusive)
+                    : view(false, fromKey, fromInclusive, false, toKey, toInclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            return descending
+                    ? view(false, toKey, inclusive, toEnd, hi, hiInclusive)
+                    : view(fromStart, lo, loInclusive, false, toKey, inclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            return descending
+                    ? view(fromStart, lo, loInclusive, false, fromKey, inclusive)
+                    : view(false, fromKey, inclusive, toEnd, hi, hiInclusive);
+        }
+
+        @Override
+        public SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public SortedMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+    }
+
+    //INTERNAL OPS
+
+    private V put(K key, V value, long deadline, boolean hasDeadline) {
+        sweep(PUT_SWEEP);
+        Node<K, V> n = liveNode(key);
+        V oldValue = null;
+        if (n == null) {
+            n = new Node<>(key, value);
+            tree.put(key, n);
+        } else {
+            oldValue = n.value;
+            n.value = value;
+        }
+        setDeadline(n, deadline, hasDeadline);
+        return oldValue;
+    }
+
+    private long deadline(long ttl, TimeUnit unit) {
+        return clock.getAsLong() + unit.toNanos(ttl);
+    }
+
+    // the node of a live entry, an expired one met on the way is removed
+    private Node<K, V> liveNode(Object key) {
+        Node<K, V> n = tree.get(key);
+        if (n != null && expired(n, clock.getAsLong())) {
+            expire(n);
+            return null;
+        }
+        return n;
+    }
+
+    // the first live entry from e on, moving up or down in key order
+    private Map.Entry<K, V> skipExpired(Map.Entry<K, Node<K, V>> e, boolean ascending) {
+        long now = clock.getAsLong();
+        while (e != null && expired(e.getValue(), now)) {
+            expire(e.getValue());
+            e = ascending ? tree.higherEntry(e.getKey()) : tree.lowerEntry(e.getKey());
+        }
+        return e == null ? null : new AbstractMap.SimpleImmutableEntry<>(e.getKey(), e.getValue().value);
+    }
+
+    private static <K> K checkedKey(Map.Entry<K, ?> e) {
+        if (e == null)
+            throw new NoSuchElementException();
+        return e.getKey();
+    }
+
+    private static <K> K keyOrNull(Map.Entry<K, ?> e) {
+        return (e == null) ? null : e.getKey();
+    }
+
+    // removes the live entry, for the poll methods
+    private Map.Entry<K, V> removed(Map.Entry<K, V> e) {
+        if (e != null)
+            remove(e.getKey());
+        return e;
+    }
+
+    private void expire(Node<K, V> n) {
+        tree.remove(n.key);
+        unlinkHeap(n);
+        if (expirationListener != null)
+            expirationListener.accept(n.key, n.value);
+    }
+
+    private static boolean expired(Node<?, ?> n, long now) {
+        // compared by difference, nanoTime values may overflow
+        return n.heapIndex != NO_DEADLINE && n.deadline - now <= 0;
+    }
+
+    /////////HEAP
+
+    private void setDeadline(Node<K, V> n, long deadline, boolean hasDeadline) {
+        if (!hasDeadline) {
+            unlinkHeap(n);
+            return;
+        }
+        long old = n.deadline;
+        n.deadline = deadline;
+        if (n.heapIndex == NO_DEADLINE) {
+            if (heapSize == heap.length)
+                heap = Arrays.copyOf(heap, heapSize << 1);
+            siftUp(heapSize++, n);
+        } else if (deadline - old < 0) {
+            siftUp(n.heapIndex, n);
+        } else {
+            siftDown(n.heapIndex, n);
+        }
+    }
+
+    private void unlinkHeap(Node<K, V> n) {
+        int i = n.heapIndex;
+        if (i == NO_DEADLINE)
+            return;
+        n.heapIndex = NO_DEADLINE;
+        Node<K, V> last = heap[--heapSize];
+        heap[heapSize] = null;
+        if (last != n) {
+            siftDown(i, last);
+            if (heap[i] == last)
+                siftUp(i, last);
+        }
+    }
+
+    private void siftUp(int i, Node<K, V> n) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            Node<K, V> p = heap[parent];
+            if (p.deadline - n.deadline <= 0)
+                break;
+            heap[i] = p;
+            p.heapIndex = i;
+            i = parent;
+        }
+        heap[i] = n;
+        n.heapIndex = i;
+    }
+
+    private void siftDown(int i, Node<K, V> n) {
+        int half = heapSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            Node<K, V> c = heap[child];
+            int right = child + 1;
+            if (right < heapSize && heap[right].deadline - c.deadline < 0)
+                c = heap[child = right];
+            if (n.deadline - c.deadline <= 0)
+                break;
+            heap[i] = c;
+            c.heapIndex = i;
+            i = child;
+        }
+        heap[i] = n;
+        n.heapIndex = i;
+    }
+}
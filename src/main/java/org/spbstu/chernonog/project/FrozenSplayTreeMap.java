@@ -0,0 +1,122 @@
+package org.spbstu.chernonog.project;
+
+
+import java.util.*;
+
+/**
+ * Immutable snapshot of a {@link SplayTreeMap}, see {@link SplayTreeMap#freeze()}.
+ * Lookups and navigation walk the frozen tree without restructuring it, so any number
+ * of threads may read the snapshot at once, also while the source map keeps changing.
+ * Returned entries are immutable.
+ */
+public final class FrozenSplayTreeMap<K, V> extends AbstractMap<K, V> {
+
+    // holds the frozen tree, only its non-restructuring methods are ever called
+    private final SplayTreeMap<K, V> tree;
+
+    private transient EntrySet entrySet;
+
+    FrozenSplayTreeMap(Comparator<? super K> comparator, SplayTreeMap.Entry<K, V> root, int size) {
+        tree = new SplayTreeMap<>(comparator);
+        tree.replaceTree(root, size);
+    }
+
+    ///////QUERY OPS
+
+    @Override
+    public int size() {
+        return tree.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return tree.peekContainsKey(key);
+    }
+
+    @Override
+    public V get(Object key) {
+        return tree.peekGet(key);
+    }
+
+    public Comparator<? super K> comparator() {
+        return tree.comparator();
+    }
+
+    public K firstKey() {
+        return SplayTreeMap.key(tree.getFirstEntry());
+    }
+
+    public K lastKey() {
+        return SplayTreeMap.key(tree.getLastEntry());
+    }
+
+    public Map.Entry<K, V> firstEntry() {
+        return tree.peekFirstEntry();
+    }
+
+    public Map.Entry<K, V> lastEntry() {
+        return tree.peekLastEntry();
+    }
+
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return tree.peekCeilingEntry(key);
+    }
+
+    public Map.Entry<K, V> higherEntry(K key) {
+        return tree.peekHigherEntry(key);
+    }
+
+    public Map.Entry<K, V> floorEntry(K key) {
+        return tree.peekFloorEntry(key);
+    }
+
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return tree.peekLowerEntry(key);
+    }
+
+    // number of keys strictly less than the given one
+    public int rank(K key) {
+        return tree.peekCountBelow(key, false);
+    }
+
+    /**
+     * Returns a new modifiable map with the contents of the snapshot. It takes constant
+     * time, the new map copies the entries of the snapshot as it changes them.
+     */
+    public SplayTreeMap<K, V> thaw() {
+        SplayTreeMap<K, V> map = new SplayTreeMap<>(tree.comparator());
+        map.shareTree(tree.root, tree.size());
+        return map;
+    }
+
+    /////////VIEWS
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        EntrySet es = entrySet;
+        return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            SplayTreeMap.EntryIterator<K, V> it = new SplayTreeMap.EntryIterator<>(tree, tree.getFirstEntry(), null, false);
+            return new Iterator<Map.Entry<K, V>>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public Map.Entry<K, V> next() {
+                    return SplayTreeMap.exportEntry(it.nextEntry());
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return tree.size();
+        }
+    }
+}
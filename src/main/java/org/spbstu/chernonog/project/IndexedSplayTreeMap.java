@@ -0,0 +1,478 @@
+package org.spbstu.chernonog.project;
+
+
+import java.util.*;
+import java.util.function.BiConsumer;
+
+/**
+ * Splay tree map keeping its nodes in parallel arrays instead of entry objects:
+ * a node is a slot index into {@code left}, {@code right}, {@code keys} and {@code values}.
+ * Removed slots go onto a free list and are reused by later inserts, and the arrays
+ * grow in chunks, so once the map has reached its working size {@code put} and
+ * {@code remove} allocate nothing. Lookups splay top-down as in {@link SplayTreeMap}.
+ * Null keys are not permitted unless the comparator handles them.
+ */
+public class IndexedSplayTreeMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int NIL = -1;
+
+    // slot 0 is the scratch node holding the left and right trees during a top-down splay
+    private static final int HEADER = 0;
+
+    private static final int MIN_CHUNK = 16;
+
+    private final Comparator<? super K> comparator;
+
+    private int[] left;
+
+    private int[] right;
+
+    private Object[] keys;
+
+    private Object[] values;
+
+    int root = NIL;
+
+    // head of the free slot list, linked through right[]
+    private int free = NIL;
+
+    // slots below this have been handed out at least once
+    private int used = 1;
+
+    private int size = 0;
+
+    private int modCount = 0;
+
+    // changes whenever the tree is restructured, including splays made by lookups
+    private int splayCount = 0;
+
+    private transient EntrySet entrySet;
+
+
+    ///////CONSTRUCTORS
+
+    public IndexedSplayTreeMap() {
+        this(null, MIN_CHUNK);
+    }
+
+    public IndexedSplayTreeMap(Comparator<? super K> comparator) {
+        this(comparator, MIN_CHUNK);
+    }
+
+    /**
+     * @param initialCapacity number of entries the map holds before its arrays grow
+     */
+    public IndexedSplayTreeMap(Comparator<? super K> comparator, int initialCapacity) {
+        if (initialCapacity < 0)
+            throw new IllegalArgumentException("initialCapacity < 0");
+        this.comparator = comparator;
+        int capacity = initialCapacity + 1;
+        left = new int[capacity];
+        right = new int[capacity];
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        left[HEADER] = right[HEADER] = NIL;
+    }
+
+    ///////QUERY OPS
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getSlot(key) != NIL;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int p = getSlot(key);
+        return p == NIL ? null : (V) values[p];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(K key, V value) {
+        if (root == NIL) {
+            compare(key, key); // type (and possibly null) check
+            root = newSlot(key, value, NIL, NIL);
+            modCount++;
+            size = 1;
+            return null;
+        }
+        int t = root = splay(root, key);
+        int cmp = compare(key, keys[t]);
+        if (cmp == 0) {
+            V oldValue = (V) values[t];
+            values[t] = value;
+            return oldValue;
+        }
+        if (cmp < 0) {
+            root = newSlot(key, value, left[t], t);
+            left[t] = NIL;
+        } else {
+            root = newSlot(key, value, t, right[t]);
+            right[t] = NIL;
+        }
+        modCount++;
+        size++;
+        return null;
+    }
+
+    @Override
+    public V remove(Object key) {
+        int p = getSlot(key);
+        return p == NIL ? null : deleteRoot();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Drops all entries but keeps the arrays for reuse.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 1, used, null);
+        Arrays.fill(values, 1, used, null);
+        root = free = NIL;
+        used = 1;
+        size = 0;
+        modCount++;
+    }
+
+    // number of entries the map can hold before its arrays grow
+    public int capacity() {
+        return keys.length - 1;
+    }
+
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    @SuppressWarnings("unchecked")
+    public K firstKey() {
+        int p = root;
+        if (p == NIL)
+            throw new NoSuchElementException();
+        while (left[p] != NIL)
+            p = left[p];
+        root = splay(root, keys[p]);
+        return (K) keys[p];
+    }
+
+    @SuppressWarnings("unchecked")
+    public K lastKey() {
+        int p = root;
+        if (p == NIL)
+            throw new NoSuchElementException();
+        while (right[p] != NIL)
+            p = right[p];
+        root = splay(root, keys[p]);
+        return (K) keys[p];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        for (EntryIterator it = new EntryIterator(); it.hasNext(); ) {
+            int p = it.nextSlot();
+            action.accept((K) keys[p], (V) values[p]);
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+        }
+    }
+
+    /////////VIEWS
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        EntrySet es = entrySet;
+        return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            int p = getSlot(entry.getKey());
+            return p != NIL && Objects.equals(values[p], entry.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            int p = getSlot(entry.getKey());
+            if (p != NIL && Objects.equals(values[p], entry.getValue())) {
+                deleteRoot();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void clear() {
+            IndexedSplayTreeMap.this.clear();
+        }
+    }
+
+    // entry of a slot, valid until the entry is removed
+    final class SlotEntry implements Map.Entry<K, V> {
+        final int slot;
+
+        SlotEntry(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public K getKey() {
+            return (K) keys[slot];
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V getValue() {
+            return (V) values[slot];
+        }
+
+        @Override
+        public V setValue(V value) {
+            V oldValue = getValue();
+            values[slot] = value;
+            return oldValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return Objects.equals(getKey(), e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    // in-order walk with a stack of the slots whose left subtrees are being visited; when a lookup
+    // has splayed the tree meanwhile, the stack is rebuilt from the root for the next key
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        int[] stack = new int[16];
+        int depth;
+        int lastReturned = NIL;
+        int expectedModCount = modCount;
+        int expectedSplayCount = splayCount;
+
+        EntryIterator() {
+            for (int p = root; p != NIL; p = left[p])
+                push(p);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            return new SlotEntry(nextSlot());
+        }
+
+        final int nextSlot() {
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (depth == 0)
+                throw new NoSuchElementException();
+            int p = stack[--depth];
+            if (expectedSplayCount != splayCount) {
+                seekHigher(keys[p]);
+            } else {
+                for (int c = right[p]; c != NIL; c = left[c])
+                    push(c);
+            }
+            return lastReturned = p;
+        }
+
+        // rebuilds the stack for the slots with keys greater than the given one
+        private void seekHigher(Object key) {
+            depth = 0;
+            for (int p = root; p != NIL; ) {
+                if (compare(key, keys[p]) < 0) {
+                    push(p);
+                    p = left[p];
+                } else {
+                    p = right[p];
+                }
+            }
+            expectedSplayCount = splayCount;
+        }
+
+        private void push(int p) {
+            if (depth == stack.length)
+                stack = Arrays.copyOf(stack, depth * 2);
+            stack[depth++] = p;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == NIL)
+                throw new IllegalStateException();
+            if (modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            IndexedSplayTreeMap.this.remove(keys[lastReturned]);
+            lastReturned = NIL;
+            expectedModCount = modCount;
+        }
+    }
+
+
+    //INTERNAL OPS
+
+    // splays the key to the root and returns its slot, or NIL if it is absent
+    private int getSlot(Object key) {
+        if (root == NIL)
+            return NIL;
+        int t = root = splay(root, key);
+        return compare(key, keys[t]) == 0 ? t : NIL;
+    }
+
+    // removes the root entry and returns its value
+    @SuppressWarnings("unchecked")
+    private V deleteRoot() {
+        int t = root;
+        V oldValue = (V) values[t];
+        if (left[t] == NIL) {
+            root = right[t];
+        } else {
+            int r = right[t];
+            root = splay(left[t], keys[t]); // the greatest key of the left subtree comes up, its right is empty
+            right[root] = r;
+        }
+        freeSlot(t);
+        size--;
+        modCount++;
+        return oldValue;
+    }
+
+    /**
+     * Top-down splay of the subtree rooted at slot {@code t}, as in {@link SplayTreeMap}
+     * without the subtree sizes.
+     *
+     * @return new root slot of the subtree
+     */
+    private int splay(int t, Object key) {
+        int[] left = this.left, right = this.right;
+        int l = HEADER; // greatest node of the left tree
+        int r = HEADER; // least node of the right tree
+        left[HEADER] = right[HEADER] = NIL;
+        int cmp = compare(key, keys[t]);
+        for (; ; ) {
+            if (cmp < 0) {
+                int y = left[t];
+                if (y == NIL)
+                    break;
+                cmp = compare(key, keys[y]);
+                if (cmp < 0) { //zig-zig: rotate right
+                    left[t] = right[y];
+                    right[y] = t;
+                    t = y;
+                    y = left[t];
+                    if (y == NIL)
+                        break;
+                    cmp = compare(key, keys[y]);
+                }
+                left[r] = t; //link right
+                r = t;
+                t = y;
+            } else if (cmp > 0) {
+                int y = right[t];
+                if (y == NIL)
+                    break;
+                cmp = compare(key, keys[y]);
+                if (cmp > 0) { //zig-zig: rotate left
+                    right[t] = left[y];
+                    left[y] = t;
+                    t = y;
+                    y = right[t];
+                    if (y == NIL)
+                        break;
+                    cmp = compare(key, keys[y]);
+                }
+                right[l] = t; //link left
+                l = t;
+                t = y;
+            } else {
+                break;
+            }
+        }
+        //assemble
+        right[l] = left[t];
+        left[r] = right[t];
+        left[t] = right[HEADER];
+        right[t] = left[HEADER];
+        left[HEADER] = right[HEADER] = NIL;
+        splayCount++;
+        return t;
+    }
+
+    private int newSlot(Object key, Object value, int l, int r) {
+        int p = free;
+        if (p != NIL) {
+            free = right[p];
+        } else {
+            if (used == keys.length)
+                grow();
+            p = used++;
+        }
+        keys[p] = key;
+        values[p] = value;
+        left[p] = l;
+        right[p] = r;
+        return p;
+    }
+
+    private void freeSlot(int p) {
+        keys[p] = values[p] = null;
+        left[p] = NIL;
+        right[p] = free;
+        free = p;
+    }
+
+    private void grow() {
+        int capacity = keys.length + Math.max(MIN_CHUNK, keys.length >> 1);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        keys = Arrays.copyOf(keys, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @SuppressWarnings("unchecked")
+    final int compare(Object k1, Object k2) {
+        return comparator == null ? ((Comparable<? super K>) k1).compareTo((K) k2)
+                : comparator.compare((K) k1, (K) k2);
+    }
+}
@@ -0,0 +1,240 @@
+package org.spbstu.chernonog.project;
+
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Sorted map from {@code int} keys to object values, the primitive counterpart
+ * of {@code SplayTreeMap<Integer, V>}. Lookups and updates splay top-down the same way,
+ * but keys are compared with {@code <} and are not boxed.
+ * Absent keys read as {@code null}, null values are permitted.
+ */
+public class IntObjSplayTreeMap<V> {
+
+    private int size = 0;
+
+    private int modCount = 0;
+
+    Entry<V> root;
+
+    // scratch node holding the left and right trees during a top-down splay
+    private final Entry<V> splayHeader = new Entry<>(0, null);
+
+
+    ///////QUERY OPS
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return getEntry(key) != null;
+    }
+
+    public V get(int key) {
+        return getOrDefault(key, null);
+    }
+
+    public V getOrDefault(int key, V defaultValue) {
+        Entry<V> p = getEntry(key);
+        return p == null ? defaultValue : p.value;
+    }
+
+    /**
+     * @return the previous value, or {@code null} if the key was absent
+     */
+    public V put(int key, V value) {
+        if (root == null) {
+            root = new Entry<>(key, value);
+            modCount++;
+            size = 1;
+            return null;
+        }
+        Entry<V> e = root = splay(root, key);
+        if (key == e.key) {
+            V oldValue = e.value;
+            e.value = value;
+            return oldValue;
+        }
+        Entry<V> n = new Entry<>(key, value);
+        if (key < e.key) {
+            n.left = e.left;
+            n.right = e;
+            e.left = null;
+        } else {
+            n.right = e.right;
+            n.left = e;
+            e.right = null;
+        }
+        root = n;
+        modCount++;
+        size++;
+        return null;
+    }
+
+    /**
+     * @return the removed value, or {@code null} if the key was absent
+     */
+    public V remove(int key) {
+        Entry<V> e = getEntry(key);
+        if (e == null)
+            return null;
+        if (e.left == null) {
+            root = e.right;
+        } else {
+            Entry<V> r = e.right;
+            root = splay(e.left, key); // the greatest key of the left subtree comes up, its right is empty
+            root.right = r;
+        }
+        e.left = e.right = null;
+        size--;
+        modCount++;
+        return e.value;
+    }
+
+    public void clear() {
+        size = 0;
+        root = null;
+        modCount++;
+    }
+
+    public int firstKey() {
+        if (root == null)
+            throw new NoSuchElementException();
+        return (root = splay(root, Integer.MIN_VALUE)).key;
+    }
+
+    public int lastKey() {
+        if (root == null)
+            throw new NoSuchElementException();
+        return (root = splay(root, Integer.MAX_VALUE)).key;
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    /**
+     * Passes the entries to the action in ascending key order, the tree is not restructured.
+     */
+    public void forEach(EntryConsumer<? super V> action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        @SuppressWarnings("unchecked")
+        Entry<V>[] stack = (Entry<V>[]) new Entry[16];
+        int depth = 0;
+        Entry<V> p = root;
+        while (p != null || depth > 0) {
+            for (; p != null; p = p.left) {
+                if (depth == stack.length)
+                    stack = Arrays.copyOf(stack, depth * 2);
+                stack[depth++] = p;
+            }
+            p = stack[--depth];
+            action.accept(p.key, p.value);
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+            p = p.right;
+        }
+    }
+
+    // keys in ascending order
+    public int[] keys() {
+        int[] keys = new int[size];
+        int[] i = {0};
+        forEach((key, value) -> keys[i[0]++] = key);
+        return keys;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach((key, value) -> {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(key).append('=').append(value);
+        });
+        return sb.append('}').toString();
+    }
+
+
+    //INTERNAL OPS
+    private Entry<V> getEntry(int key) {
+        if (root == null)
+            return null;
+        Entry<V> e = root = splay(root, key);
+        return e.key == key ? e : null;
+    }
+
+    /**
+     * Top-down splay of the subtree rooted at {@code t}, as in {@link SplayTreeMap}
+     * without the subtree sizes.
+     *
+     * @return new root of the subtree
+     */
+    private Entry<V> splay(Entry<V> t, int key) {
+        Entry<V> header = splayHeader;
+        Entry<V> l = header; // greatest node of the left tree
+        Entry<V> r = header; // least node of the right tree
+        for (; ; ) {
+            if (key < t.key) {
+                Entry<V> y = t.left;
+                if (y == null)
+                    break;
+                if (key < y.key) { //zig-zig: rotate right
+                    t.left = y.right;
+                    y.right = t;
+                    t = y;
+                    if (t.left == null)
+                        break;
+                }
+                r.left = t; //link right
+                r = t;
+                t = t.left;
+            } else if (key > t.key) {
+                Entry<V> y = t.right;
+                if (y == null)
+                    break;
+                if (key > y.key) { //zig-zig: rotate left
+                    t.right = y.left;
+                    y.left = t;
+                    t = y;
+                    if (t.right == null)
+                        break;
+                }
+                l.right = t; //link left
+                l = t;
+                t = t.right;
+            } else {
+                break;
+            }
+        }
+        //assemble
+        l.right = t.left;
+        r.left = t.right;
+        t.left = header.right;
+        t.right = header.left;
+        header.left = header.right = null;
+        return t;
+    }
+
+    static final class Entry<V> {
+        final int key;
+        V value;
+        Entry<V> left;
+        Entry<V> right;
+
+        Entry(int key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
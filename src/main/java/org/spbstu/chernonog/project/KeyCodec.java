@@ -0,0 +1,92 @@
+package org.spbstu.chernonog.project;
+
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Fixed-width binary form of keys stored off-heap by {@link OffHeapSplayTreeMap}.
+ * The encoding has to preserve order: encoded keys are compared as unsigned bytes,
+ * lexicographically, and that order must agree with the intended order of the keys.
+ */
+public interface KeyCodec<K> {
+
+    // number of bytes of an encoded key
+    int width();
+
+    // writes the key at the given absolute position
+    void encode(K key, ByteBuffer buffer, int offset);
+
+    K decode(ByteBuffer buffer, int offset);
+
+    // signed longs in natural order, the sign bit is flipped so they compare as unsigned bytes
+    static KeyCodec<Long> longs() {
+        return new KeyCodec<Long>() {
+            @Override
+            public int width() {
+                return Long.BYTES;
+            }
+
+            @Override
+            public void encode(Long key, ByteBuffer buffer, int offset) {
+                buffer.putLong(offset, key ^ Long.MIN_VALUE);
+            }
+
+            @Override
+            public Long decode(ByteBuffer buffer, int offset) {
+                return buffer.getLong(offset) ^ Long.MIN_VALUE;
+            }
+        };
+    }
+
+    // UUIDs in the order of UUID.compareTo
+    static KeyCodec<UUID> uuids() {
+        return new KeyCodec<UUID>() {
+            @Override
+            public int width() {
+                return 2 * Long.BYTES;
+            }
+
+            @Override
+            public void encode(UUID key, ByteBuffer buffer, int offset) {
+                buffer.putLong(offset, key.getMostSignificantBits() ^ Long.MIN_VALUE);
+                buffer.putLong(offset + Long.BYTES, key.getLeastSignificantBits() ^ Long.MIN_VALUE);
+            }
+
+            @Override
+            public UUID decode(ByteBuffer buffer, int offset) {
+                return new UUID(buffer.getLong(offset) ^ Long.MIN_VALUE,
+                        buffer.getLong(offset + Long.BYTES) ^ Long.MIN_VALUE);
+            }
+        };
+    }
+
+    /**
+     * Byte arrays of exactly the given length, ordered as unsigned bytes
+     * (as {@link java.util.Arrays#compareUnsigned(byte[], byte[])}).
+     */
+    static KeyCodec<byte[]> bytes(int width) {
+        if (width <= 0)
+            throw new IllegalArgumentException("width <= 0");
+        return new KeyCodec<byte[]>() {
+            @Override
+            public int width() {
+                return width;
+            }
+
+            @Override
+            public void encode(byte[] key, ByteBuffer buffer, int offset) {
+                if (key.length != width)
+                    throw new IllegalArgumentException("key length " + key.length + " != " + width);
+                buffer.put(offset, key, 0, width);
+            }
+
+            @Override
+            public byte[] decode(ByteBuffer buffer, int offset) {
+                byte[] key = new byte[width];
+                buffer.get(offset, key, 0, width);
+                return key;
+            }
+        };
+    }
+}
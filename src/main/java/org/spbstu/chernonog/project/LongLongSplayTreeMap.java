@@ -0,0 +1,258 @@
+package org.spbstu.chernonog.project;
+
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Sorted map from {@code long} keys to {@code long} values, the primitive counterpart
+ * of {@code SplayTreeMap<Long, Long>}. Lookups and updates splay top-down the same way,
+ * but keys are compared with {@code <} and nothing is boxed.
+ * Absent keys read as {@link #noEntryValue()}.
+ */
+public class LongLongSplayTreeMap {
+
+    private final long noEntryValue;
+
+    private int size = 0;
+
+    private int modCount = 0;
+
+    Entry root;
+
+    // scratch node holding the left and right trees during a top-down splay
+    private final Entry splayHeader = new Entry(0, 0);
+
+
+    ///////CONSTRUCTORS
+
+    public LongLongSplayTreeMap() {
+        this(0);
+    }
+
+    /**
+     * @param noEntryValue returned by lookups and removals of absent keys
+     */
+    public LongLongSplayTreeMap(long noEntryValue) {
+        this.noEntryValue = noEntryValue;
+    }
+
+    ///////QUERY OPS
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long noEntryValue() {
+        return noEntryValue;
+    }
+
+    public boolean containsKey(long key) {
+        return getEntry(key) != null;
+    }
+
+    public long get(long key) {
+        return getOrDefault(key, noEntryValue);
+    }
+
+    public long getOrDefault(long key, long defaultValue) {
+        Entry p = getEntry(key);
+        return p == null ? defaultValue : p.value;
+    }
+
+    /**
+     * @return the previous value, or {@link #noEntryValue()} if the key was absent
+     */
+    public long put(long key, long value) {
+        if (root == null) {
+            root = new Entry(key, value);
+            modCount++;
+            size = 1;
+            return noEntryValue;
+        }
+        Entry e = root = splay(root, key);
+        if (key == e.key) {
+            long oldValue = e.value;
+            e.value = value;
+            return oldValue;
+        }
+        Entry n = new Entry(key, value);
+        if (key < e.key) {
+            n.left = e.left;
+            n.right = e;
+            e.left = null;
+        } else {
+            n.right = e.right;
+            n.left = e;
+            e.right = null;
+        }
+        root = n;
+        modCount++;
+        size++;
+        return noEntryValue;
+    }
+
+    /**
+     * @return the removed value, or {@link #noEntryValue()} if the key was absent
+     */
+    public long remove(long key) {
+        Entry e = getEntry(key);
+        if (e == null)
+            return noEntryValue;
+        if (e.left == null) {
+            root = e.right;
+        } else {
+            Entry r = e.right;
+            root = splay(e.left, key); // the greatest key of the left subtree comes up, its right is empty
+            root.right = r;
+        }
+        e.left = e.right = null;
+        size--;
+        modCount++;
+        return e.value;
+    }
+
+    public void clear() {
+        size = 0;
+        root = null;
+        modCount++;
+    }
+
+    public long firstKey() {
+        if (root == null)
+            throw new NoSuchElementException();
+        return (root = splay(root, Long.MIN_VALUE)).key;
+    }
+
+    public long lastKey() {
+        if (root == null)
+            throw new NoSuchElementException();
+        return (root = splay(root, Long.MAX_VALUE)).key;
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+
+    /**
+     * Passes the entries to the action in ascending key order, the tree is not restructured.
+     */
+    public void forEach(EntryConsumer action) {
+        Objects.requireNonNull(action);
+        int expectedModCount = modCount;
+        Entry[] stack = new Entry[16];
+        int depth = 0;
+        Entry p = root;
+        while (p != null || depth > 0) {
+            for (; p != null; p = p.left) {
+                if (depth == stack.length)
+                    stack = Arrays.copyOf(stack, depth * 2);
+                stack[depth++] = p;
+            }
+            p = stack[--depth];
+            action.accept(p.key, p.value);
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+            p = p.right;
+        }
+    }
+
+    // keys in ascending order
+    public long[] keys() {
+        long[] keys = new long[size];
+        int[] i = {0};
+        forEach((key, value) -> keys[i[0]++] = key);
+        return keys;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach((key, value) -> {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(key).append('=').append(value);
+        });
+        return sb.append('}').toString();
+    }
+
+
+    //INTERNAL OPS
+    private Entry getEntry(long key) {
+        if (root == null)
+            return null;
+        Entry e = root = splay(root, key);
+        return e.key == key ? e : null;
+    }
+
+    /**
+     * Top-down splay of the subtree rooted at {@code t}, as in {@link SplayTreeMap}
+     * without the subtree sizes.
+     *
+     * @return new root of the subtree
+     */
+    private Entry splay(Entry t, long key) {
+        Entry header = splayHeader;
+        Entry l = header; // greatest node of the left tree
+        Entry r = header; // least node of the right tree
+        for (; ; ) {
+            if (key < t.key) {
+                Entry y = t.left;
+                if (y == null)
+                    break;
+                if (key < y.key) { //zig-zig: rotate right
+                    t.left = y.right;
+                    y.right = t;
+                    t = y;
+                    if (t.left == null)
+                        break;
+                }
+                r.left = t; //link right
+                r = t;
+                t = t.left;
+            } else if (key > t.key) {
+                Entry y = t.right;
+                if (y == null)
+                    break;
+                if (key > y.key) { //zig-zig: rotate left
+                    t.right = y.left;
+                    y.left = t;
+                    t = y;
+                    if (t.right == null)
+                        break;
+                }
+                l.right = t; //link left
+                l = t;
+                t = t.right;
+            } else {
+                break;
+            }
+        }
+        //assemble
+        l.right = t.left;
+        r.left = t.right;
+        t.left = header.right;
+        t.right = header.left;
+        header.left = header.right = null;
+        return t;
+    }
+
+    static final class Entry {
+        final long key;
+        long value;
+        Entry left;
+        Entry right;
+
+        Entry(long key, long value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package org.spbstu.chernonog.project;
+
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.spbstu.chernonog.project.SplayTreeSnapshot.NONE;
+
+/**
+ * Read-only map over a memory-mapped {@link SplayTreeSnapshot}. Opening costs nothing
+ * but the mapping; a lookup walks the saved tree from its root and decodes only the
+ * records on the path, so the pages touched are about the ones holding the hot keys
+ * the tree had splayed up before it was saved. The tree is never restructured, which
+ * also makes the map safe to read from several threads.
+ * {@link #toSplayTreeMap()} turns it into a regular map with the same shape.
+ * The mapping is released by {@link #close()}, which must not race with reads.
+ */
+public class MappedSplayTreeMap<K, V> extends AbstractMap<K, V> implements AutoCloseable {
+
+    private final ByteBuffer buffer;
+
+    private final int size;
+
+    private final int root;
+
+    private final Comparator<? super K> comparator;
+
+    private final SplayTreeSnapshot.Codec<? extends K> keyCodec;
+
+    private final SplayTreeSnapshot.Codec<? extends V> valueCodec;
+
+    private volatile boolean closed;
+
+    private transient EntrySet entrySet;
+
+    MappedSplayTreeMap(ByteBuffer buffer, int size, int root, Comparator<? super K> comparator,
+                       SplayTreeSnapshot.Codec<? extends K> keyCodec, SplayTreeSnapshot.Codec<? extends V> valueCodec) {
+        this.buffer = buffer;
+        this.size = size;
+        this.root = root;
+        this.comparator = comparator;
+        this.keyCodec = keyCodec;
+        this.valueCodec = valueCodec;
+    }
+
+    ///////QUERY OPS
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key, input()) != NONE;
+    }
+
+    @Override
+    public V get(Object key) {
+        ByteBuffer in = input();
+        int p = find(key, in);
+        return p == NONE ? null : valueCodec.read(in);
+    }
+
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    public K firstKey() {
+        return key(edge(0));
+    }
+
+    public K lastKey() {
+        return key(edge(Integer.BYTES));
+    }
+
+    /**
+     * Reads all records into a new {@link SplayTreeMap} with the saved tree shape.
+     */
+    public SplayTreeMap<K, V> toSplayTreeMap() {
+        SplayTreeMap<K, V> map = new SplayTreeMap<>(comparator);
+        try {
+            map.replaceTree(SplayTreeSnapshot.readRecords(input(), size, keyCodec, valueCodec), size);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return map;
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        OffHeapSplayTreeMap.release(buffer);
+    }
+
+    /////////VIEWS
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        EntrySet es = entrySet;
+        return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    // in-order walk with an explicit stack of record offsets
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        final ByteBuffer in = input();
+        int[] stack = new int[16];
+        int depth;
+
+        EntryIterator() {
+            pushLeft(root);
+        }
+
+        private void pushLeft(int p) {
+            for (; p != NONE; p = in.getInt(p)) {
+                if (depth == stack.length)
+                    stack = Arrays.copyOf(stack, depth * 2);
+                stack[depth++] = p;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (depth == 0)
+                throw new NoSuchElementException();
+            checkOpen();
+            int p = stack[--depth];
+            pushLeft(in.getInt(p + Integer.BYTES));
+            in.position(p + 2 * Integer.BYTES);
+            K key = keyCodec.read(in);
+            return new AbstractMap.SimpleImmutableEntry<>(key, valueCodec.read(in));
+        }
+    }
+
+
+    //INTERNAL OPS
+
+    // a view of the file with its own position
+    private ByteBuffer input() {
+        checkOpen();
+        return buffer.duplicate();
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("map is closed");
+    }
+
+    // offset of the record with the key, or NONE; the input is left positioned at the value
+    private int find(Object key, ByteBuffer in) {
+        Objects.requireNonNull(key);
+        int p = root;
+        while (p != NONE) {
+            in.position(p + 2 * Integer.BYTES);
+            int cmp = compare(key, keyCodec.read(in));
+            if (cmp < 0)
+                p = in.getInt(p);
+            else if (cmp > 0)
+                p = in.getInt(p + Integer.BYTES);
+            else
+                return p;
+        }
+        return NONE;
+    }
+
+    // leftmost (child link at 0) or rightmost (child link at 4) record
+    private int edge(int link) {
+        ByteBuffer in = input();
+        int p = root;
+        if (p == NONE)
+            throw new NoSuchElementException();
+        for (int c; (c = in.getInt(p + link)) != NONE; )
+            p = c;
+        return p;
+    }
+
+    private K key(int p) {
+        ByteBuffer in = input();
+        in.position(p + 2 * Integer.BYTES);
+        return keyCodec.read(in);
+    }
+
+    @SuppressWarnings("unchecked")
+    final int compare(Object k1, Object k2) {
+        return comparator == null ? ((Comparable<? super K>) k1).compareTo((K) k2)
+                : comparator.compare((K) k1, (K) k2);
+    }
+}
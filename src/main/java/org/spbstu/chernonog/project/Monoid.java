@@ -0,0 +1,52 @@
+package org.spbstu.chernonog.project;
+
+
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.function.BinaryOperator;
+
+/**
+ * Associative operation with an identity, the aggregate kept by {@link AggregatingSplayTreeMap}.
+ * The operation need not be commutative: aggregates are always combined in key order.
+ */
+public interface Monoid<A> {
+
+    A identity();
+
+    A combine(A a, A b);
+
+    static <A> Monoid<A> of(A identity, BinaryOperator<A> operation) {
+        Objects.requireNonNull(operation);
+        return new Monoid<A>() {
+            @Override
+            public A identity() {
+                return identity;
+            }
+
+            @Override
+            public A combine(A a, A b) {
+                return operation.apply(a, b);
+            }
+        };
+    }
+
+    static Monoid<Long> longSum() {
+        return of(0L, Long::sum);
+    }
+
+    static Monoid<Double> doubleSum() {
+        return of(0.0, Double::sum);
+    }
+
+    // the least element, null for none
+    static <T> Monoid<T> min(Comparator<? super T> comparator) {
+        Objects.requireNonNull(comparator);
+        return of(null, (a, b) -> a == null ? b : b == null ? a : comparator.compare(b, a) < 0 ? b : a);
+    }
+
+    // the greatest element, null for none
+    static <T> Monoid<T> max(Comparator<? super T> comparator) {
+        Objects.requireNonNull(comparator);
+        return of(null, (a, b) -> a == null ? b : b == null ? a : comparator.compare(b, a) > 0 ? b : a);
+    }
+}
@@ -0,0 +1,469 @@
+package org.spbstu.chernonog.project;
+
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Splay tree map from fixed-width keys to {@code long} values whose nodes live outside
+ * the Java heap, in direct {@link ByteBuffer} chunks. Keys are stored in the form given
+ * by a {@link KeyCodec} and compared as unsigned bytes, so the garbage collector sees
+ * a handful of buffers whatever the number of entries.
+ * Lookups and updates splay top-down and removals merge the subtrees as in {@link SplayTreeMap}.
+ * Absent keys read as {@link #noEntryValue()}.
+ * The memory is released by {@link #close()}, after which the map can't be used.
+ */
+public class OffHeapSplayTreeMap<K> implements AutoCloseable {
+
+    private static final int NIL = -1;
+
+    // node 0 is the scratch node holding the left and right trees during a top-down splay
+    private static final int HEADER = 0;
+
+    // node record: left and right child numbers, value, key bytes padded to a multiple of 8
+    private static final int LEFT = 0;
+    private static final int RIGHT = 4;
+    private static final int VALUE = 8;
+    private static final int KEY = 16;
+
+    static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    private final KeyCodec<K> codec;
+
+    private final int width;
+
+    private final int recordSize;
+
+    private final long noEntryValue;
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+
+    // encoded key being looked for
+    private final ByteBuffer searchKey;
+
+    int root = NIL;
+
+    // head of the free node list, linked through the right child
+    private int free = NIL;
+
+    // nodes below this have been handed out at least once
+    private int used = 1;
+
+    private int size = 0;
+
+    private int modCount = 0;
+
+    private boolean closed;
+
+
+    ///////CONSTRUCTORS
+
+    public OffHeapSplayTreeMap(KeyCodec<K> codec) {
+        this(codec, 0);
+    }
+
+    /**
+     * @param noEntryValue returned by lookups and removals of absent keys
+     */
+    public OffHeapSplayTreeMap(KeyCodec<K> codec, long noEntryValue) {
+        this.codec = codec;
+        this.width = codec.width();
+        if (width <= 0)
+            throw new IllegalArgumentException("key width <= 0");
+        if (width > (Integer.MAX_VALUE >> CHUNK_SHIFT) - KEY - 7)
+            throw new IllegalArgumentException("key width " + width + " is too large");
+        this.recordSize = KEY + ((width + 7) & ~7);
+        this.noEntryValue = noEntryValue;
+        this.searchKey = ByteBuffer.allocate(width);
+        addChunk();
+        setLeft(HEADER, NIL);
+        setRight(HEADER, NIL);
+    }
+
+    ///////QUERY OPS
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long noEntryValue() {
+        return noEntryValue;
+    }
+
+    public KeyCodec<K> keyCodec() {
+        return codec;
+    }
+
+    public boolean containsKey(K key) {
+        return getNode(key) != NIL;
+    }
+
+    public long get(K key) {
+        return getOrDefault(key, noEntryValue);
+    }
+
+    public long getOrDefault(K key, long defaultValue) {
+        int p = getNode(key);
+        return p == NIL ? defaultValue : value(p);
+    }
+
+    /**
+     * @return the previous value, or {@link #noEntryValue()} if the key was absent
+     */
+    public long put(K key, long value) {
+        encode(key);
+        if (root == NIL) {
+            root = newNode(value, NIL, NIL);
+            modCount++;
+            size = 1;
+            return noEntryValue;
+        }
+        int t = root = splay(root);
+        int cmp = compareKey(t);
+        if (cmp == 0) {
+            long oldValue = value(t);
+            setValue(t, value);
+            return oldValue;
+        }
+        if (cmp < 0) {
+            root = newNode(value, left(t), t);
+            setLeft(t, NIL);
+        } else {
+            root = newNode(value, t, right(t));
+            setRight(t, NIL);
+        }
+        modCount++;
+        size++;
+        return noEntryValue;
+    }
+
+    /**
+     * @return the removed value, or {@link #noEntryValue()} if the key was absent
+     */
+    public long remove(K key) {
+        int t = getNode(key);
+        if (t == NIL)
+            return noEntryValue;
+        long oldValue = value(t);
+        if (left(t) == NIL) {
+            root = right(t);
+        } else {
+            int r = right(t);
+            root = splay(left(t)); // the greatest key of the left subtree comes up, its right is empty
+            setRight(root, r);
+        }
+        setRight(t, free);
+        free = t;
+        size--;
+        modCount++;
+        return oldValue;
+    }
+
+    /**
+     * Drops all entries but keeps the allocated memory for reuse.
+     */
+    public void clear() {
+        checkOpen();
+        root = free = NIL;
+        used = 1;
+        size = 0;
+        modCount++;
+    }
+
+    public K firstKey() {
+        checkOpen();
+        int p = root;
+        if (p == NIL)
+            throw new NoSuchElementException();
+        while (left(p) != NIL)
+            p = left(p);
+        return splayNode(p);
+    }
+
+    public K lastKey() {
+        checkOpen();
+        int p = root;
+        if (p == NIL)
+            throw new NoSuchElementException();
+        while (right(p) != NIL)
+            p = right(p);
+        return splayNode(p);
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer<K> {
+        void accept(K key, long value);
+    }
+
+    /**
+     * Passes the entries to the action in ascending key order, the tree is not restructured.
+     */
+    public void forEach(EntryConsumer<? super K> action) {
+        Objects.requireNonNull(action);
+        checkOpen();
+        int expectedModCount = modCount;
+        int[] stack = new int[16];
+        int depth = 0;
+        int p = root;
+        while (p != NIL || depth > 0) {
+            for (; p != NIL; p = left(p)) {
+                if (depth == stack.length)
+                    stack = Arrays.copyOf(stack, depth * 2);
+                stack[depth++] = p;
+            }
+            p = stack[--depth];
+            action.accept(codec.decode(chunk(p), offset(p) + KEY), value(p));
+            if (expectedModCount != modCount)
+                throw new ConcurrentModificationException();
+            p = right(p);
+        }
+    }
+
+    // bytes of direct memory held by the map
+    public long allocatedBytes() {
+        return (long) chunks.length * recordSize << CHUNK_SHIFT;
+    }
+
+    /**
+     * Releases the off-heap memory. Where the JDK doesn't allow freeing direct buffers
+     * explicitly, the memory is returned once the buffers are garbage collected.
+     */
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        ByteBuffer[] released = chunks;
+        chunks = new ByteBuffer[0];
+        root = NIL;
+        size = 0;
+        modCount++;
+        for (ByteBuffer chunk : released)
+            release(chunk);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        forEach((key, value) -> {
+            if (sb.length() > 1)
+                sb.append(", ");
+            sb.append(key).append('=').append(value);
+        });
+        return sb.append('}').toString();
+    }
+
+
+    //INTERNAL OPS
+
+    private void encode(K key) {
+        checkOpen();
+        codec.encode(Objects.requireNonNull(key), searchKey, 0);
+    }
+
+    // splays the key to the root and returns its node, or NIL if it is absent
+    private int getNode(K key) {
+        encode(key);
+        if (root == NIL)
+            return NIL;
+        int t = root = splay(root);
+        return compareKey(t) == 0 ? t : NIL;
+    }
+
+    // splays the node to the root and returns its key
+    private K splayNode(int p) {
+        ByteBuffer chunk = chunk(p);
+        int o = offset(p) + KEY;
+        for (int i = 0; i < width; i++)
+            searchKey.put(i, chunk.get(o + i));
+        root = splay(root);
+        return codec.decode(chunk, o);
+    }
+
+    /**
+     * Top-down splay for the search key of the subtree rooted at node {@code t},
+     * as in {@link SplayTreeMap} without the subtree sizes.
+     *
+     * @return new root node of the subtree
+     */
+    private int splay(int t) {
+        int l = HEADER; // greatest node of the left tree
+        int r = HEADER; // least node of the right tree
+        setLeft(HEADER, NIL);
+        setRight(HEADER, NIL);
+        int cmp = compareKey(t);
+        for (; ; ) {
+            if (cmp < 0) {
+                int y = left(t);
+                if (y == NIL)
+                    break;
+                cmp = compareKey(y);
+                if (cmp < 0) { //zig-zig: rotate right
+                    setLeft(t, right(y));
+                    setRight(y, t);
+                    t = y;
+                    y = left(t);
+                    if (y == NIL)
+                        break;
+                    cmp = compareKey(y);
+                }
+                setLeft(r, t); //link right
+                r = t;
+                t = y;
+            } else if (cmp > 0) {
+                int y = right(t);
+                if (y == NIL)
+                    break;
+                cmp = compareKey(y);
+                if (cmp > 0) { //zig-zig: rotate left
+                    setRight(t, left(y));
+                    setLeft(y, t);
+                    t = y;
+                    y = right(t);
+                    if (y == NIL)
+                        break;
+                    cmp = compareKey(y);
+                }
+                setRight(l, t); //link left
+                l = t;
+                t = y;
+            } else {
+                break;
+            }
+        }
+        //assemble
+        setRight(l, left(t));
+        setLeft(r, right(t));
+        setLeft(t, right(HEADER));
+        setRight(t, left(HEADER));
+        setLeft(HEADER, NIL);
+        setRight(HEADER, NIL);
+        return t;
+    }
+
+    // compares the search key with the key of the node as unsigned bytes, eight at a time
+    private int compareKey(int p) {
+        ByteBuffer chunk = chunk(p);
+        int o = offset(p) + KEY;
+        int i = 0;
+        for (; i + Long.BYTES <= width; i += Long.BYTES) {
+            long a = searchKey.getLong(i), b = chunk.getLong(o + i);
+            if (a != b)
+                return Long.compareUnsigned(a, b);
+        }
+        for (; i < width; i++) {
+            int a = searchKey.get(i) & 0xff, b = chunk.get(o + i) & 0xff;
+            if (a != b)
+                return a - b;
+        }
+        return 0;
+    }
+
+    // new node holding the search key
+    private int newNode(long value, int l, int r) {
+        int p = free;
+        if (p != NIL) {
+            free = right(p);
+        } else {
+            if (used == chunks.length << CHUNK_SHIFT)
+                addChunk();
+            p = used++;
+        }
+        ByteBuffer chunk = chunk(p);
+        int o = offset(p);
+        chunk.putInt(o + LEFT, l);
+        chunk.putInt(o + RIGHT, r);
+        chunk.putLong(o + VALUE, value);
+        for (int i = 0; i < width; i++)
+            chunk.put(o + KEY + i, searchKey.get(i));
+        return p;
+    }
+
+    private void addChunk() {
+        if (chunks.length == Integer.MAX_VALUE >> CHUNK_SHIFT)
+            throw new IllegalStateException("node count limit reached");
+        ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+        grown[chunks.length] = ByteBuffer.allocateDirect(recordSize << CHUNK_SHIFT);
+        chunks = grown;
+    }
+
+    private void checkOpen() {
+        if (closed)
+            throw new IllegalStateException("map is closed");
+    }
+
+    private ByteBuffer chunk(int p) {
+        return chunks[p >>> CHUNK_SHIFT];
+    }
+
+    private int offset(int p) {
+        return (p & CHUNK_MASK) * recordSize;
+    }
+
+    private int left(int p) {
+        return chunk(p).getInt(offset(p) + LEFT);
+    }
+
+    private int right(int p) {
+        return chunk(p).getInt(offset(p) + RIGHT);
+    }
+
+    private long value(int p) {
+        return chunk(p).getLong(offset(p) + VALUE);
+    }
+
+    private void setLeft(int p, int l) {
+        chunk(p).putInt(offset(p) + LEFT, l);
+    }
+
+    private void setRight(int p, int r) {
+        chunk(p).putInt(offset(p) + RIGHT, r);
+    }
+
+    private void setValue(int p, long value) {
+        chunk(p).putLong(offset(p) + VALUE, value);
+    }
+
+    ///////RELEASING DIRECT MEMORY
+
+    // sun.misc.Unsafe.invokeCleaner, if the JDK exposes it
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = theUnsafe.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    static void release(ByteBuffer buffer) {
+        if (INVOKE_CLEANER == null || !buffer.isDirect())
+            return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // left to the garbage collector
+        }
+    }
+}
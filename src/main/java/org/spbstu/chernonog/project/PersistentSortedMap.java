@@ -0,0 +1,370 @@
+package org.spbstu.chernonog.project;
+
+
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Immutable sorted map in which every update returns a new version and leaves the old one
+ * intact. Versions share structure: an update copies only the entries on the path to the
+ * changed key, O(log n) of them in expectation, and everything else is shared.
+ * <p>
+ * Splaying rewrites the tree on every read, which does not combine with immutability, so
+ * the tree is a treap instead: every entry gets a random priority, parents outrank their
+ * children, and the expected depth is logarithmic whatever the order of the updates.
+ * Removals and ranges are built on join and split, which also copy only along one path.
+ * <p>
+ * All fields are final, so any version can be handed to other threads and read without
+ * locking. The {@link Map} mutators throw {@link UnsupportedOperationException}, updates
+ * go through {@link #plus} and {@link #minus}; {@link #subMap}, {@link #headMap} and
+ * {@link #tailMap} return independent versions holding the range.
+ */
+public final class PersistentSortedMap<K, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+
+    private static final PersistentSortedMap<?, ?> EMPTY = new PersistentSortedMap<>(null, null);
+
+    private final Comparator<? super K> comparator;
+
+    final Node<K, V> root;
+
+    private transient Set<Map.Entry<K, V>> entrySet;
+
+    private PersistentSortedMap(Comparator<? super K> comparator, Node<K, V> root) {
+        this.comparator = comparator;
+        this.root = root;
+    }
+
+    ///////CONSTRUCTORS
+
+    @SuppressWarnings("unchecked")
+    public static <K extends Comparable<? super K>, V> PersistentSortedMap<K, V> empty() {
+        return (PersistentSortedMap<K, V>) EMPTY;
+    }
+
+    public static <K, V> PersistentSortedMap<K, V> empty(Comparator<? super K> comparator) {
+        return new PersistentSortedMap<>(comparator, null);
+    }
+
+    /**
+     * Returns a version holding the entries of the map, with its ordering if it is sorted.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentSortedMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+        if (map instanceof PersistentSortedMap)
+            return (PersistentSortedMap<K, V>) map;
+        Comparator<? super K> comparator = map instanceof SortedMap ? ((SortedMap<K, ?>) map).comparator() : null;
+        PersistentSortedMap<K, V> result = empty(comparator);
+        for (Map.Entry<? extends K, ? extends V> e : map.entrySet())
+            result = result.plus(e.getKey(), e.getValue());
+        return result;
+    }
+
+    ///////UPDATES
+
+    /**
+     * Returns a version mapping the key to the value; this one if it already does.
+     */
+    public PersistentSortedMap<K, V> plus(K key, V value) {
+        if (root == null)
+            compare(key, key); // type (and possibly null) check
+        Node<K, V> r = insert(root, key, value);
+        return r == root ? this : new PersistentSortedMap<>(comparator, r);
+    }
+
+    /**
+     * Returns a version without the key; this one if there is no such key.
+     */
+    public PersistentSortedMap<K, V> minus(Object key) {
+        Node<K, V> r = delete(root, key);
+        return r == root ? this : new PersistentSortedMap<>(comparator, r);
+    }
+
+    public PersistentSortedMap<K, V> plusAll(Map<? extends K, ? extends V> map) {
+        PersistentSortedMap<K, V> result = this;
+        for (Map.Entry<? extends K, ? extends V> e : map.entrySet())
+            result = result.plus(e.getKey(), e.getValue());
+        return result;
+    }
+
+    ///////QUERY OPS
+
+    @Override
+    public int size() {
+        return sizeOf(root);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getNode(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Node<K, V> p = getNode(key);
+        return p == null ? null : p.value;
+    }
+
+    /////////SORTED MAP METHODS
+
+    @Override
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public K firstKey() {
+        Node<K, V> p = root;
+        if (p == null)
+            throw new NoSuchElementException();
+        while (p.left != null)
+            p = p.left;
+        return p.key;
+    }
+
+    @Override
+    public K lastKey() {
+        Node<K, V> p = root;
+        if (p == null)
+            throw new NoSuchElementException();
+        while (p.right != null)
+            p = p.right;
+        return p.key;
+    }
+
+    @Override
+    public PersistentSortedMap<K, V> subMap(K fromKey, K toKey) {
+        if (compare(fromKey, toKey) > 0)
+            throw new IllegalArgumentException("fromKey > toKey");
+        return range(splitBelow(splitAbove(root, fromKey, true), toKey, false));
+    }
+
+    @Override
+    public PersistentSortedMap<K, V> headMap(K toKey) {
+        compare(toKey, toKey);
+        return range(splitBelow(root, toKey, false));
+    }
+
+    @Override
+    public PersistentSortedMap<K, V> tailMap(K fromKey) {
+        compare(fromKey, fromKey);
+        return range(splitAbove(root, fromKey, true));
+    }
+
+    /////////VIEWS
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        return (es != null) ? es : (entrySet = new EntrySet());
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator<>(root);
+        }
+
+        @Override
+        public int size() {
+            return PersistentSortedMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+            Node<K, V> p = getNode(entry.getKey());
+            return p != null && SplayTreeMap.valEquals(p.value, entry.getValue());
+        }
+    }
+
+    // in-order walk with an explicit stack
+    static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private Node<K, V>[] stack;
+        private int depth;
+
+        @SuppressWarnings("unchecked")
+        EntryIterator(Node<K, V> root) {
+            stack = (Node<K, V>[]) new Node[16];
+            pushLeft(root);
+        }
+
+        private void pushLeft(Node<K, V> p) {
+            for (; p != null; p = p.left) {
+                if (depth == stack.length)
+                    stack = Arrays.copyOf(stack, depth << 1);
+                stack[depth++] = p;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return depth > 0;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (depth == 0)
+                throw new NoSuchElementException();
+            Node<K, V> e = stack[--depth];
+            pushLeft(e.right);
+            return e;
+        }
+    }
+
+
+    //INTERNAL OPS
+
+    private PersistentSortedMap<K, V> range(Node<K, V> r) {
+        return r == root ? this : new PersistentSortedMap<>(comparator, r);
+    }
+
+    private Node<K, V> getNode(Object key) {
+        Node<K, V> p = root;
+        while (p != null) {
+            int cmp = compare(key, p.key);
+            if (cmp < 0)
+                p = p.left;
+            else if (cmp > 0)
+                p = p.right;
+            else
+                return p;
+        }
+        return null;
+    }
+
+    private Node<K, V> insert(Node<K, V> t, K key, V value) {
+        if (t == null)
+            return new Node<>(key, value, null, null, ThreadLocalRandom.current().nextInt());
+        int cmp = compare(key, t.key);
+        if (cmp == 0)
+            return t.value == value ? t : new Node<>(t.key, value, t.left, t.right, t.priority);
+        if (cmp < 0) {
+            Node<K, V> l = insert(t.left, key, value);
+            if (l == t.left)
+                return t;
+            if (l.priority > t.priority) // rotate right
+                return new Node<>(l.key, l.value, l.left, new Node<>(t.key, t.value, l.right, t.right, t.priority), l.priority);
+            return new Node<>(t.key, t.value, l, t.right, t.priority);
+        } else {
+            Node<K, V> r = insert(t.right, key, value);
+            if (r == t.right)
+                return t;
+            if (r.priority > t.priority) // rotate left
+                return new Node<>(r.key, r.value, new Node<>(t.key, t.value, t.left, r.left, t.priority), r.right, r.priority);
+            return new Node<>(t.key, t.value, t.left, r, t.priority);
+        }
+    }
+
+    private Node<K, V> delete(Node<K, V> t, Object key) {
+        if (t == null)
+            return null;
+        int cmp = compare(key, t.key);
+        if (cmp == 0)
+            return join(t.left, t.right);
+        if (cmp < 0) {
+            Node<K, V> l = delete(t.left, key);
+            return l == t.left ? t : new Node<>(t.key, t.value, l, t.right, t.priority);
+        } else {
+            Node<K, V> r = delete(t.right, key);
+            return r == t.right ? t : new Node<>(t.key, t.value, t.left, r, t.priority);
+        }
+    }
+
+    // all keys of l are less than those of r
+    private static <K, V> Node<K, V> join(Node<K, V> l, Node<K, V> r) {
+        if (l == null)
+            return r;
+        if (r == null)
+            return l;
+        if (l.priority > r.priority)
+            return new Node<>(l.key, l.value, l.left, join(l.right, r), l.priority);
+        return new Node<>(r.key, r.value, join(l, r.left), r.right, r.priority);
+    }
+
+    // the part of the tree with keys less than (or equal to, if inclusive) the given one
+    private Node<K, V> splitBelow(Node<K, V> t, Object key, boolean inclusive) {
+        if (t == null)
+            return null;
+        int cmp = compare(t.key, key);
+        if (cmp < 0 || (cmp == 0 && inclusive)) {
+            Node<K, V> r = splitBelow(t.right, key, inclusive);
+            return r == t.right ? t : new Node<>(t.key, t.value, t.left, r, t.priority);
+        }
+        return splitBelow(t.left, key, inclusive);
+    }
+
+    // the part of the tree with keys greater than (or equal to, if inclusive) the given one
+    private Node<K, V> splitAbove(Node<K, V> t, Object key, boolean inclusive) {
+        if (t == null)
+            return null;
+        int cmp = compare(t.key, key);
+        if (cmp > 0 || (cmp == 0 && inclusive)) {
+            Node<K, V> l = splitAbove(t.left, key, inclusive);
+            return l == t.left ? t : new Node<>(t.key, t.value, l, t.right, t.priority);
+        }
+        return splitAbove(t.right, key, inclusive);
+    }
+
+    @SuppressWarnings("unchecked")
+    final int compare(Object k1, Object k2) {
+        return comparator == null ? ((Comparable<? super K>) k1).compareTo((K) k2)
+                : comparator.compare((K) k1, (K) k2);
+    }
+
+    static int sizeOf(Node<?, ?> e) {
+        return e == null ? 0 : e.size;
+    }
+
+
+    //NODE
+    static final class Node<K, V> implements Map.Entry<K, V> {
+        final K key;
+        final V value;
+        final Node<K, V> left;
+        final Node<K, V> right;
+        // number of entries in the subtree rooted here
+        final int size;
+        // heap order: no child has a greater priority than its parent
+        final int priority;
+
+        Node(K key, V value, Node<K, V> left, Node<K, V> right, int priority) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.size = 1 + sizeOf(left) + sizeOf(right);
+            this.priority = priority;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return SplayTreeMap.valEquals(key, e.getKey()) && SplayTreeMap.valEquals(value, e.getValue());
+        }
+
+        public int hashCode() {
+            int keyHash = (key == null ? 0 : key.hashCode());
+            int valueHash = (value == null ? 0 : value.hashCode());
+            return keyHash ^ valueHash;
+        }
+
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.spbstu.chernonog.project;
+
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides how a {@link SplayTreeMap} restructures itself after finding (or inserting) an entry.
+ * Full splaying on every access adapts fastest, but each access then rewrites the
+ * whole search path; for read-mostly workloads over an already well-shaped tree
+ * a cheaper policy may pay off. Removals and the navigation methods always splay.
+ */
+public interface SplayPolicy {
+
+    enum Restructuring {
+        // leave the tree as it is
+        NONE,
+        // semi-splaying (Sleator & Tarjan): zig-zig steps rotate only the parent, so the path is roughly halved
+        SEMI_SPLAY,
+        // move the accessed entry to the root
+        SPLAY
+    }
+
+    /**
+     * @param depth depth of the accessed entry, the root has depth 0
+     */
+    Restructuring onAccess(int depth);
+
+    // the default, maps using it splay top-down without recording the search path
+    SplayPolicy ALWAYS = depth -> Restructuring.SPLAY;
+
+    static SplayPolicy always() {
+        return ALWAYS;
+    }
+
+    static SplayPolicy semiSplay() {
+        return depth -> Restructuring.SEMI_SPLAY;
+    }
+
+    /**
+     * Splays only entries found deeper than the given depth.
+     */
+    static SplayPolicy depthThreshold(int maxDepth) {
+        if (maxDepth < 0)
+            throw new IllegalArgumentException("maxDepth < 0");
+        return depth -> depth > maxDepth ? Restructuring.SPLAY : Restructuring.NONE;
+    }
+
+    /**
+     * Splays with the given probability.
+     */
+    static SplayPolicy probabilistic(double probability) {
+        if (!(probability >= 0 && probability <= 1))
+            throw new IllegalArgumentException("probability is not in [0, 1]");
+        return depth -> ThreadLocalRandom.current().nextDouble() < probability
+                ? Restructuring.SPLAY : Restructuring.NONE;
+    }
+}
@@ -0,0 +1,225 @@
+package org.spbstu.chernonog.project;
+
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Sorted cache bounded by an entry count or a total weight. It is a {@link SplayTreeMap}
+ * and nothing else: every access splays its entry to the root, so the entries that have
+ * not been used for a while sink to the leaves, and eviction removes a deep leaf (see
+ * {@link SplayTreeMap#removeDeepLeaf()}) without restructuring the tree. That makes it
+ * an approximate LRU cache that also answers range queries through {@link #asMap()},
+ * with no recency list next to the tree.
+ * <p>
+ * Null values are not permitted, so {@code null} from {@link #get} always means a miss.
+ * Like the map, the cache is not synchronized.
+ */
+public class SplayTreeCache<K, V> {
+
+    /**
+     * Weight of a cached entry, e.g. its size in bytes. Must not change while the entry is cached.
+     */
+    @FunctionalInterface
+    public interface Weigher<K, V> {
+        long weigh(K key, V value);
+    }
+
+    private final SplayTreeMap<K, V> map;
+
+    private final long maximumWeight;
+
+    private final Weigher<? super K, ? super V> weigher;
+
+    private long weight;
+
+    private BiConsumer<? super K, ? super V> evictionListener;
+
+    private long hitCount, missCount, evictionCount, evictionWeight;
+
+    /**
+     * Creates a cache holding at most {@code maximumSize} entries, ordered by the comparator
+     * or, if it is null, by the natural ordering of the keys.
+     */
+    public SplayTreeCache(Comparator<? super K> comparator, long maximumSize) {
+        this(comparator, maximumSize, (key, value) -> 1);
+    }
+
+    /**
+     * Creates a cache holding entries of at most {@code maximumWeight} total weight.
+     */
+    public SplayTreeCache(Comparator<? super K> comparator, long maximumWeight, Weigher<? super K, ? super V> weigher) {
+        if (maximumWeight < 0)
+            throw new IllegalArgumentException("maximumWeight < 0");
+        map = new SplayTreeMap<>(comparator);
+        this.maximumWeight = maximumWeight;
+        this.weigher = Objects.requireNonNull(weigher);
+    }
+
+    /**
+     * Sets the action called with every entry evicted to make room, after it is removed;
+     * entries removed explicitly or replaced are not passed to it.
+     */
+    public void setEvictionListener(BiConsumer<? super K, ? super V> listener) {
+        evictionListener = listener;
+    }
+
+    ///////QUERY OPS
+
+    /**
+     * @return the cached value, or {@code null} on a miss
+     */
+    public V get(K key) {
+        V value = map.get(key);
+        if (value == null)
+            missCount++;
+        else
+            hitCount++;
+        return value;
+    }
+
+    /**
+     * Returns the cached value, or computes, caches and returns it on a miss.
+     * A {@code null} from the function is returned and not cached.
+     */
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        V value = get(key);
+        if (value == null) {
+            value = mappingFunction.apply(key);
+            if (value != null)
+                put(key, value);
+        }
+        return value;
+    }
+
+    // whether the key is cached; it is splayed like on get, but no hit or miss is counted
+    public boolean containsKey(K key) {
+        return map.containsKey(key);
+    }
+
+    /**
+     * Caches the value, then evicts deep entries until the cache is within its bound.
+     * A value heavier than the bound is not cached: it replaces the previous mapping of the
+     * key and is evicted right away, the other entries stay cached.
+     *
+     * @return the previous value, or {@code null}
+     */
+    public V put(K key, V value) {
+        Objects.requireNonNull(value);
+        long newWeight = weigher.weigh(key, value);
+        if (newWeight > maximumWeight) {
+            V oldValue = map.remove(key);
+            if (oldValue != null)
+                weight -= weigher.weigh(key, oldValue);
+            evictionCount++;
+            evictionWeight += newWeight;
+            if (evictionListener != null)
+                evictionListener.accept(key, value);
+            return oldValue;
+        }
+        V oldValue = map.put(key, value);
+        if (oldValue != null)
+            weight -= weigher.weigh(key, oldValue);
+        weight += newWeight;
+        // the new entry is the root, so it is a leaf only when it is alone and fits
+        while (weight > maximumWeight) {
+            SplayTreeMap.Entry<K, V> e = map.removeDeepLeaf();
+            long w = weigher.weigh(e.key, e.value);
+            weight -= w;
+            evictionCount++;
+            evictionWeight += w;
+            if (evictionListener != null)
+                evictionListener.accept(e.key, e.value);
+        }
+        return oldValue;
+    }
+
+    /**
+     * @return the removed value, or {@code null}
+     */
+    public V remove(K key) {
+        V oldValue = map.remove(key);
+        if (oldValue != null)
+            weight -= weigher.weigh(key, oldValue);
+        return oldValue;
+    }
+
+    public void clear() {
+        map.clear();
+        weight = 0;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    // total weight of the cached entries, their number unless a weigher was given
+    public long weight() {
+        return weight;
+    }
+
+    public long maximumWeight() {
+        return maximumWeight;
+    }
+
+    /**
+     * Read-only view of the cached entries in key order, for range queries. Lookups
+     * through the view splay like {@link #get} but are not counted as hits or misses.
+     */
+    public NavigableMap<K, V> asMap() {
+        return Collections.unmodifiableNavigableMap(map);
+    }
+
+    public Stats stats() {
+        return new Stats(hitCount, missCount, evictionCount, evictionWeight);
+    }
+
+    /**
+     * Cache statistics at the time {@link #stats()} was called.
+     */
+    public static final class Stats {
+        private final long hitCount;
+        private final long missCount;
+        private final long evictionCount;
+        private final long evictionWeight;
+
+        Stats(long hitCount, long missCount, long evictionCount, long evictionWeight) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.evictionCount = evictionCount;
+            this.evictionWeight = evictionWeight;
+        }
+
+        public long hitCount() {
+            return hitCount;
+        }
+
+        public long missCount() {
+            return missCount;
+        }
+
+        // share of lookups that were hits, 1 if there were none
+        public double hitRate() {
+            long requests = hitCount + missCount;
+            return requests == 0 ? 1 : (double) hitCount / requests;
+        }
+
+        public long evictionCount() {
+            return evictionCount;
+        }
+
+        public long evictionWeight() {
+            return evictionWeight;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hitCount + ", misses=" + missCount
+                    + ", evictions=" + evictionCount + ", evictionWeight=" + evictionWeight;
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package org.spbstu.chernonog.project;
 
 
+import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
-public class SplayTreeMap<K, V> extends AbstractMap<K, V> implements SortedMap<K, V> {
+public class SplayTreeMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
 
     private final Comparator<? super K> comparator;
 
@@ -13,78 +16,192 @@ public class SplayTreeMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
 
     private int modCount = 0;
 
+    // changes whenever the tree is restructured, including splays made by lookups
+    private int splayCount = 0;
+
+
+    SplayTreeMap.Entry<K, V> root;
+
+    // scratch node holding the left and right trees during a top-down splay
+    private final SplayTreeMap.Entry<K, V> splayHeader = new SplayTreeMap.Entry<>(null, null);
+
+    private final SplayPolicy splayPolicy;
+
+    // search path recorded by lookups and inserts under policies other than SplayPolicy.ALWAYS
+    private SplayTreeMap.Entry<K, V>[] path;
+
+    private int pathLength;
+
+    // null unless enabled
+    private SplayTreeMetrics metrics;
+
+    // some entries are also held by a FrozenSplayTreeMap and are copied before they change
+    private boolean shared;
 
-    private SplayTreeMap.Entry<K, V> root;
 
 
     ///////CONSTRUCTORS
 
     public SplayTreeMap() {
         comparator = null;
+        splayPolicy = SplayPolicy.ALWAYS;
     }
 
     public SplayTreeMap(Comparator<? super K> comparator) {
         this.comparator = comparator;
+        splayPolicy = SplayPolicy.ALWAYS;
+    }
+
+    /**
+     * Creates an empty map restructuring itself on lookups and inserts as the policy says.
+     *
+     * @param comparator the ordering, {@code null} for the natural ordering of the keys
+     */
+    public SplayTreeMap(Comparator<? super K> comparator, SplayPolicy splayPolicy) {
+        this.comparator = comparator;
+        this.splayPolicy = Objects.requireNonNull(splayPolicy);
     }
 
     public SplayTreeMap(Map<? extends K, ? extends V> map) {
         comparator = null;
+        splayPolicy = SplayPolicy.ALWAYS;
         putAll(map);
     }
 
+    /**
+     * Creates a map with the same entries and ordering as the given sorted map.
+     * The tree is built balanced in linear time, without comparing keys.
+     */
+    public SplayTreeMap(SortedMap<K, ? extends V> map) {
+        comparator = map.comparator();
+        splayPolicy = SplayPolicy.ALWAYS;
+        buildFromSorted(map.size(), map.entrySet().iterator(), false);
+    }
+
+    /**
+     * Creates a map from entries sorted in ascending key order, e.g. {@code stream.iterator()}.
+     * The tree is built bottom-up in linear time, as the entries arrive; its height is
+     * at most one more than that of a complete tree.
+     *
+     * @param checkOrder whether to compare neighbouring keys, otherwise the order is trusted
+     * @throws IllegalArgumentException if the order is checked and the keys are not strictly ascending
+     */
+    public static <K, V> SplayTreeMap<K, V> fromSorted(Comparator<? super K> comparator,
+                                                       Iterator<? extends Map.Entry<? extends K, ? extends V>> entries,
+                                                       boolean checkOrder) {
+        SplayTreeMap<K, V> map = new SplayTreeMap<>(comparator);
+        SortedBuilder<K, V> builder = new SortedBuilder<>(entries, checkOrder ? map : null);
+        map.root = builder.buildAll();
+        map.size = builder.count;
+        return map;
+    }
+
+    /**
+     * Like {@link #fromSorted(Comparator, Iterator, boolean)}, for exactly {@code size} entries
+     * known in advance; the tree is built balanced.
+     *
+     * @throws NoSuchElementException if the iterator has fewer than {@code size} entries
+     */
+    public static <K, V> SplayTreeMap<K, V> fromSorted(Comparator<? super K> comparator,
+                                                       Iterator<? extends Map.Entry<? extends K, ? extends V>> entries,
+                                                       int size, boolean checkOrder) {
+        if (size < 0)
+            throw new IllegalArgumentException("negative size: " + size);
+        SplayTreeMap<K, V> map = new SplayTreeMap<>(comparator);
+        map.buildFromSorted(size, entries, checkOrder);
+        return map;
+    }
+
     ///////QUERY OPS
 
     @Override
     public boolean containsValue(Object value) {
-        for (SplayTreeMap.Entry<K, V> e = getFirstEntry(); e != null; e = successor(e))
-            if (valEquals(value, e.value))
+        for (EntryIterator<K, V> it = new EntryIterator<>(this, getFirstEntry(), null, false); it.hasNext(); )
+            if (valEquals(value, it.nextEntry().value))
                 return true;
         return false;
     }
 
     @Override
     public boolean containsKey(Object key) {
+        if (metrics != null)
+            return timedGet(key) != null;
         return getEntry(key) != null;
     }
 
     @Override
     public V get(Object key) {
-        SplayTreeMap.Entry<K, V> p = getEntry(key);
+        SplayTreeMap.Entry<K, V> p = metrics != null ? timedGet(key) : getEntry(key);
         return (p == null ? null : p.value);
     }
 
     @Override
     public V remove(Object key) {
+        long start = metrics != null ? System.nanoTime() : 0L;
         SplayTreeMap.Entry<K, V> p = getEntry(key);
-        if (p == null)
-            return null;
-        V oldValue = p.value;
-        mergeDeleteEntry(p);
+        V oldValue = null;
+        if (p != null) {
+            oldValue = p.value;
+            mergeDeleteEntry(p);
+        }
+        if (metrics != null)
+            metrics.recordLatency(SplayTreeMetrics.Operation.REMOVE, System.nanoTime() - start);
         return oldValue;
     }
 
     @Override
     public V put(K key, V value) {
+        if (metrics != null) {
+            long start = System.nanoTime();
+            V oldValue = splayPut(key, value);
+            metrics.recordLatency(SplayTreeMetrics.Operation.PUT, System.nanoTime() - start);
+            return oldValue;
+        }
         return splayPut(key, value);
     }
 
+    private SplayTreeMap.Entry<K, V> timedGet(Object key) {
+        long start = System.nanoTime();
+        SplayTreeMap.Entry<K, V> p = getEntry(key);
+        metrics.recordLatency(SplayTreeMetrics.Operation.GET, System.nanoTime() - start);
+        return p;
+    }
+
     public int size() {
         return size;
     }
 
+    /**
+     * Sorts the entries of the given map, unless it is sorted the same way already,
+     * and adds them with {@link #putAllSorted}.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void putAll(Map<? extends K, ? extends V> map) {
+        if (map.size() <= 1 || (map instanceof SortedMap &&
+                Objects.equals(comparator, ((SortedMap<?, ?>) map).comparator()))) {
+            putAllSorted(map.entrySet());
+            return;
+        }
+        Map.Entry<? extends K, ? extends V>[] entries = map.entrySet().toArray(new Map.Entry[0]);
+        Arrays.sort(entries, (a, b) -> compare(a.getKey(), b.getKey()));
+        putAllSorted(Arrays.asList(entries));
+    }
+
     public void clear() {
         size = 0;
         root = null;
+        shared = false;
         modCount++;
     }
 
     @Override
     public void forEach(BiConsumer<? super K, ? super V> action) {
         Objects.requireNonNull(action);
-        int expectedModCount = modCount;
-        for (SplayTreeMap.Entry<K, V> e = getFirstEntry(); e != null; e = successor(e)) {
+        for (EntryIterator<K, V> it = new EntryIterator<>(this, getFirstEntry(), null, false); it.hasNext(); ) {
+            SplayTreeMap.Entry<K, V> e = it.nextEntry();
             action.accept(e.key, e.value);
-            if (expectedModCount != modCount) {
+            if (it.expectedModCount != modCount) {
                 throw new ConcurrentModificationException();
             }
         }
@@ -94,7 +211,7 @@ public class SplayTreeMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
     public boolean replace(K key, V oldValue, V newValue) {
         SplayTreeMap.Entry<K, V> p = getEntry(key);
         if (p != null && Objects.equals(oldValue, p.value)) {
-            p.value = newValue;
+            ownEntry(p).value = newValue;
             return true;
         }
         return false;
@@ -104,7 +221,7 @@ public class SplayTreeMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
     public V replace(K key, V value) {
         SplayTreeMap.Entry<K, V> p = getEntry(key);
         if (p != null) {
-            return p.setValue(value);
+            return ownEntry(p).setValue(value);
         }
         return null;
     }
@@ -112,11 +229,11 @@ public class SplayTreeMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
     @Override
     public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
         Objects.requireNonNull(function);
-        int expectedModCount = modCount;
-
-        for (SplayTreeMap.Entry<K, V> e = getFirstEntry(); e != null; e = successor(e)) {
+        unshare();
+        for (EntryIterator<K, V> it = new EntryIterator<>(this, getFirstEntry(), null, false); it.hasNext(); ) {
+            SplayTreeMap.Entry<K, V> e = it.nextEntry();
             e.value = function.apply(e.key, e.value);
-            if (expectedModCount != modCount) {
+            if (it.expectedModCount != modCount) {
                 throw new ConcurrentModificationException();
             }
         }
@@ -124,6 +241,9 @@ public class SplayTreeMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
 
     /////////VIEWS
     private EntrySet entrySet;
+    private KeySet<K> navigableKeySet;
+    private Values valueCollection;
+    private NavigableMap<K, V> descendingMap;
 
     @Override
     public Set<Map.Entry<K, V>> entrySet() {
@@ -131,9 +251,31 @@ public class SplayTreeMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
         return (es != null) ? es : (entrySet = new EntrySet());
     }
 
+    @Override
+    public Set<K> keySet() {
+        return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+        KeySet<K> nks = navigableKeySet;
+        return (nks != null) ? nks : (navigableKeySet = new KeySet<>(this));
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+        return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public Collection<V> values() {
+        Values vs = valueCollection;
+        return (vs != null) ? vs : (valueCollection = new Values());
+    }
+
     class EntrySet extends AbstractSet<Map.Entry<K, V>> {
         public Iterator<Map.Entry<K, V>> iterator() {
-            return new EntryIterator(SplayTreeMap.this, getFirstEntry(), null);
+            return new EntryIterator<>(SplayTreeMap.this, getFirstEntry(), null, false);
         }
 
         @Override
@@ -169,399 +311,2156 @@ public class SplayTreeMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
         public void clear() {
             SplayTreeMap.this.clear();
         }
+
+        @Override
+        public Spliterator<Map.Entry<K, V>> spliterator() {
+            return new EntrySpliterator<>(SplayTreeMap.this, null);
+        }
     }
 
+    class Values extends AbstractCollection<V> {
+        public Iterator<V> iterator() {
+            return new ValueIterator<>(SplayTreeMap.this, getFirstEntry(), null);
+        }
 
-    /////////SORTED MAP METHODS
-    @Override
-    public K firstKey() {
-        return key(splayToRoot(getFirstEntry()));
-    }
+        @Override
+        public int size() {
+            return SplayTreeMap.this.size();
+        }
 
-    @Override
-    public K lastKey() {
-        return key(splayToRoot(getLastEntry()));
-    }
+        @Override
+        public boolean contains(Object o) {
+            return SplayTreeMap.this.containsValue(o);
+        }
 
-    @Override
-    public Comparator<? super K> comparator() {
-        return comparator;
-    }
+        @Override
+        public boolean remove(Object o) {
+            for (EntryIterator<K, V> it = new EntryIterator<>(SplayTreeMap.this, getFirstEntry(), null, false); it.hasNext(); ) {
+                if (valEquals(it.next().getValue(), o)) {
+                    it.remove();
+                    return true;
+                }
+            }
+            return false;
+        }
 
-    @Override
-    public SortedMap<K, V> subMap(K fromKey, K toKey) {
-        return new SubMap(this, false, fromKey, false, toKey);
-    }
+        @Override
+        public void clear() {
+            SplayTreeMap.this.clear();
+        }
 
-    @Override
-    public SortedMap<K, V> headMap(K toKey) {
-        return new SubMap(this, true, null, false, toKey);
+        @Override
+        public Spliterator<V> spliterator() {
+            return new ValueSpliterator<>(SplayTreeMap.this, null);
+        }
     }
 
-    @Override
-    public SortedMap<K, V> tailMap(K fromKey) {
-        return new SubMap(this, false, fromKey, true, null);
+    Iterator<K> keyIterator() {
+        return new KeyIterator<>(this, getFirstEntry(), null, false);
     }
 
-    private static final Object UNBOUNDED = new Object();
+    Iterator<K> descendingKeyIterator() {
+        return new KeyIterator<>(this, getLastEntry(), null, true);
+    }
 
-    class SubMap extends AbstractMap<K, V> implements SortedMap<K, V> {
-        final SplayTreeMap<K, V> m;
-        final K lo, hi;
-        final boolean fromStart, toEnd;
+    Spliterator<K> keySpliterator() {
+        return new KeySpliterator<>(this, null);
+    }
 
-        SubMap(
-                SplayTreeMap<K, V> m,
-                boolean fromStart, K lo,
-                boolean toEnd, K hi
-        ) {
-            if (!fromStart && !toEnd) {
-                if (m.compare(lo, hi) > 0)
-                    throw new IllegalArgumentException("fromKey > toKey");
-            } else {
-                if (!fromStart) // type check
-                    m.compare(lo, lo);
-                if (!toEnd)
-                    m.compare(hi, hi);
-            }
+    static final class KeySet<E> extends AbstractSet<E> implements NavigableSet<E> {
+        private final NavigableMap<E, ?> m;
 
-            this.m = m;
-            this.fromStart = fromStart;
-            this.lo = lo;
-            this.toEnd = toEnd;
-            this.hi = hi;
+        KeySet(NavigableMap<E, ?> map) {
+            m = map;
         }
 
-        final boolean tooLow(Object key) {
-            if (!fromStart) {
-                int c = m.compare(key, lo);
-                return c < 0; // fromKey is inclusive, == 0 is ok
-            }
-            return false;
+        @Override
+        public Iterator<E> iterator() {
+            if (m instanceof SplayTreeMap)
+                return ((SplayTreeMap<E, ?>) m).keyIterator();
+            if (m instanceof SubMap)
+                return ((SubMap<E, ?>) m).keyIterator();
+            return keys(m.entrySet().iterator()); // e.g. an ExpiringSplayTreeMap
         }
 
-        final boolean tooHigh(Object key) {
-            if (!toEnd) {
-                int c = m.compare(key, hi);
-                return c >= 0; // toKey exclusive, == 0 is not ok
-            }
-            return false;
+        @Override
+        public Spliterator<E> spliterator() {
+            if (m instanceof SplayTreeMap)
+                return ((SplayTreeMap<E, ?>) m).keySpliterator();
+            if (m instanceof AscendingSubMap)
+                return ((AscendingSubMap<E, ?>) m).keySpliterator();
+            return super.spliterator(); // descending views, in the order of their comparator
         }
 
-        final boolean inRange(Object key) {
-            return !tooLow(key) && !tooHigh(key);
-        }
+        @Override
+        public Iterator<E> descendingIterator() {
+            if (m instanceof SplayTreeMap)
+                return ((SplayTreeMap<E, ?>) m).descendingKeyIterator();
+            if (m instanceof SubMap)
+                return ((SubMap<E, ?>) m).descendingKeyIterator();
+            return keys(m.descendingMap().entrySet().iterator());
+        }
+
+        private static <E> Iterator<E> keys(Iterator<? extends Map.Entry<E, ?>> entries) {
+            return new Iterator<E>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
 
-        final SplayTreeMap.Entry<K, V> subLowest() {
-            return (fromStart ? m.getFirstEntry() : m.getCeilingEntry(lo));
-        }
+                @Override
+                public E next() {
+                    return entries.next().getKey();
+                }
 
-        final SplayTreeMap.Entry<K, V> subHighest() {
-            return (toEnd ? m.getLastEntry() : m.getLowerEntry(hi));
+                @Override
+                public void remove() {
+                    entries.remove();
+                }
+            };
         }
 
-        final SplayTreeMap.Entry<K, V> highFence() {
-            return (toEnd ? null : m.getCeilingEntry(hi));
+        @Override
+        public int size() {
+            return m.size();
         }
 
-        // PUBLIC
         @Override
         public boolean isEmpty() {
-            return (fromStart && toEnd) ? m.isEmpty() : entrySet().isEmpty();
+            return m.isEmpty();
         }
 
         @Override
-        public int size() {
-            return (fromStart && toEnd) ? m.size() : entrySet().size();
+        public boolean contains(Object o) {
+            return m.containsKey(o);
         }
 
         @Override
-        public final boolean containsKey(Object key) {
-            return inRange(key) && m.containsKey(key);
+        public boolean containsAll(Collection<?> c) {
+            if (m instanceof SplayTreeMap)
+                return ((SplayTreeMap<E, ?>) m).containsAll(c);
+            return super.containsAll(c);
         }
 
         @Override
-        public final V put(K key, V value) {
-            if (!inRange(key))
-                throw new IllegalArgumentException("key out of range");
-            return m.put(key, value);
+        public void clear() {
+            m.clear();
         }
 
         @Override
-        public final V get(Object key) {
-            return !inRange(key) ? null : m.get(key);
+        public E lower(E e) {
+            return m.lowerKey(e);
         }
 
         @Override
-        public final V remove(Object key) {
-            return !inRange(key) ? null : m.remove(key);
+        public E floor(E e) {
+            return m.floorKey(e);
         }
 
-        // SORTED MAP METHODS
         @Override
-        public final K firstKey() {
-            return key(m.splayToRoot(subLowest()));
+        public E ceiling(E e) {
+            return m.ceilingKey(e);
         }
 
         @Override
-        public final K lastKey() {
-            return key(m.splayToRoot(subHighest()));
+        public E higher(E e) {
+            return m.higherKey(e);
         }
 
         @Override
-        public Comparator<? super K> comparator() {
-            return m.comparator;
+        public E first() {
+            return m.firstKey();
         }
 
         @Override
-        public SortedMap<K, V> subMap(K fromKey, K toKey) {
-            if (!inRange(fromKey))
-                throw new IllegalArgumentException("fromKey out of range");
-            if (!inRange(toKey))
-                throw new IllegalArgumentException("toKey out of range");
-            return new SubMap(m, false, fromKey, false, toKey);
+        public E last() {
+            return m.lastKey();
         }
 
         @Override
-        public SortedMap<K, V> headMap(K toKey) {
-            if (!inRange(toKey))
-                throw new IllegalArgumentException("toKey out of range");
-            return new SubMap(m, fromStart, lo, false, toKey);
+        public Comparator<? super E> comparator() {
+            return m.comparator();
         }
 
         @Override
-        public SortedMap<K, V> tailMap(K fromKey) {
-            if (!inRange(fromKey))
-                throw new IllegalArgumentException("fromKey out of range");
-            return new SubMap(m, false, fromKey, toEnd, hi);
+        public E pollFirst() {
+            Map.Entry<E, ?> e = m.pollFirstEntry();
+            return (e == null) ? null : e.getKey();
         }
 
-
-        //VIEWS
         @Override
-        public Set<Entry<K, V>> entrySet() {
-            return new SubEntrySet();
+        public E pollLast() {
+            Map.Entry<E, ?> e = m.pollLastEntry();
+            return (e == null) ? null : e.getKey();
         }
 
-        class SubEntrySet extends AbstractSet<Map.Entry<K, V>> {
-            private int size = -1;
-            private int modCount;
-
-            @Override
-            public int size() {
-                if (fromStart && toEnd)
-                    return m.size();
-                if (size == -1 || modCount != m.modCount) {
-                    modCount = m.modCount;
-                    size = 0;
-                    for (Entry<K, V> ignored : this) {
-                        size++;
-                    }
-                }
-                return size;
-            }
-
-            @Override
-            public boolean contains(Object o) {
-                if (!(o instanceof Map.Entry))
-                    return false;
-                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
-                Object key = entry.getKey();
-                if (!inRange(key))
-                    return false;
-                SplayTreeMap.Entry<?, ?> node = m.getEntry(key);
-                return node != null &&
-                        valEquals(node.getValue(), entry.getValue());
-            }
-
-            @Override
-            public boolean remove(Object o) {
-                if (!(o instanceof Map.Entry))
-                    return false;
-                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
-                Object key = entry.getKey();
-                if (!inRange(key))
-                    return false;
-                SplayTreeMap.Entry<K, V> node = m.getEntry(key);
-                if (node != null && valEquals(node.getValue(), entry.getValue())) {
-                    m.mergeDeleteEntry(node);
-                    return true;
-                }
-                return false;
-            }
-
-            @Override
-            public Iterator<Entry<K, V>> iterator() {
-                return new EntryIterator(m, subLowest(), highFence());
-            }
+        @Override
+        public boolean remove(Object o) {
+            int oldSize = size();
+            m.remove(o);
+            return size() != oldSize;
         }
-    }
 
+        @Override
+        public NavigableSet<E> subSet(E fromElement, boolean fromInclusive,
+                                      E toElement, boolean toInclusive) {
+            return new KeySet<>(m.subMap(fromElement, fromInclusive, toElement, toInclusive));
+        }
 
-    // ITERATORS
-    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        @Override
+        public NavigableSet<E> headSet(E toElement, boolean inclusive) {
+            return new KeySet<>(m.headMap(toElement, inclusive));
+        }
 
-        SplayTreeMap.Entry<K, V> lastReturned;
-        SplayTreeMap.Entry<K, V> next;
-        final Object fenceKey;
-        SplayTreeMap<K, V> m;
-        int expectedModCount;
+        @Override
+        public NavigableSet<E> tailSet(E fromElement, boolean inclusive) {
+            return new KeySet<>(m.tailMap(fromElement, inclusive));
+        }
 
-        EntryIterator(SplayTreeMap<K, V> map,
-                      SplayTreeMap.Entry<K, V> first,
-                      SplayTreeMap.Entry<K, V> fence) {
-            m = map;
-            expectedModCount = m.modCount;
-            lastReturned = null;
-            next = first;
-            fenceKey = fence == null ? UNBOUNDED : fence.key;
+        @Override
+        public SortedSet<E> subSet(E fromElement, E toElement) {
+            return subSet(fromElement, true, toElement, false);
         }
 
-        public final boolean hasNext() {
-            return next != null && next.key != fenceKey;
+        @Override
+        public SortedSet<E> headSet(E toElement) {
+            return headSet(toElement, false);
         }
 
         @Override
-        public SplayTreeMap.Entry<K, V> next() {
-            SplayTreeMap.Entry<K, V> e = next;
-            if (e == null || e.key == fenceKey)
-                throw new NoSuchElementException();
-            if (m.modCount != expectedModCount)
-                throw new ConcurrentModificationException();
-            next = successor(e);
-            lastReturned = e;
-            return e;
+        public SortedSet<E> tailSet(E fromElement) {
+            return tailSet(fromElement, true);
         }
 
         @Override
-        public void remove() {
-            if (lastReturned == null)
-                throw new IllegalStateException();
-            if (modCount != expectedModCount)
-                throw new ConcurrentModificationException();
-//            // deleted entries are replaced by their successors
-//            if (lastReturned.left != null && lastReturned.right != null)
-//                next = lastReturned;
-            mergeDeleteEntry(lastReturned);
-            expectedModCount = modCount;
-            lastReturned = null;
+        public NavigableSet<E> descendingSet() {
+            return new KeySet<>(m.descendingMap());
         }
     }
 
 
-    //INTERNAL OPS
-    private Entry<K, V> getEntry(Object key) {
-        if (root == null) {
-            return null;
-        }
-        splayToRoot(findClosest(key));
-        if (compare(root.key, key) != 0) {
-            return null;
-        } else {
-            return root;
-        }
+    /////////SORTED MAP METHODS
+    @Override
+    public K firstKey() {
+        return key(splayToRoot(getFirstEntry()));
     }
 
+    @Override
+    public K lastKey() {
+        return key(splayToRoot(getLastEntry()));
+    }
 
-    final SplayTreeMap.Entry<K, V> findClosest(Object key) {
-        return findClosest(root, key);
+    @Override
+    public Comparator<? super K> comparator() {
+        return comparator;
     }
 
-    final SplayTreeMap.Entry<K, V> findClosest(SplayTreeMap.Entry<K, V> start, Object key) {
-        if (comparator != null)
-            return findClosestUsingComparator(start, key);
-        if (key == null)
-            throw new NullPointerException();
-        return findClosestNotUsingComparator(start, key);
+    public SplayPolicy splayPolicy() {
+        return splayPolicy;
     }
 
-    final SplayTreeMap.Entry<K, V> findClosestUsingComparator(SplayTreeMap.Entry<K, V> start, Object key) {
-        @SuppressWarnings("unchecked")
-        K k = (K) key;
-        Comparator<? super K> cpr = comparator;
-        SplayTreeMap.Entry<K, V> p = start;
-        if (cpr != null) {
-            while (p != null) {
-                int cmp = cpr.compare(k, p.key);
-                if (cmp < 0 && p.left != null)
-                    p = p.left;
-                else if (cmp > 0 && p.right != null)
-                    p = p.right;
+    /**
+     * Starts collecting {@link SplayTreeMetrics}, or returns the ones being collected.
+     */
+    public SplayTreeMetrics enableMetrics() {
+        if (metrics == null)
+            metrics = new SplayTreeMetrics();
+        return metrics;
+    }
+
+    public void disableMetrics() {
+        metrics = null;
+    }
+
+    // null unless enabled
+    public SplayTreeMetrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+        return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+        return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+        return tailMap(fromKey, true);
+    }
+
+
+    /////////NAVIGABLE MAP METHODS
+    // every lookup below is a single splaying search, the entry found ends up in the root
+
+    @Override
+    public Map.Entry<K, V> firstEntry() {
+        return exportEntry(splayToRoot(getFirstEntry()));
+    }
+
+    @Override
+    public Map.Entry<K, V> lastEntry() {
+        return exportEntry(splayToRoot(getLastEntry()));
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry() {
+        SplayTreeMap.Entry<K, V> p = splayToRoot(getFirstEntry());
+        Map.Entry<K, V> result = exportEntry(p);
+        if (p != null)
+            mergeDeleteEntry(p);
+        return result;
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry() {
+        SplayTreeMap.Entry<K, V> p = splayToRoot(getLastEntry());
+        Map.Entry<K, V> result = exportEntry(p);
+        if (p != null)
+            mergeDeleteEntry(p);
+        return result;
+    }
+
+    @Override
+    public Map.Entry<K, V> lowerEntry(K key) {
+        return exportEntry(splayFloor(key, false));
+    }
+
+    @Override
+    public K lowerKey(K key) {
+        return keyOrNull(splayFloor(key, false));
+    }
+
+    @Override
+    public Map.Entry<K, V> floorEntry(K key) {
+        return exportEntry(splayFloor(key, true));
+    }
+
+    @Override
+    public K floorKey(K key) {
+        return keyOrNull(splayFloor(key, true));
+    }
+
+    @Override
+    public Map.Entry<K, V> ceilingEntry(K key) {
+        return exportEntry(splayCeiling(key, true));
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+        return keyOrNull(splayCeiling(key, true));
+    }
+
+    @Override
+    public Map.Entry<K, V> higherEntry(K key) {
+        return exportEntry(splayCeiling(key, false));
+    }
+
+    @Override
+    public K higherKey(K key) {
+        return keyOrNull(splayCeiling(key, false));
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+        NavigableMap<K, V> km = descendingMap;
+        return (km != null) ? km :
+                (descendingMap = new DescendingSubMap<>(this,
+                        true, null, true,
+                        true, null, true));
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive,
+                                     K toKey, boolean toInclusive) {
+        return new AscendingSubMap<>(this,
+                false, fromKey, fromInclusive,
+                false, toKey, toInclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+        return new AscendingSubMap<>(this,
+                true, null, true,
+                false, toKey, inclusive);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+        return new AscendingSubMap<>(this,
+                false, fromKey, inclusive,
+                true, null, true);
+    }
+
+
+    /**
+     * Creates a {@link Finger} placed at the least key greater than or equal to the given one.
+     */
+    public Finger<K, V> fingerAt(K key) {
+        Finger<K, V> finger = new Finger<>(this);
+        finger.seek(key);
+        return finger;
+    }
+
+    /////////PEEK OPS
+    // reads that never restructure the tree or record metrics, for observers that must
+    // not disturb the shape tuned by the main workload; returned entries are immutable
+
+    public V peekGet(Object key) {
+        SplayTreeMap.Entry<K, V> p = peekEntry(key);
+        return p == null ? null : p.value;
+    }
+
+    public boolean peekContainsKey(Object key) {
+        return peekEntry(key) != null;
+    }
+
+    public Map.Entry<K, V> peekFirstEntry() {
+        return exportEntry(getFirstEntry());
+    }
+
+    public Map.Entry<K, V> peekLastEntry() {
+        return exportEntry(getLastEntry());
+    }
+
+    public Map.Entry<K, V> peekCeilingEntry(K key) {
+        return exportEntry(getCeilingEntry(key));
+    }
+
+    public Map.Entry<K, V> peekHigherEntry(K key) {
+        return exportEntry(getHigherEntry(key));
+    }
+
+    public Map.Entry<K, V> peekFloorEntry(K key) {
+        return exportEntry(getFloorEntry(key));
+    }
+
+    public Map.Entry<K, V> peekLowerEntry(K key) {
+        return exportEntry(getLowerEntry(key));
+    }
+
+    /**
+     * Returns an immutable snapshot of the map. Freezing takes constant time: the snapshot
+     * shares the tree, and this map copies an entry only before it changes it. A splay
+     * rewrites just the entries on its search path, so each access copies O(depth) entries
+     * at most and read-only iteration copies none. The snapshot never restructures and can
+     * be read from any number of threads while this map goes on being used by its owner.
+     * Entries obtained from the views before freezing must not be modified afterwards.
+     */
+    public FrozenSplayTreeMap<K, V> freeze() {
+        if (root != null) {
+            shared = true;
+            root.size |= SHARED;
+        }
+        return new FrozenSplayTreeMap<>(comparator, root, size);
+    }
+
+    /////////ORDER STATISTICS
+    // entries keep the sizes of their subtrees, so the queries below take amortized O(log n)
+
+    /**
+     * Returns the number of keys strictly less than the given one,
+     * that is the index the key has (or would have) in key order.
+     */
+    public int rank(K key) {
+        return countBelow(key, false);
+    }
+
+    /**
+     * Returns the entry with the given index in key order, the entry is splayed to the root.
+     *
+     * @throws IndexOutOfBoundsException if the index is negative or not less than {@code size()}
+     */
+    public Map.Entry<K, V> select(int index) {
+        Objects.checkIndex(index, size);
+        SplayTreeMap.Entry<K, V> p = root;
+        for (; ; ) {
+            int leftSize = sizeOf(p.left);
+            if (index < leftSize) {
+                p = p.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                p = p.right;
+            } else {
+                return exportEntry(splayToRoot(p));
+            }
+        }
+    }
+
+    /**
+     * Returns the number of keys from {@code fromKey} (inclusive) to {@code toKey} (exclusive).
+     */
+    public int countInRange(K fromKey, K toKey) {
+        return countInRange(fromKey, true, toKey, false);
+    }
+
+    /**
+     * Returns the number of keys between {@code fromKey} and {@code toKey}.
+     *
+     * @throws IllegalArgumentException if {@code fromKey} is greater than {@code toKey}
+     */
+    public int countInRange(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if (compare(fromKey, toKey) > 0)
+            throw new IllegalArgumentException("fromKey > toKey");
+        // (key, key) with both ends exclusive would count -1 if the key is present
+        return Math.max(0, countBelow(toKey, toInclusive) - countBelow(fromKey, !fromInclusive));
+    }
+
+    // number of keys less than (or equal to, if inclusive) the given one
+    final int countBelow(Object key, boolean inclusive) {
+        if (root == null)
+            return 0;
+        SplayTreeMap.Entry<K, V> t = splay(key);
+        int cmp = compare(t.key, key);
+        return sizeOf(t.left) + (cmp < 0 || (cmp == 0 && inclusive) ? 1 : 0);
+    }
+
+
+    /////////SPLIT AND JOIN
+    // both operations relink the existing entries and take amortized O(log n)
+
+    /**
+     * Moves all entries with keys greater than or equal to the given one
+     * into a new map, which is returned. This map keeps the lower part.
+     */
+    public SplayTreeMap<K, V> splitAt(K key) {
+        compare(key, key); // type (and possibly null) check
+        SplayTreeMap<K, V> upper = new SplayTreeMap<>(comparator, splayPolicy);
+        if (root == null)
+            return upper;
+        SplayTreeMap.Entry<K, V> t = splay(key);
+        SplayTreeMap.Entry<K, V> upperRoot;
+        if (compare(t.key, key) >= 0) {
+            upperRoot = t;
+            root = t.left;
+            t.left = null;
+            t.size -= sizeOf(root);
+        } else {
+            upperRoot = t.right;
+            t.right = null;
+            t.size -= sizeOf(upperRoot);
+        }
+        upper.root = upperRoot;
+        upper.size = sizeOf(upperRoot);
+        upper.shared = shared;
+        size -= upper.size;
+        modCount++;
+        return upper;
+    }
+
+    /**
+     * Moves all entries of the other map into this one. All keys of the other map
+     * must be greater than all keys of this map or all of them must be less.
+     * The other map is left empty.
+     *
+     * @throws IllegalArgumentException if the maps are ordered differently or their key ranges overlap
+     */
+    public void join(SplayTreeMap<K, V> other) {
+        if (other == this)
+            throw new IllegalArgumentException("can't join a map with itself");
+        if (!Objects.equals(comparator, other.comparator))
+            throw new IllegalArgumentException("maps are ordered differently");
+        if (other.root == null)
+            return;
+        if (root != null) {
+            SplayTreeMap.Entry<K, V> t;
+            if (compare(splayToRoot(getLastEntry()).key, other.splayToRoot(other.getFirstEntry()).key) < 0) {
+                t = root; // the greatest key, the right subtree is empty
+                t.right = other.root;
+            } else if (compare(other.splayToRoot(other.getLastEntry()).key, splayToRoot(getFirstEntry()).key) < 0) {
+                t = root; // the least key, the left subtree is empty
+                t.left = other.root;
+            } else {
+                throw new IllegalArgumentException("key ranges overlap");
+            }
+            t.size += other.size;
+        } else {
+            root = other.root;
+        }
+        shared |= other.shared;
+        size += other.size;
+        modCount++;
+        other.root = null;
+        other.size = 0;
+        other.modCount++;
+    }
+
+    /**
+     * Removes all entries with keys from {@code fromKey}, inclusive, to {@code toKey}, exclusive.
+     *
+     * @return the number of entries removed
+     */
+    public int removeRange(K fromKey, K toKey) {
+        return removeRange(fromKey, true, toKey, false);
+    }
+
+    /**
+     * Removes all entries with keys between the given bounds. The range is cut out of the
+     * tree whole, with a splay at each bound and one to join the rest, in amortized O(log n)
+     * however many entries it holds.
+     *
+     * @return the number of entries removed
+     * @throws IllegalArgumentException if {@code fromKey} is greater than {@code toKey}
+     */
+    public int removeRange(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+        if (compare(fromKey, toKey) > 0)
+            throw new IllegalArgumentException("fromKey > toKey");
+        return removeRange(false, fromKey, fromInclusive, false, toKey, toInclusive);
+    }
+
+    // the range of a sub map, the bounds are checked already
+    final int removeRange(boolean fromStart, Object lo, boolean loInclusive,
+                          boolean toEnd, Object hi, boolean hiInclusive) {
+        if (root == null)
+            return 0;
+        if (fromStart && toEnd) {
+            int removed = size;
+            clear();
+            return removed;
+        }
+        // the entries above the range
+        SplayTreeMap.Entry<K, V> upper = null, rest = root;
+        if (!toEnd) {
+            SplayTreeMap.Entry<K, V> t = splay(root, hi);
+            int cmp = compare(t.key, hi);
+            if (cmp > 0 || (cmp == 0 && !hiInclusive)) {
+                upper = t;
+                rest = t.left;
+                t.left = null;
+            } else {
+                upper = t.right;
+                rest = t;
+                t.right = null;
+            }
+            t.size = 1 + sizeOf(t.left) + sizeOf(t.right);
+        }
+        // the entries below the range, the rest is the range itself
+        SplayTreeMap.Entry<K, V> lower = null;
+        if (!fromStart && rest != null) {
+            SplayTreeMap.Entry<K, V> t = splay(rest, lo);
+            int cmp = compare(t.key, lo);
+            if (cmp < 0 || (cmp == 0 && !loInclusive)) {
+                lower = t;
+                rest = t.right;
+                t.right = null;
+            } else {
+                lower = t.left;
+                rest = t;
+                t.left = null;
+            }
+            t.size = 1 + sizeOf(t.left) + sizeOf(t.right);
+        }
+        int removed = sizeOf(rest);
+        root = merge(lower, upper);
+        size -= removed;
+        if (removed > 0)
+            modCount++;
+        return removed;
+    }
+
+    /////////BULK OPS
+    // a batch of k keys in ascending order is handled by splaying the keys one after another,
+    // each next key being close to the root left by the previous one; by the dynamic finger
+    // bound that takes O(k log(n/k)) amortized. Batches of n/16 keys and more are merged with
+    // the entries in one linear pass and the tree is rebuilt balanced.
+    // Batch lookups sweep the sorted keys down the tree at once and splay none but the last.
+
+    /**
+     * Adds the entries, which should be in ascending key order of this map; if some are
+     * not, they are still added correctly, only slower. For equal keys the last value wins.
+     */
+    public void putAllSorted(Collection<? extends Map.Entry<? extends K, ? extends V>> entries) {
+        int k = entries.size();
+        if (k == 0)
+            return;
+        if (k < BULK_MERGE_MIN || k < size >>> 4 || !ascending(entries)) {
+            for (Map.Entry<? extends K, ? extends V> e : entries)
+                splayPut(e.getKey(), e.getValue());
+            return;
+        }
+        unshare();
+        SplayTreeMap.Entry<K, V>[] old = toArray();
+        @SuppressWarnings("unchecked")
+        SplayTreeMap.Entry<K, V>[] merged = (SplayTreeMap.Entry<K, V>[]) new SplayTreeMap.Entry[old.length + k];
+        int i = 0, n = 0;
+        SplayTreeMap.Entry<K, V> last = null;
+        for (Map.Entry<? extends K, ? extends V> e : entries) {
+            K key = e.getKey();
+            if (last != null && compare(last.key, key) == 0) {
+                last.value = e.getValue();
+                continue;
+            }
+            int cmp = -1;
+            while (i < old.length && (cmp = compare(old[i].key, key)) < 0)
+                merged[n++] = old[i++];
+            if (i < old.length && cmp == 0) {
+                last = old[i++];
+                last.value = e.getValue();
+            } else {
+                last = new SplayTreeMap.Entry<>(key, e.getValue());
+            }
+            merged[n++] = last;
+        }
+        while (i < old.length)
+            merged[n++] = old[i++];
+        if (n != size)
+            modCount++;
+        root = link(merged, 0, n);
+        size = n;
+        splayCount++;
+    }
+
+    /**
+     * Removes the entries with the given keys, in any order.
+     *
+     * @return whether the map changed
+     */
+    public boolean removeAll(Collection<? extends K> keys) {
+        int k = keys.size();
+        if (k == 0 || root == null)
+            return false;
+        Object[] sorted = sortedKeys(keys);
+        int oldSize = size;
+        if (k < BULK_MERGE_MIN || k < size >>> 4) {
+            for (Object key : sorted)
+                remove(key);
+            return size != oldSize;
+        }
+        unshare();
+        SplayTreeMap.Entry<K, V>[] old = toArray();
+        int n = 0, j = 0;
+        for (SplayTreeMap.Entry<K, V> e : old) {
+            int cmp = 1;
+            while (j < sorted.length && (cmp = compare(sorted[j], e.key)) < 0)
+                j++;
+            if (j < sorted.length && cmp == 0) {
+                e.left = e.right = null;
+                continue;
+            }
+            old[n++] = e;
+        }
+        if (n == oldSize)
+            return false;
+        root = link(old, 0, n);
+        size = n;
+        modCount++;
+        splayCount++;
+        return true;
+    }
+
+    /**
+     * Looks up all the given keys at once. A batch of at least n/128 keys is sorted and
+     * found in one top-down sweep that visits every entry on the search paths once,
+     * without splaying; only the greatest key found is then accessed like by {@link #get},
+     * so it is restructured according to the {@link SplayPolicy}. Keys found unusually
+     * deep (see {@link SplayTreeMetrics#getDegenerateSplays()}) are accessed like by
+     * {@code get} as well, so that batches do not keep walking a degenerate tree.
+     * Sparser batches share too little of their paths to pay for the sorting and are
+     * looked up key by key.
+     *
+     * @return a new map, sorted by the comparator of this one, of the keys present
+     * in this map with their values
+     */
+    public SplayTreeMap<K, V> getAll(Collection<? extends K> keys) {
+        List<SplayTreeMap.Entry<K, V>> found = new ArrayList<>();
+        if (keys.size() < size >>> BATCH_SWEEP_SHIFT) {
+            for (K key : keys) {
+                SplayTreeMap.Entry<K, V> e = getEntry(key);
+                if (e != null)
+                    found.add(e);
+            }
+            if (found.size() > 1)
+                found.sort((a, b) -> compare(a.key, b.key));
+        } else {
+            for (SplayTreeMap.Entry<K, V> e : findAll(sortedKeys(keys)))
+                if (e != null)
+                    found.add(e);
+        }
+        // the same key may have been asked for several times
+        int n = 0;
+        for (SplayTreeMap.Entry<K, V> e : found)
+            if (n == 0 || compare(found.get(n - 1).key, e.key) != 0)
+                found.set(n++, e);
+        SplayTreeMap<K, V> result = new SplayTreeMap<>(comparator, splayPolicy);
+        result.buildFromSorted(n, found.iterator(), false);
+        return result;
+    }
+
+    /**
+     * Tells whether all the given keys are present, finding them like {@link #getAll}.
+     */
+    public boolean containsAll(Collection<?> keys) {
+        if (keys.size() < size >>> BATCH_SWEEP_SHIFT) {
+            for (Object key : keys)
+                if (getEntry(key) == null)
+                    return false;
+            return true;
+        }
+        for (SplayTreeMap.Entry<K, V> e : findAll(sortedKeys(keys)))
+            if (e == null)
+                return false;
+        return true;
+    }
+
+    // batches sparser than n/128 keys are looked up one by one
+    private static final int BATCH_SWEEP_SHIFT = 7;
+
+    // entries with the sorted keys, null for missing ones; splays the greatest one found and the deep ones
+    private SplayTreeMap.Entry<K, V>[] findAll(Object[] keys) {
+        @SuppressWarnings("unchecked")
+        SplayTreeMap.Entry<K, V>[] found = (SplayTreeMap.Entry<K, V>[]) new SplayTreeMap.Entry[keys.length];
+        if (root == null || keys.length == 0)
+            return found;
+        int maxDepth = SplayTreeMetrics.DEGENERATE_FACTOR * (32 - Integer.numberOfLeadingZeros(size));
+        boolean[] deep = null;
+        // pending subtrees, each with its depth and the range of keys [lo, hi) that fall into it
+        @SuppressWarnings("unchecked")
+        SplayTreeMap.Entry<K, V>[] nodes = (SplayTreeMap.Entry<K, V>[]) new SplayTreeMap.Entry[16];
+        int[] frames = new int[3 * 16];
+        nodes[0] = root;
+        frames[1] = keys.length;
+        int top = 1;
+        while (top > 0) {
+            SplayTreeMap.Entry<K, V> p = nodes[--top];
+            int lo = frames[3 * top], hi = frames[3 * top + 1], depth = frames[3 * top + 2];
+            int mid = lo, end = hi; // first key not less than p.key
+            while (mid < end) {
+                int m = (mid + end) >>> 1;
+                if (compare(keys[m], p.key) < 0)
+                    mid = m + 1;
                 else
+                    end = m;
+            }
+            int eq = mid;
+            for (; eq < hi && compare(keys[eq], p.key) == 0; eq++) {
+                found[eq] = p;
+                if (depth > maxDepth) {
+                    if (deep == null)
+                        deep = new boolean[keys.length];
+                    deep[eq] = true;
+                }
+            }
+            if (top + 2 > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                frames = Arrays.copyOf(frames, frames.length * 2);
+            }
+            if (p.right != null && eq < hi)
+                top = pushFrame(nodes, frames, top, p.right, eq, hi, depth + 1);
+            if (p.left != null && lo < mid)
+                top = pushFrame(nodes, frames, top, p.left, lo, mid, depth + 1);
+        }
+        int last = keys.length - 1;
+        while (last >= 0 && found[last] == null)
+            last--;
+        if (deep != null)
+            for (int i = 0; i < last; i++)
+                if (deep[i])
+                    getEntry(keys[i]);
+        if (last >= 0)
+            getEntry(keys[last]);
+        return found;
+    }
+
+    private static <K, V> int pushFrame(SplayTreeMap.Entry<K, V>[] nodes, int[] frames, int top,
+                                        SplayTreeMap.Entry<K, V> e, int lo, int hi, int depth) {
+        nodes[top] = e;
+        frames[3 * top] = lo;
+        frames[3 * top + 1] = hi;
+        frames[3 * top + 2] = depth;
+        return top + 1;
+    }
+
+    private Object[] sortedKeys(Collection<?> keys) {
+        Object[] sorted = keys.toArray();
+        if (sorted.length == 1)
+            compare(sorted[0], sorted[0]); // type (and possibly null) check
+        Arrays.sort(sorted, this::compare);
+        return sorted;
+    }
+
+    // smaller batches are never merged, splaying them is cheaper than a pass over a small tree
+    private static final int BULK_MERGE_MIN = 8;
+
+    private boolean ascending(Collection<? extends Map.Entry<? extends K, ? extends V>> entries) {
+        K last = null;
+        boolean first = true;
+        for (Map.Entry<? extends K, ? extends V> e : entries) {
+            K key = e.getKey();
+            if (first)
+                compare(key, key); // type (and possibly null) check
+            else if (compare(last, key) > 0)
+                return false;
+            last = key;
+            first = false;
+        }
+        return true;
+    }
+
+    // entries in ascending order, collected in linear time without splaying
+    @SuppressWarnings("unchecked")
+    private SplayTreeMap.Entry<K, V>[] toArray() {
+        SplayTreeMap.Entry<K, V>[] entries = (SplayTreeMap.Entry<K, V>[]) new SplayTreeMap.Entry[size];
+        SplayTreeMap.Entry<K, V>[] stack = (SplayTreeMap.Entry<K, V>[]) new SplayTreeMap.Entry[16];
+        int depth = 0, n = 0;
+        SplayTreeMap.Entry<K, V> p = root;
+        while (p != null || depth > 0) {
+            for (; p != null; p = p.left) {
+                if (depth == stack.length)
+                    stack = Arrays.copyOf(stack, depth * 2);
+                stack[depth++] = p;
+            }
+            p = stack[--depth];
+            entries[n++] = p;
+            p = p.right;
+        }
+        return entries;
+    }
+
+    // relinks entries lo..hi-1, in ascending order, into a balanced tree
+    private static <K, V> SplayTreeMap.Entry<K, V> link(SplayTreeMap.Entry<K, V>[] entries, int lo, int hi) {
+        if (lo >= hi)
+            return null;
+        int mid = (lo + hi) >>> 1;
+        SplayTreeMap.Entry<K, V> e = entries[mid];
+        e.left = link(entries, lo, mid);
+        e.right = link(entries, mid + 1, hi);
+        e.size = hi - lo;
+        return e;
+    }
+
+    /////////EVICTION
+
+    // root-to-leaf walks of removeDeepLeaf, kept between calls
+    private SplayTreeMap.Entry<K, V>[] walk, deeperWalk;
+
+    /**
+     * Unlinks and returns a deep leaf without splaying, for {@link SplayTreeCache}: of two
+     * leaves reached by random walks that step into each subtree in proportion to its size,
+     * the deeper one. Every access splays its entry to the root, so deep leaves are entries
+     * that have not been used for a while.
+     */
+    @SuppressWarnings("unchecked")
+    final SplayTreeMap.Entry<K, V> removeDeepLeaf() {
+        if (root == null)
+            return null;
+        if (walk == null) {
+            walk = (SplayTreeMap.Entry<K, V>[]) new SplayTreeMap.Entry[16];
+            deeperWalk = (SplayTreeMap.Entry<K, V>[]) new SplayTreeMap.Entry[16];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int depth = randomWalk(random);
+        SplayTreeMap.Entry<K, V>[] first = walk;
+        walk = deeperWalk;
+        deeperWalk = first;
+        int other = randomWalk(random);
+        if (other > depth) {
+            first = walk;
+            walk = deeperWalk;
+            deeperWalk = first;
+            depth = other;
+        }
+        SplayTreeMap.Entry<K, V>[] path = deeperWalk;
+        SplayTreeMap.Entry<K, V> leaf = path[depth];
+        ownPath(path, depth);
+        if (depth == 0) {
+            root = null;
+        } else {
+            SplayTreeMap.Entry<K, V> parent = path[depth - 1];
+            if (parent.left == leaf)
+                parent.left = null;
+            else
+                parent.right = null;
+            for (int i = 0; i < depth; i++)
+                path[i].size--;
+        }
+        Arrays.fill(walk, null);
+        Arrays.fill(path, 0, depth + 1, null);
+        size--;
+        modCount++;
+        return leaf;
+    }
+
+    // records a walk from the root to a leaf in walk[], returns the depth of the leaf
+    private int randomWalk(ThreadLocalRandom random) {
+        int depth = 0;
+        for (SplayTreeMap.Entry<K, V> p = root; ; depth++) {
+            if (depth == walk.length)
+                walk = Arrays.copyOf(walk, depth << 1);
+            walk[depth] = p;
+            if (p.left == null && p.right == null)
+                return depth;
+            if (p.left == null)
+                p = p.right;
+            else if (p.right == null || random.nextInt(sizeOf(p) - 1) < sizeOf(p.left))
+                p = p.left;
+            else
+                p = p.right;
+        }
+    }
+
+    private static final Object UNBOUNDED = new Object();
+
+    abstract static class SubMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+        final SplayTreeMap<K, V> m;
+        final K lo, hi;
+        final boolean fromStart, toEnd;
+        final boolean loInclusive, hiInclusive;
+
+        SubMap(
+                SplayTreeMap<K, V> m,
+                boolean fromStart, K lo, boolean loInclusive,
+                boolean toEnd, K hi, boolean hiInclusive
+        ) {
+            if (!fromStart && !toEnd) {
+                if (m.compare(lo, hi) > 0)
+                    throw new IllegalArgumentException("fromKey > toKey");
+            } else {
+                if (!fromStart) // type check
+                    m.compare(lo, lo);
+                if (!toEnd)
+                    m.compare(hi, hi);
+            }
+
+            this.m = m;
+            this.fromStart = fromStart;
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.toEnd = toEnd;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+        }
+
+        final boolean tooLow(Object key) {
+            if (!fromStart) {
+                int c = m.compare(key, lo);
+                return c < 0 || (c == 0 && !loInclusive);
+            }
+            return false;
+        }
+
+        final boolean tooHigh(Object key) {
+            if (!toEnd) {
+                int c = m.compare(key, hi);
+                return c > 0 || (c == 0 && !hiInclusive);
+            }
+            return false;
+        }
+
+        final boolean inRange(Object key) {
+            return !tooLow(key) && !tooHigh(key);
+        }
+
+        final boolean inClosedRange(Object key) {
+            return (fromStart || m.compare(key, lo) >= 0)
+                    && (toEnd || m.compare(hi, key) >= 0);
+        }
+
+        final boolean inRange(Object key, boolean inclusive) {
+            return inclusive ? inRange(key) : inClosedRange(key);
+        }
+
+        // ascending navigation within the range, entries found are splayed to the root
+
+        final SplayTreeMap.Entry<K, V> absLowest() {
+            SplayTreeMap.Entry<K, V> e = fromStart ? m.splayToRoot(m.getFirstEntry()) : m.splayCeiling(lo, loInclusive);
+            return (e == null || tooHigh(e.key)) ? null : e;
+        }
+
+        final SplayTreeMap.Entry<K, V> absHighest() {
+            SplayTreeMap.Entry<K, V> e = toEnd ? m.splayToRoot(m.getLastEntry()) : m.splayFloor(hi, hiInclusive);
+            return (e == null || tooLow(e.key)) ? null : e;
+        }
+
+        final SplayTreeMap.Entry<K, V> absCeiling(K key) {
+            if (tooLow(key))
+                return absLowest();
+            SplayTreeMap.Entry<K, V> e = m.splayCeiling(key, true);
+            return (e == null || tooHigh(e.key)) ? null : e;
+        }
+
+        final SplayTreeMap.Entry<K, V> absHigher(K key) {
+            if (tooLow(key))
+                return absLowest();
+            SplayTreeMap.Entry<K, V> e = m.splayCeiling(key, false);
+            return (e == null || tooHigh(e.key)) ? null : e;
+        }
+
+        final SplayTreeMap.Entry<K, V> absFloor(K key) {
+            if (tooHigh(key))
+                return absHighest();
+            SplayTreeMap.Entry<K, V> e = m.splayFloor(key, true);
+            return (e == null || tooLow(e.key)) ? null : e;
+        }
+
+        final SplayTreeMap.Entry<K, V> absLower(K key) {
+            if (tooHigh(key))
+                return absHighest();
+            SplayTreeMap.Entry<K, V> e = m.splayFloor(key, false);
+            return (e == null || tooLow(e.key)) ? null : e;
+        }
+
+        // first entry past the range in ascending order, looked up without splaying
+        final SplayTreeMap.Entry<K, V> absHighFence() {
+            return (toEnd ? null : (hiInclusive ? m.getHigherEntry(hi) : m.getCeilingEntry(hi)));
+        }
+
+        // first entry past the range in descending order, looked up without splaying
+        final SplayTreeMap.Entry<K, V> absLowFence() {
+            return (fromStart ? null : (loInclusive ? m.getLowerEntry(lo) : m.getFloorEntry(lo)));
+        }
+
+        // navigation in the order of this view
+        abstract SplayTreeMap.Entry<K, V> subLowest();
+
+        abstract SplayTreeMap.Entry<K, V> subHighest();
+
+        abstract SplayTreeMap.Entry<K, V> subCeiling(K key);
+
+        abstract SplayTreeMap.Entry<K, V> subHigher(K key);
+
+        abstract SplayTreeMap.Entry<K, V> subFloor(K key);
+
+        abstract SplayTreeMap.Entry<K, V> subLower(K key);
+
+        abstract Iterator<K> keyIterator();
+
+        abstract Iterator<K> descendingKeyIterator();
+
+        // PUBLIC
+        @Override
+        public boolean isEmpty() {
+            return (fromStart && toEnd) ? m.isEmpty() : absLowest() == null;
+        }
+
+        @Override
+        public int size() {
+            if (fromStart && toEnd)
+                return m.size();
+            int count = toEnd ? m.size() : m.countBelow(hi, hiInclusive);
+            return fromStart ? count : Math.max(0, count - m.countBelow(lo, !loInclusive));
+        }
+
+        @Override
+        public final boolean containsKey(Object key) {
+            return inRange(key) && m.containsKey(key);
+        }
+
+        @Override
+        public final V put(K key, V value) {
+            if (!inRange(key))
+                throw new IllegalArgumentException("key out of range");
+            return m.put(key, value);
+        }
+
+        @Override
+        public final V get(Object key) {
+            return !inRange(key) ? null : m.get(key);
+        }
+
+        @Override
+        public final V remove(Object key) {
+            return !inRange(key) ? null : m.remove(key);
+        }
+
+        // cuts the range out of the tree instead of removing the entries one by one
+        @Override
+        public final void clear() {
+            m.removeRange(fromStart, lo, loInclusive, toEnd, hi, hiInclusive);
+        }
+
+        // SORTED MAP METHODS
+        @Override
+        public final K firstKey() {
+            return key(subLowest());
+        }
+
+        @Override
+        public final K lastKey() {
+            return key(subHighest());
+        }
+
+        @Override
+        public final SortedMap<K, V> subMap(K fromKey, K toKey) {
+            return subMap(fromKey, true, toKey, false);
+        }
+
+        @Override
+        public final SortedMap<K, V> headMap(K toKey) {
+            return headMap(toKey, false);
+        }
+
+        @Override
+        public final SortedMap<K, V> tailMap(K fromKey) {
+            return tailMap(fromKey, true);
+        }
+
+        // NAVIGABLE MAP METHODS
+        @Override
+        public final Map.Entry<K, V> firstEntry() {
+            return exportEntry(subLowest());
+        }
+
+        @Override
+        public final Map.Entry<K, V> lastEntry() {
+            return exportEntry(subHighest());
+        }
+
+        @Override
+        public final Map.Entry<K, V> pollFirstEntry() {
+            SplayTreeMap.Entry<K, V> e = subLowest();
+            Map.Entry<K, V> result = exportEntry(e);
+            if (e != null)
+                m.mergeDeleteEntry(e);
+            return result;
+        }
+
+        @Override
+        public final Map.Entry<K, V> pollLastEntry() {
+            SplayTreeMap.Entry<K, V> e = subHighest();
+            Map.Entry<K, V> result = exportEntry(e);
+            if (e != null)
+                m.mergeDeleteEntry(e);
+            return result;
+        }
+
+        @Override
+        public final Map.Entry<K, V> ceilingEntry(K key) {
+            return exportEntry(subCeiling(key));
+        }
+
+        @Override
+        public final K ceilingKey(K key) {
+            return keyOrNull(subCeiling(key));
+        }
+
+        @Override
+        public final Map.Entry<K, V> higherEntry(K key) {
+            return exportEntry(subHigher(key));
+        }
+
+        @Override
+        public final K higherKey(K key) {
+            return keyOrNull(subHigher(key));
+        }
+
+        @Override
+        public final Map.Entry<K, V> floorEntry(K key) {
+            return exportEntry(subFloor(key));
+        }
+
+        @Override
+        public final K floorKey(K key) {
+            return keyOrNull(subFloor(key));
+        }
+
+        @Override
+        public final Map.Entry<K, V> lowerEntry(K key) {
+            return exportEntry(subLower(key));
+        }
+
+        @Override
+        public final K lowerKey(K key) {
+            return keyOrNull(subLower(key));
+        }
+
+        //VIEWS
+        transient KeySet<K> navigableKeySetView;
+
+        @Override
+        public final Set<K> keySet() {
+            return navigableKeySet();
+        }
+
+        @Override
+        public final NavigableSet<K> navigableKeySet() {
+            KeySet<K> nksv = navigableKeySetView;
+            return (nksv != null) ? nksv : (navigableKeySetView = new KeySet<>(this));
+        }
+
+        @Override
+        public final NavigableSet<K> descendingKeySet() {
+            return descendingMap().navigableKeySet();
+        }
+
+        abstract class SubEntrySet extends AbstractSet<Map.Entry<K, V>> {
+            @Override
+            public int size() {
+                return SubMap.this.size();
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return SubMap.this.isEmpty();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                if (!(o instanceof Map.Entry))
+                    return false;
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                Object key = entry.getKey();
+                if (!inRange(key))
+                    return false;
+                SplayTreeMap.Entry<?, ?> node = m.getEntry(key);
+                return node != null &&
+                        valEquals(node.getValue(), entry.getValue());
+            }
+
+            @Override
+            public boolean remove(Object o) {
+                if (!(o instanceof Map.Entry))
+                    return false;
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) o;
+                Object key = entry.getKey();
+                if (!inRange(key))
+                    return false;
+                SplayTreeMap.Entry<K, V> node = m.getEntry(key);
+                if (node != null && valEquals(node.getValue(), entry.getValue())) {
+                    m.mergeDeleteEntry(node);
+                    return true;
+                }
+                return false;
+            }
+
+            @Override
+            public void clear() {
+                SubMap.this.clear();
+            }
+        }
+    }
+
+    static final class AscendingSubMap<K, V> extends SubMap<K, V> {
+
+        AscendingSubMap(SplayTreeMap<K, V> m,
+                        boolean fromStart, K lo, boolean loInclusive,
+                        boolean toEnd, K hi, boolean hiInclusive) {
+            super(m, fromStart, lo, loInclusive, toEnd, hi, hiInclusive);
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return m.comparator();
+        }
+
+        @Override
+        public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive,
+                                         K toKey, boolean toInclusive) {
+            if (!inRange(fromKey, fromInclusive))
+                throw new IllegalArgumentException("fromKey out of range");
+            if (!inRange(toKey, toInclusive))
+                throw new IllegalArgumentException("toKey out of range");
+            return new AscendingSubMap<>(m,
+                    false, fromKey, fromInclusive,
+                    false, toKey, toInclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            if (!inRange(toKey, inclusive))
+                throw new IllegalArgumentException("toKey out of range");
+            return new AscendingSubMap<>(m,
+                    fromStart, lo, loInclusive,
+                    false, toKey, inclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            if (!inRange(fromKey, inclusive))
+                throw new IllegalArgumentException("fromKey out of range");
+            return new AscendingSubMap<>(m,
+                    false, fromKey, inclusive,
+                    toEnd, hi, hiInclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> descendingMap() {
+            return new DescendingSubMap<>(m,
+                    fromStart, lo, loInclusive,
+                    toEnd, hi, hiInclusive);
+        }
+
+        @Override
+        Iterator<K> keyIterator() {
+            return new KeyIterator<>(m, absLowest(), absHighFence(), false);
+        }
+
+        @Override
+        Iterator<K> descendingKeyIterator() {
+            return new KeyIterator<>(m, absHighest(), absLowFence(), true);
+        }
+
+        Spliterator<K> keySpliterator() {
+            return new KeySpliterator<>(m, this);
+        }
+
+        final class AscendingEntrySetView extends SubEntrySet {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new EntryIterator<>(m, absLowest(), absHighFence(), false);
+            }
+
+            @Override
+            public Spliterator<Map.Entry<K, V>> spliterator() {
+                return new EntrySpliterator<>(m, AscendingSubMap.this);
+            }
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new AscendingEntrySetView();
+        }
+
+        @Override
+        SplayTreeMap.Entry<K, V> subLowest() {
+            return absLowest();
+        }
+
+        @Override
+        SplayTreeMap.Entry<K, V> subHighest() {
+            return absHighest();
+        }
+
+        @Override
+        SplayTreeMap.Entry<K, V> subCeiling(K key) {
+            return absCeiling(key);
+        }
+
+        @Override
+        SplayTreeMap.Entry<K, V> subHigher(K key) {
+            return absHigher(key);
+        }
+
+        @Override
+        SplayTreeMap.Entry<K, V> subFloor(K key) {
+            return absFloor(key);
+        }
+
+        @Override
+        SplayTreeMap.Entry<K, V> subLower(K key) {
+            return absLower(key);
+        }
+    }
+
+    static final class DescendingSubMap<K, V> extends SubMap<K, V> {
+
+        private final Comparator<? super K> reverseComparator;
+
+        DescendingSubMap(SplayTreeMap<K, V> m,
+                         boolean fromStart, K lo, boolean loInclusive,
+                         boolean toEnd, K hi, boolean hiInclusive) {
+            super(m, fromStart, lo, loInclusive, toEnd, hi, hiInclusive);
+            reverseComparator = Collections.reverseOrder(m.comparator);
+        }
+
+        @Override
+        public Comparator<? super K> comparator() {
+            return reverseComparator;
+        }
+
+        @Override
+        public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive,
+                                         K toKey, boolean toInclusive) {
+            if (!inRange(fromKey, fromInclusive))
+                throw new IllegalArgumentException("fromKey out of range");
+            if (!inRange(toKey, toInclusive))
+                throw new IllegalArgumentException("toKey out of range");
+            return new DescendingSubMap<>(m,
+                    false, toKey, toInclusive,
+                    false, fromKey, fromInclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+            if (!inRange(toKey, inclusive))
+                throw new IllegalArgumentException("toKey out of range");
+            return new DescendingSubMap<>(m,
+                    false, toKey, inclusive,
+                    toEnd, hi, hiInclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+            if (!inRange(fromKey, inclusive))
+                throw new IllegalArgumentException("fromKey out of range");
+            return new DescendingSubMap<>(m,
+                    fromStart, lo, loInclusive,
+                    false, fromKey, inclusive);
+        }
+
+        @Override
+        public NavigableMap<K, V> descendingMap() {
+            return new AscendingSubMap<>(m,
+                    fromStart, lo, loInclusive,
+                    toEnd, hi, hiInclusive);
+        }
+
+        @Override
+        Iterator<K> keyIterator() {
+            return new KeyIterator<>(m, absHighest(), absLowFence(), true);
+        }
+
+        @Override
+        Iterator<K> descendingKeyIterator() {
+            return new KeyIterator<>(m, absLowest(), absHighFence(), false);
+        }
+
+        final class DescendingEntrySetView extends SubEntrySet {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new EntryIterator<>(m, absHighest(), absLowFence(), true);
+            }
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            return new DescendingEntrySetView();
+        }
+
+        @Override
+        SplayTreeMap.Entry<K, V> subLowest() {
+            return absHighest();
+        }
+
+        @Override
+        SplayTreeMap.Entry<K, V> subHighest() {
+            return absLowest();
+        }
+
+        @Override
+        SplayTreeMap.Entry<K, V> subCeiling(K key) {
+            return absFloor(key);
+        }
+
+        @Override
+        SplayTreeMap.Entry<K, V> subHigher(K key) {
+            return absLower(key);
+        }
+
+        @Override
+        SplayTreeMap.Entry<K, V> subFloor(K key) {
+            return absCeiling(key);
+        }
+
+        @Override
+        SplayTreeMap.Entry<K, V> subLower(K key) {
+            return absHigher(key);
+        }
+    }
+
+
+    // ITERATORS
+
+    /**
+     * In-order iterator keeping the path to the next entry on an explicit stack,
+     * so entries need no parent links. A splay (for example, a {@code get} made
+     * while iterating) reshapes the tree and invalidates the stack; the iterator
+     * notices it by {@code splayCount} and finds its place again by the key of
+     * the last returned entry.
+     */
+    abstract static class PrivateEntryIterator<K, V, T> implements Iterator<T> {
+
+        final SplayTreeMap<K, V> m;
+        final boolean descending;
+        SplayTreeMap.Entry<K, V> lastReturned;
+        // entries whose left (right, if descending) subtrees are being visited, the next entry is on top
+        SplayTreeMap.Entry<K, V>[] stack;
+        int depth;
+        // the stack is rebuilt from this key when the tree has been splayed
+        Object resumeKey = UNBOUNDED;
+        boolean resumeInclusive;
+        final Object fenceKey;
+        int expectedModCount;
+        int expectedSplayCount;
+
+        @SuppressWarnings("unchecked")
+        PrivateEntryIterator(SplayTreeMap<K, V> map,
+                             SplayTreeMap.Entry<K, V> first,
+                             SplayTreeMap.Entry<K, V> fence,
+                             boolean descending) {
+            m = map;
+            this.descending = descending;
+            expectedModCount = m.modCount;
+            lastReturned = null;
+            stack = (SplayTreeMap.Entry<K, V>[]) new SplayTreeMap.Entry[16];
+            fenceKey = fence == null ? UNBOUNDED : fence.key;
+            if (first != null)
+                seek(first.key, true);
+        }
+
+        // rebuilds the stack so that the first entry at (if inclusive) or after the key in iteration order is on top
+        private void seek(Object key, boolean inclusive) {
+            resumeKey = key;
+            resumeInclusive = inclusive;
+            depth = 0;
+            expectedSplayCount = m.splayCount;
+            for (SplayTreeMap.Entry<K, V> p = m.root; p != null; ) {
+                int cmp = m.compare(key, p.key);
+                if ((descending ? cmp > 0 : cmp < 0) || (cmp == 0 && inclusive)) {
+                    push(p);
+                    p = descending ? p.right : p.left;
+                } else {
+                    p = descending ? p.left : p.right;
+                }
+            }
+        }
+
+        private void push(SplayTreeMap.Entry<K, V> e) {
+            if (depth == stack.length)
+                stack = Arrays.copyOf(stack, depth << 1);
+            stack[depth++] = e;
+        }
+
+        private SplayTreeMap.Entry<K, V> peekNext() {
+            if (expectedSplayCount != m.splayCount && resumeKey != UNBOUNDED)
+                seek(resumeKey, resumeInclusive);
+            return depth == 0 ? null : stack[depth - 1];
+        }
+
+        public final boolean hasNext() {
+            SplayTreeMap.Entry<K, V> next = peekNext();
+            return next != null && next.key != fenceKey;
+        }
+
+        final SplayTreeMap.Entry<K, V> nextEntry() {
+            if (m.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            SplayTreeMap.Entry<K, V> e = peekNext();
+            if (e == null || e.key == fenceKey)
+                throw new NoSuchElementException();
+            depth--;
+            if (descending) {
+                for (SplayTreeMap.Entry<K, V> p = e.left; p != null; p = p.right)
+                    push(p);
+            } else {
+                for (SplayTreeMap.Entry<K, V> p = e.right; p != null; p = p.left)
+                    push(p);
+            }
+            resumeKey = e.key;
+            resumeInclusive = false;
+            lastReturned = e;
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null)
+                throw new IllegalStateException();
+            if (m.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            m.mergeDeleteEntry(lastReturned); // splays, so the next entry is looked up again
+            expectedModCount = m.modCount;
+            lastReturned = null;
+        }
+    }
+
+    /**
+     * Position in the map from which nearby keys are found quickly. The finger keeps
+     * the path from the root to its last position together with the key bounds of
+     * every subtree on it; a seek climbs only until the subtree covers the new key
+     * and descends from there, so a key at distance d costs about log d steps on a
+     * well-shaped tree instead of a walk from the root. Fingers never splay. When the
+     * tree has been restructured since the last seek the walk starts at the root again.
+     */
+    public static final class Finger<K, V> {
+        private final SplayTreeMap<K, V> m;
+        private SplayTreeMap.Entry<K, V>[] path;
+        // positions on the path of the nearest ancestors bounding path[i] from below and above, -1 if none
+        private int[] lower, upper;
+        private int depth;
+        private SplayTreeMap.Entry<K, V> current;
+        private int expectedModCount, expectedSplayCount;
+
+        @SuppressWarnings("unchecked")
+        Finger(SplayTreeMap<K, V> map) {
+            m = map;
+            path = (SplayTreeMap.Entry<K, V>[]) new SplayTreeMap.Entry[16];
+            lower = new int[16];
+            upper = new int[16];
+        }
+
+        /**
+         * Moves to the entry with the least key greater than or equal to the given one.
+         *
+         * @return the entry, or {@code null} if there is none
+         */
+        public Map.Entry<K, V> seek(K key) {
+            return exportEntry(ceiling(key, true));
+        }
+
+        /**
+         * Moves to the entry following the current one.
+         *
+         * @return the entry, or {@code null} if the finger is past the last entry
+         */
+        public Map.Entry<K, V> next() {
+            return current == null ? null : exportEntry(ceiling(current.key, false));
+        }
+
+        // the entry of the last seek, or null
+        public Map.Entry<K, V> entry() {
+            return exportEntry(current);
+        }
+
+        // least entry with a key greater than (or equal to, if inclusive) the given one
+        final SplayTreeMap.Entry<K, V> ceiling(Object key, boolean inclusive) {
+            if (expectedModCount != m.modCount || expectedSplayCount != m.splayCount) {
+                depth = 0;
+                expectedModCount = m.modCount;
+                expectedSplayCount = m.splayCount;
+            }
+            // climb until the subtree holds all keys between its bounds and the key lies strictly inside them
+            while (depth > 1) {
+                int i = depth - 1;
+                if ((lower[i] < 0 || m.compare(key, path[lower[i]].key) > 0)
+                        && (upper[i] < 0 || m.compare(key, path[upper[i]].key) < 0))
                     break;
+                depth--;
+            }
+            SplayTreeMap.Entry<K, V> p, found;
+            int lo, hi;
+            if (depth == 0) {
+                p = m.root;
+                found = null;
+                lo = hi = -1;
+            } else {
+                depth--;
+                p = path[depth];
+                lo = lower[depth];
+                hi = upper[depth];
+                found = hi < 0 ? null : path[hi];
+            }
+            while (p != null) {
+                push(p, lo, hi);
+                int cmp = m.compare(key, p.key);
+                if (cmp < 0 || (cmp == 0 && inclusive)) {
+                    found = p;
+                    if (cmp == 0)
+                        break;
+                    hi = depth - 1;
+                    p = p.left;
+                } else {
+                    lo = depth - 1;
+                    p = p.right;
+                }
+            }
+            return current = found;
+        }
+
+        private void push(SplayTreeMap.Entry<K, V> e, int lo, int hi) {
+            if (depth == path.length) {
+                path = Arrays.copyOf(path, depth << 1);
+                lower = Arrays.copyOf(lower, depth << 1);
+                upper = Arrays.copyOf(upper, depth << 1);
+            }
+            path[depth] = e;
+            lower[depth] = lo;
+            upper[depth] = hi;
+            depth++;
+        }
+    }
+
+    static final class EntryIterator<K, V> extends PrivateEntryIterator<K, V, Map.Entry<K, V>> {
+        EntryIterator(SplayTreeMap<K, V> map,
+                      SplayTreeMap.Entry<K, V> first,
+                      SplayTreeMap.Entry<K, V> fence,
+                      boolean descending) {
+            super(map, first, fence, descending);
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            return m.entryView(nextEntry());
+        }
+    }
+
+    static final class ValueIterator<K, V> extends PrivateEntryIterator<K, V, V> {
+        ValueIterator(SplayTreeMap<K, V> map,
+                      SplayTreeMap.Entry<K, V> first,
+                      SplayTreeMap.Entry<K, V> fence) {
+            super(map, first, fence, false);
+        }
+
+        @Override
+        public V next() {
+            return nextEntry().value;
+        }
+    }
+
+    static final class KeyIterator<K, V> extends PrivateEntryIterator<K, V, K> {
+        KeyIterator(SplayTreeMap<K, V> map,
+                    SplayTreeMap.Entry<K, V> first,
+                    SplayTreeMap.Entry<K, V> fence,
+                    boolean descending) {
+            super(map, first, fence, descending);
+        }
+
+        @Override
+        public K next() {
+            return nextEntry().key;
+        }
+    }
+
+    // SPLITERATORS
+
+    /**
+     * Spliterator over a range of ranks [index, fence) of the map, found through the subtree
+     * sizes without splaying. A split hands off the lower half of the ranks, so the halves
+     * are exact whatever the shape of the tree, and the pieces of a balanced region end up
+     * at its subtree roots. The range is bound at the first traversal, split or size query.
+     * Traversal keeps a stack like {@link PrivateEntryIterator} and rebuilds it by rank
+     * when the tree has been splayed meanwhile.
+     */
+    abstract static class TreeSpliterator<K, V, T> implements Spliterator<T> {
+
+        final SplayTreeMap<K, V> m;
+        // bounds of a sub map view, null for the whole map
+        final SubMap<K, V> range;
+        int index;
+        int fence = -1; // -1 until bound
+        int expectedModCount;
+        // ancestors whose left subtrees are being visited, the entry at index is on top
+        private SplayTreeMap.Entry<K, V>[] stack;
+        private int depth;
+        private int expectedSplayCount;
+
+        TreeSpliterator(SplayTreeMap<K, V> map, SubMap<K, V> range) {
+            m = map;
+            this.range = range;
+        }
+
+        TreeSpliterator(TreeSpliterator<K, V, T> parent, int index, int fence) {
+            m = parent.m;
+            range = parent.range;
+            this.index = index;
+            this.fence = fence;
+            expectedModCount = parent.expectedModCount;
+        }
+
+        abstract TreeSpliterator<K, V, T> split(int index, int fence);
+
+        abstract T element(SplayTreeMap.Entry<K, V> e);
+
+        // called once, before the range is bound
+        void bind() {
+        }
+
+        final int getFence() {
+            if (fence < 0) {
+                bind();
+                expectedModCount = m.modCount;
+                if (range == null) {
+                    fence = m.size;
+                } else {
+                    index = range.fromStart ? 0 : m.peekCountBelow(range.lo, !range.loInclusive);
+                    fence = Math.max(index, range.toEnd ? m.size : m.peekCountBelow(range.hi, range.hiInclusive));
+                }
+            }
+            return fence;
+        }
+
+        @Override
+        public TreeSpliterator<K, V, T> trySplit() {
+            int hi = getFence(), lo = index, mid = (lo + hi) >>> 1;
+            if (stack != null || mid <= lo)
+                return null;
+            index = mid;
+            return split(lo, mid);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            if (index >= getFence())
+                return false;
+            SplayTreeMap.Entry<K, V> e = nextEntry();
+            action.accept(element(e));
+            if (m.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            Objects.requireNonNull(action);
+            int hi = getFence();
+            while (index < hi)
+                action.accept(element(nextEntry()));
+            if (m.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+        }
+
+        private SplayTreeMap.Entry<K, V> nextEntry() {
+            if (m.modCount != expectedModCount)
+                throw new ConcurrentModificationException();
+            if (stack == null || expectedSplayCount != m.splayCount)
+                seek(index);
+            SplayTreeMap.Entry<K, V> e = stack[--depth];
+            for (SplayTreeMap.Entry<K, V> p = e.right; p != null; p = p.left)
+                push(p);
+            index++;
+            return e;
+        }
+
+        // rebuilds the stack so that the entry of the given rank is on top
+        @SuppressWarnings("unchecked")
+        private void seek(int rank) {
+            if (stack == null)
+                stack = (SplayTreeMap.Entry<K, V>[]) new SplayTreeMap.Entry[16];
+            depth = 0;
+            expectedSplayCount = m.splayCount;
+            for (SplayTreeMap.Entry<K, V> p = m.root; p != null; ) {
+                int left = sizeOf(p.left);
+                if (rank <= left) {
+                    push(p);
+                    if (rank == left)
+                        break;
+                    p = p.left;
+                } else {
+                    rank -= left + 1;
+                    p = p.right;
+                }
             }
         }
-        return p;
-    }
 
-    final SplayTreeMap.Entry<K, V> findClosestNotUsingComparator(SplayTreeMap.Entry<K, V> start, Object key) {
+        private void push(SplayTreeMap.Entry<K, V> e) {
+            if (depth == stack.length)
+                stack = Arrays.copyOf(stack, depth << 1);
+            stack[depth++] = e;
+        }
+
+        @Override
+        public long estimateSize() {
+            return getFence() - index;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED;
+        }
+    }
+
+    static final class EntrySpliterator<K, V> extends TreeSpliterator<K, V, Map.Entry<K, V>> {
+        EntrySpliterator(SplayTreeMap<K, V> map, SubMap<K, V> range) {
+            super(map, range);
+        }
+
+        private EntrySpliterator(EntrySpliterator<K, V> parent, int index, int fence) {
+            super(parent, index, fence);
+        }
+
+        @Override
+        EntrySpliterator<K, V> split(int index, int fence) {
+            return new EntrySpliterator<>(this, index, fence);
+        }
+
+        @Override
+        Map.Entry<K, V> element(SplayTreeMap.Entry<K, V> e) {
+            return m.entryView(e);
+        }
+
+        @Override
+        public int characteristics() {
+            return super.characteristics() | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL;
+        }
+
+        @Override
         @SuppressWarnings("unchecked")
-        Comparable<? super K> k = (Comparable<? super K>) key;
-        SplayTreeMap.Entry<K, V> p = start;
-        while (p != null) {
-            int cmp = k.compareTo(p.key);
-            if (cmp < 0 && p.left != null)
-                p = p.left;
-            else if (cmp > 0 && p.right != null)
-                p = p.right;
-            else
-                break;
+        public Comparator<Map.Entry<K, V>> getComparator() {
+            if (m.comparator != null)
+                return Map.Entry.comparingByKey(m.comparator);
+            return (Comparator<Map.Entry<K, V>> & Serializable) (e1, e2) ->
+                    ((Comparable<? super K>) e1.getKey()).compareTo(e2.getKey());
         }
-        return p;
     }
 
+    static final class KeySpliterator<K, V> extends TreeSpliterator<K, V, K> {
+        KeySpliterator(SplayTreeMap<K, V> map, SubMap<K, V> range) {
+            super(map, range);
+        }
 
-    final void rotate(SplayTreeMap.Entry<K, V> p, SplayTreeMap.Entry<K, V> c) {
-        SplayTreeMap.Entry<K, V> gp = p.parent;
-        if (gp != null) {
-            if (p == gp.left) {
-                gp.left = c;
-            } else {
-                gp.right = c;
-            }
+        private KeySpliterator(KeySpliterator<K, V> parent, int index, int fence) {
+            super(parent, index, fence);
         }
-        if (p.left == c) {
-            p.left = c.right;
-            c.right = p;
-        } else {
-            p.right = c.left;
-            c.left = p;
+
+        @Override
+        KeySpliterator<K, V> split(int index, int fence) {
+            return new KeySpliterator<>(this, index, fence);
+        }
+
+        @Override
+        K element(SplayTreeMap.Entry<K, V> e) {
+            return e.key;
+        }
+
+        @Override
+        public int characteristics() {
+            // a comparator may admit a null key, natural ordering never does
+            return super.characteristics() | Spliterator.SORTED | Spliterator.DISTINCT
+                    | (m.comparator == null ? Spliterator.NONNULL : 0);
+        }
+
+        @Override
+        public Comparator<? super K> getComparator() {
+            return m.comparator;
+        }
+    }
+
+    static final class ValueSpliterator<K, V> extends TreeSpliterator<K, V, V> {
+        ValueSpliterator(SplayTreeMap<K, V> map, SubMap<K, V> range) {
+            super(map, range);
+        }
+
+        private ValueSpliterator(ValueSpliterator<K, V> parent, int index, int fence) {
+            super(parent, index, fence);
+        }
+
+        @Override
+        ValueSpliterator<K, V> split(int index, int fence) {
+            return new ValueSpliterator<>(this, index, fence);
+        }
+
+        @Override
+        V element(SplayTreeMap.Entry<K, V> e) {
+            return e.value;
         }
-        c.parent = gp;
-        p.saveParent();
-        c.saveParent();
     }
 
-    final SplayTreeMap.Entry<K, V> splay(SplayTreeMap.Entry<K, V> e) {
-        if (e == null) {
+
+    //INTERNAL OPS
+    private Entry<K, V> getEntry(Object key) {
+        if (root == null) {
             return null;
         }
-        if (e.parent == null) {
-            return e;
+        if (splayPolicy != SplayPolicy.ALWAYS) {
+            return accessEntry(key);
         }
-        SplayTreeMap.Entry<K, V> p = e.parent;
-        SplayTreeMap.Entry<K, V> gp = p.parent;
-        if (gp == null) {
-            rotate(p, e);
-            return e;
+        splay(key);
+        if (compare(root.key, key) != 0) {
+            return null;
+        } else {
+            return root;
+        }
+    }
+
+
+    /**
+     * Top-down splay (Sleator &amp; Tarjan) of the subtree rooted at {@code t}.
+     * Brings the node with the given key to the top of the subtree, or, if there
+     * is no such key, the last node met on the search path (the greatest key
+     * less than or the least key greater than {@code key}).
+     * The tree is restructured in a single pass from the top with a constant
+     * amount of stack, so degenerate (chain-like) trees are handled as well.
+     * Subtree sizes are kept up to date the same way as in Sleator's
+     * top-down-size-splay: the sizes of the left and right trees are summed
+     * during the descent and handed down their spines afterwards.
+     * Only the entries on the search path are changed, so those still held by
+     * a snapshot are replaced with copies as they are met (path copying).
+     *
+     * @return new root of the subtree
+     */
+    final SplayTreeMap.Entry<K, V> splay(SplayTreeMap.Entry<K, V> t, Object key) {
+        if (t == null) {
+            return null;
         }
-        if ((gp.left == p) == (p.left == e)) { //zig-zig
-            rotate(gp, p);
-            rotate(p, e);
-        } else { //zig-zag
-            rotate(p, e);
-            rotate(gp, e);
+        t = own(t);
+        SplayTreeMap.Entry<K, V> header = splayHeader;
+        SplayTreeMap.Entry<K, V> l = header; // greatest node of the left tree
+        SplayTreeMap.Entry<K, V> r = header; // least node of the right tree
+        int lSize = 0, rSize = 0;
+        int depth = 1, rotations = 0;
+        int cmp = compare(key, t.key);
+        for (; ; ) {
+            if (cmp < 0) {
+                SplayTreeMap.Entry<K, V> y = t.left;
+                if (y == null)
+                    break;
+                y = own(y);
+                cmp = compare(key, y.key);
+                depth++;
+                if (cmp < 0) { //zig-zig: rotate right
+                    t.left = y.right;
+                    y.right = t;
+                    t.size = 1 + sizeOf(t.left) + sizeOf(t.right);
+                    t = y;
+                    rotations++;
+                    y = t.left;
+                    if (y == null)
+                        break;
+                    y = own(y);
+                    cmp = compare(key, y.key);
+                    depth++;
+                }
+                r.left = t; //link right
+                r = t;
+                rSize += 1 + sizeOf(t.right);
+                t = y;
+            } else if (cmp > 0) {
+                SplayTreeMap.Entry<K, V> y = t.right;
+                if (y == null)
+                    break;
+                y = own(y);
+                cmp = compare(key, y.key);
+                depth++;
+                if (cmp > 0) { //zig-zig: rotate left
+                    t.right = y.left;
+                    y.left = t;
+                    t.size = 1 + sizeOf(t.left) + sizeOf(t.right);
+                    t = y;
+                    rotations++;
+                    y = t.right;
+                    if (y == null)
+                        break;
+                    y = own(y);
+                    cmp = compare(key, y.key);
+                    depth++;
+                }
+                l.right = t; //link left
+                l = t;
+                lSize += 1 + sizeOf(t.left);
+                t = y;
+            } else {
+                break;
+            }
         }
-        return splay(e);
+        lSize += sizeOf(t.left);
+        rSize += sizeOf(t.right);
+        t.size = lSize + 1 + rSize;
+        // the right spine of the left tree and the left spine of the right tree lack their sizes
+        l.right = r.left = null;
+        for (SplayTreeMap.Entry<K, V> y = header.right; y != null; y = y.right) {
+            y.size = lSize;
+            lSize -= 1 + sizeOf(y.left);
+        }
+        for (SplayTreeMap.Entry<K, V> y = header.left; y != null; y = y.left) {
+            y.size = rSize;
+            rSize -= 1 + sizeOf(y.right);
+        }
+        //assemble
+        l.right = t.left;
+        r.left = t.right;
+        t.left = header.right;
+        t.right = header.left;
+        header.left = header.right = null;
+        splayCount++;
+        if (metrics != null)
+            metrics.recordAccess(depth, rotations, size);
+        return t;
     }
 
-    final SplayTreeMap.Entry<K, V> splayToRoot(SplayTreeMap.Entry<K, V> e) {
-        root = splay(e);
+    final SplayTreeMap.Entry<K, V> splay(Object key) {
+        root = splay(root, key);
         return root;
     }
 
+    final SplayTreeMap.Entry<K, V> splayToRoot(SplayTreeMap.Entry<K, V> e) {
+        return e == null ? null : splay(e.key);
+    }
+
 
-    //merge left and right subtree and return tree root with null parent
+    //merge left and right subtree (all keys in l are less than keys in r) and return tree root
     final SplayTreeMap.Entry<K, V> merge(SplayTreeMap.Entry<K, V> l, SplayTreeMap.Entry<K, V> r) {
         if (r == null) {
             return l;
@@ -569,37 +2468,38 @@ public class SplayTreeMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
         if (l == null) {
             return r;
         }
-        r.parent = null;
-        r = splay(findClosest(r, l.key));
+        r = splay(r, l.key); // least key of r comes up, so r.left is empty
         r.left = l;
-        l.parent = r;
+        r.size += sizeOf(l);
         return r;
     }
 
     final V splayPut(K key, V value) {
         if (root == null) {
             compare(key, key);
-            root = new SplayTreeMap.Entry<>(key, value, null);
+            root = new SplayTreeMap.Entry<>(key, value);
             modCount++;
             size = 1;
             return null;
         }
-        SplayTreeMap.Entry<K, V> e = splay(findClosest(key));
+        if (splayPolicy != SplayPolicy.ALWAYS) {
+            return accessPut(key, value);
+        }
+        SplayTreeMap.Entry<K, V> e = splay(key);
         int cmp = compare(e.key, key);
         if (cmp == 0) {
-            root = e;
-            return root.setValue(value);
+            return e.setValue(value);
         } else {
             if (cmp < 0) {
                 SplayTreeMap.Entry<K, V> r = e.right;
                 e.right = null;
-                root = new SplayTreeMap.Entry<>(key, value, null, e, r);
-                root.saveParent();
+                e.size -= sizeOf(r);
+                root = new SplayTreeMap.Entry<>(key, value, e, r);
             } else {
                 SplayTreeMap.Entry<K, V> l = e.left;
                 e.left = null;
-                root = new SplayTreeMap.Entry<>(key, value, null, l, e);
-                root.saveParent();
+                e.size -= sizeOf(l);
+                root = new SplayTreeMap.Entry<>(key, value, l, e);
             }
             modCount++;
             size++;
@@ -608,34 +2508,408 @@ public class SplayTreeMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
     }
 
 
+    //SPLAY POLICY
 
-    final SplayTreeMap.Entry<K, V> mergeDeleteEntry(SplayTreeMap.Entry<K, V> e) {
-        if (e.left != null) {
-            e.left.setParent(null);
+    // lookup under a policy other than SplayPolicy.ALWAYS
+    private Entry<K, V> accessEntry(Object key) {
+        int cmp = descend(key);
+        SplayTreeMap.Entry<K, V> e = path[pathLength - 1];
+        restructure(pathLength - 1);
+        return cmp == 0 ? e : null;
+    }
+
+    // insert or update under a policy other than SplayPolicy.ALWAYS, new keys become leaves
+    private V accessPut(K key, V value) {
+        int cmp = descend(key);
+        int depth = pathLength - 1;
+        ownPath(path, depth + 1);
+        SplayTreeMap.Entry<K, V> p = path[depth];
+        if (cmp == 0) {
+            restructure(depth);
+            return p.setValue(value);
         }
-        if (e.right != null) {
-            e.right.setParent(null);
+        SplayTreeMap.Entry<K, V> e = new SplayTreeMap.Entry<>(key, value);
+        if (cmp < 0)
+            p.left = e;
+        else
+            p.right = e;
+        for (int i = 0; i <= depth; i++)
+            path[i].size++;
+        pushPath(e);
+        modCount++;
+        size++;
+        restructure(depth + 1);
+        return null;
+    }
+
+    // records the path from the root to the entry with the key or the last entry met, returns the last comparison
+    private int descend(Object key) {
+        pathLength = 0;
+        int cmp = 0;
+        for (SplayTreeMap.Entry<K, V> p = root; p != null; ) {
+            pushPath(p);
+            cmp = compare(key, p.key);
+            if (cmp < 0)
+                p = p.left;
+            else if (cmp > 0)
+                p = p.right;
+            else
+                break;
         }
-        SplayTreeMap.Entry<K, V> replacement = merge(e.left, e.right);
-        SplayTreeMap.Entry<K, V> p = e.parent;
+        return cmp;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void pushPath(SplayTreeMap.Entry<K, V> e) {
+        if (path == null)
+            path = (SplayTreeMap.Entry<K, V>[]) new SplayTreeMap.Entry[32];
+        else if (pathLength == path.length)
+            path = Arrays.copyOf(path, pathLength * 2);
+        path[pathLength++] = e;
+    }
 
-        if (replacement != null) {
-            replacement.setParent(p);
+    // restructures the recorded path, path[depth] being the accessed entry, and forgets it
+    private void restructure(int depth) {
+        int rotations;
+        switch (splayPolicy.onAccess(depth)) {
+            case SPLAY:
+                ownPath(path, depth + 1);
+                rotations = splayPath(depth);
+                break;
+            case SEMI_SPLAY:
+                ownPath(path, depth + 1);
+                rotations = semiSplayPath(depth);
+                break;
+            default:
+                rotations = 0;
+                break;
         }
+        if (metrics != null)
+            metrics.recordAccess(depth + 1, rotations, size);
+        Arrays.fill(path, 0, pathLength, null);
+        pathLength = 0;
+    }
 
-        if (p == null) { // deleting root of this tree
-            root = replacement;
-        } else {
-            if (e == p.left) {
-                p.left = replacement;
+    // bottom-up splay of path[i] along the recorded path, returns the number of rotations
+    private int splayPath(int i) {
+        if (i == 0)
+            return 0;
+        int rotations = i;
+        SplayTreeMap.Entry<K, V> x = path[i];
+        for (; i >= 2; i -= 2) {
+            SplayTreeMap.Entry<K, V> p = path[i - 1], g = path[i - 2];
+            if ((g.left == p) == (p.left == x)) { //zig-zig
+                rotateUp(p, g);
+                rotateUp(x, p);
+            } else { //zig-zag
+                relinkChild(g, p, rotateUp(x, p));
+                rotateUp(x, g);
             }
-            if (e == p.right) {
-                p.right = replacement;
+            relink(i - 2, g, x);
+        }
+        if (i == 1) { //zig
+            rotateUp(x, root);
+            root = x;
+        }
+        splayCount++;
+        return rotations;
+    }
+
+    // bottom-up semi-splay: after a zig-zig step the walk goes on from the parent instead of the accessed entry;
+    // returns the number of rotations
+    private int semiSplayPath(int i) {
+        if (i < 2)
+            return 0;
+        int rotations = 0;
+        for (; i >= 2; i -= 2) {
+            SplayTreeMap.Entry<K, V> x = path[i], p = path[i - 1], g = path[i - 2];
+            SplayTreeMap.Entry<K, V> top;
+            if ((g.left == p) == (p.left == x)) { //zig-zig
+                top = rotateUp(p, g);
+                rotations++;
+            } else { //zig-zag
+                relinkChild(g, p, rotateUp(x, p));
+                top = rotateUp(x, g);
+                rotations += 2;
             }
+            relink(i - 2, g, top);
+            path[i - 2] = top;
+        }
+        splayCount++;
+        return rotations;
+    }
+
+    // rotates child c above its parent p and returns c, the link to p from above is left to the caller
+    private static <K, V> SplayTreeMap.Entry<K, V> rotateUp(SplayTreeMap.Entry<K, V> c, SplayTreeMap.Entry<K, V> p) {
+        if (p.left == c) {
+            p.left = c.right;
+            c.right = p;
+        } else {
+            p.right = c.left;
+            c.left = p;
         }
+        c.size = p.size;
+        p.size = 1 + sizeOf(p.left) + sizeOf(p.right);
+        return c;
+    }
+
+    private static <K, V> void relinkChild(SplayTreeMap.Entry<K, V> parent,
+                                           SplayTreeMap.Entry<K, V> old,
+                                           SplayTreeMap.Entry<K, V> now) {
+        if (parent.left == old)
+            parent.left = now;
+        else
+            parent.right = now;
+    }
+
+    // points the link to path[i] (the root or a child link of path[i - 1]) at now
+    private void relink(int i, SplayTreeMap.Entry<K, V> old, SplayTreeMap.Entry<K, V> now) {
+        if (i == 0)
+            root = now;
+        else
+            relinkChild(path[i - 1], old, now);
+    }
+
+    final SplayTreeMap.Entry<K, V> mergeDeleteEntry(SplayTreeMap.Entry<K, V> e) {
+        if (e != root || e.size < 0) {
+            e = splay(e.key);
+        }
+        root = merge(e.left, e.right);
+        e.left = e.right = null;
         size--;
         modCount++;
-        return replacement;
+        return root;
+    }
+
+    // replaces the tree with a balanced one built from size entries in ascending key order
+    final void buildFromSorted(int size, Iterator<? extends Map.Entry<? extends K, ? extends V>> it, boolean checkOrder) {
+        SortedBuilder<K, V> builder = new SortedBuilder<>(it, checkOrder ? this : null);
+        root = builder.build(0, size);
+        this.size = size;
+        shared = false;
+    }
+
+    // replaces the tree with a prebuilt one of the given size, e.g. one read from a snapshot
+    final void replaceTree(SplayTreeMap.Entry<K, V> root, int size) {
+        this.root = root;
+        this.size = size;
+        shared = false;
+        modCount++;
+    }
+
+    // like replaceTree, for a tree that stays referenced elsewhere, its entries are copied before they change
+    final void shareTree(SplayTreeMap.Entry<K, V> root, int size) {
+        replaceTree(root, size);
+        if (root != null) {
+            shared = true;
+            root.size |= SHARED;
+        }
+    }
+
+    // copies the entries still held by a frozen snapshot, before the tree is rebuilt in place
+    final void unshare() {
+        if (!shared)
+            return;
+        shared = false;
+        root = ownTree(root);
+        splayCount++;
+    }
+
+    // owns every entry of the tree without recursion, it may be a long chain
+    @SuppressWarnings("unchecked")
+    private static <K, V> SplayTreeMap.Entry<K, V> ownTree(SplayTreeMap.Entry<K, V> root) {
+        if (root == null)
+            return null;
+        SplayTreeMap.Entry<K, V>[] stack = (SplayTreeMap.Entry<K, V>[]) new SplayTreeMap.Entry[16];
+        SplayTreeMap.Entry<K, V> owned = own(root);
+        stack[0] = owned;
+        int depth = 1;
+        while (depth > 0) {
+            SplayTreeMap.Entry<K, V> e = stack[--depth];
+            if (depth + 2 > stack.length)
+                stack = Arrays.copyOf(stack, stack.length << 1);
+            if (e.left != null)
+                stack[depth++] = e.left = own(e.left);
+            if (e.right != null)
+                stack[depth++] = e.right = own(e.right);
+        }
+        return owned;
+    }
+
+    // the entry itself unless it is marked shared, otherwise an unmarked copy; the children of
+    // a copy are reachable from the snapshot as well, so they are marked in turn. An unmarked
+    // entry is owned only when reached from the root through owned entries, so callers own
+    // the entries top-down and link every copy in place of the entry
+    private static <K, V> SplayTreeMap.Entry<K, V> own(SplayTreeMap.Entry<K, V> e) {
+        if (e.size >= 0)
+            return e;
+        SplayTreeMap.Entry<K, V> c = new SplayTreeMap.Entry<>(e.key, e.value);
+        c.left = e.left;
+        c.right = e.right;
+        c.size = e.size & ~SHARED;
+        if (c.left != null)
+            c.left.size |= SHARED;
+        if (c.right != null)
+            c.right.size |= SHARED;
+        return c;
+    }
+
+    // owns path[0..n-1], a path from the root down, relinking every copy to its owned parent
+    private void ownPath(SplayTreeMap.Entry<K, V>[] path, int n) {
+        for (int i = 0; i < n; i++) {
+            SplayTreeMap.Entry<K, V> e = path[i], c = own(e);
+            if (c == e)
+                continue;
+            if (i == 0)
+                root = c;
+            else
+                relinkChild(path[i - 1], e, c);
+            path[i] = c;
+        }
+    }
+
+    // the entry of the tree with the key of e, owned along with the path to it, for writing a value
+    final SplayTreeMap.Entry<K, V> ownEntry(SplayTreeMap.Entry<K, V> e) {
+        if (!shared || (e == root && e.size >= 0))
+            return e;
+        SplayTreeMap.Entry<K, V> parent = null, p = root;
+        while (p != null) {
+            SplayTreeMap.Entry<K, V> c = own(p);
+            if (c != p) {
+                if (parent == null)
+                    root = c;
+                else
+                    relinkChild(parent, p, c);
+                p = c;
+                splayCount++; // iterators hold the old entries
+            }
+            int cmp = compare(e.key, p.key);
+            if (cmp == 0)
+                break;
+            parent = p;
+            p = cmp < 0 ? p.left : p.right;
+        }
+        return p;
+    }
+
+    // an entry for the views: writing through it must not reach a snapshot
+    final Map.Entry<K, V> entryView(SplayTreeMap.Entry<K, V> e) {
+        return shared ? new SharedEntry<>(this, e) : e;
+    }
+
+    // entry possibly held by a snapshot, its value is written to the owned copy
+    static final class SharedEntry<K, V> implements Map.Entry<K, V> {
+        private final SplayTreeMap<K, V> m;
+        private final SplayTreeMap.Entry<K, V> e;
+        private V value;
+
+        SharedEntry(SplayTreeMap<K, V> m, SplayTreeMap.Entry<K, V> e) {
+            this.m = m;
+            this.e = e;
+            this.value = e.value;
+        }
+
+        public K getKey() {
+            return e.key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            SplayTreeMap.Entry<K, V> owned = m.ownEntry(e);
+            V oldValue = owned != null ? owned.setValue(value) : this.value;
+            this.value = value;
+            return oldValue;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Map.Entry))
+                return false;
+            Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+            return valEquals(e.key, other.getKey()) && valEquals(value, other.getValue());
+        }
+
+        public int hashCode() {
+            return Objects.hashCode(e.key) ^ Objects.hashCode(value);
+        }
+
+        public String toString() {
+            return e.key + "=" + value;
+        }
+    }
+
+    private static final class SortedBuilder<K, V> {
+        final Iterator<? extends Map.Entry<? extends K, ? extends V>> it;
+        final SplayTreeMap<K, V> orderCheck;
+        K lastKey;
+        int count;
+
+        SortedBuilder(Iterator<? extends Map.Entry<? extends K, ? extends V>> it, SplayTreeMap<K, V> orderCheck) {
+            this.it = it;
+            this.orderCheck = orderCheck;
+        }
+
+        // builds entries lo..hi-1 in order, the recursion depth is log(size)
+        SplayTreeMap.Entry<K, V> build(int lo, int hi) {
+            if (lo >= hi)
+                return null;
+            int mid = (lo + hi) >>> 1;
+            SplayTreeMap.Entry<K, V> left = build(lo, mid);
+            SplayTreeMap.Entry<K, V> e = nextEntry();
+            e.left = left;
+            e.right = build(mid + 1, hi);
+            e.size = hi - lo;
+            return e;
+        }
+
+        // builds all the remaining entries without knowing their number: the stack holds entries
+        // waiting for a right subtree, their left subtrees are perfect and shrink towards the top
+        SplayTreeMap.Entry<K, V> buildAll() {
+            Deque<SplayTreeMap.Entry<K, V>> waiting = new ArrayDeque<>();
+            SplayTreeMap.Entry<K, V> perfect = null;
+            while (it.hasNext()) {
+                SplayTreeMap.Entry<K, V> e = nextEntry();
+                if (perfect != null) {
+                    e.left = perfect;
+                    e.size += perfect.size;
+                    waiting.push(e);
+                    perfect = null;
+                    continue;
+                }
+                perfect = e;
+                // perfect subtrees of equal height have equal sizes
+                while (!waiting.isEmpty() && waiting.peek().left.size == perfect.size) {
+                    SplayTreeMap.Entry<K, V> p = waiting.pop();
+                    p.right = perfect;
+                    p.size += perfect.size;
+                    perfect = p;
+                }
+            }
+            SplayTreeMap.Entry<K, V> t = perfect;
+            while (!waiting.isEmpty()) {
+                SplayTreeMap.Entry<K, V> p = waiting.pop();
+                p.right = t;
+                p.size += sizeOf(t);
+                t = p;
+            }
+            return t;
+        }
+
+        private SplayTreeMap.Entry<K, V> nextEntry() {
+            Map.Entry<? extends K, ? extends V> next = it.next();
+            K key = next.getKey();
+            if (orderCheck != null) {
+                if (count == 0)
+                    orderCheck.compare(key, key); // type (and possibly null) check
+                else if (orderCheck.compare(lastKey, key) >= 0)
+                    throw new IllegalArgumentException("keys are not in ascending order: " + lastKey + ", " + key);
+                lastKey = key;
+            }
+            count++;
+            return new SplayTreeMap.Entry<>(key, next.getValue());
+        }
     }
 
     final SplayTreeMap.Entry<K, V> getFirstEntry() {
@@ -656,66 +2930,138 @@ public class SplayTreeMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
     }
 
 
-    static <K, V> SplayTreeMap.Entry<K, V> successor(SplayTreeMap.Entry<K, V> t) {
-        if (t == null)
-            return null;
-        else if (t.right != null) {
-            SplayTreeMap.Entry<K, V> p = t.right;
-            while (p.left != null)
+    // find required, the tree is not restructured
+    final SplayTreeMap.Entry<K, V> peekEntry(Object key) {
+        SplayTreeMap.Entry<K, V> p = root;
+        while (p != null) {
+            int cmp = compare(key, p.key);
+            if (cmp < 0)
+                p = p.left;
+            else if (cmp > 0)
+                p = p.right;
+            else
+                return p;
+        }
+        return null;
+    }
+
+    // number of keys less than (or equal to, if inclusive) the given one, the tree is not restructured
+    final int peekCountBelow(Object key, boolean inclusive) {
+        int count = 0;
+        SplayTreeMap.Entry<K, V> p = root;
+        while (p != null) {
+            int cmp = compare(key, p.key);
+            if (cmp > 0 || (cmp == 0 && inclusive)) {
+                count += sizeOf(p.left) + 1;
+                p = p.right;
+            } else {
                 p = p.left;
-            return p;
-        } else {
-            SplayTreeMap.Entry<K, V> p = t.parent;
-            SplayTreeMap.Entry<K, V> ch = t;
-            while (p != null && ch == p.right) {
-                ch = p;
-                p = p.parent;
             }
-            return p;
         }
+        return count;
     }
 
-    static <K, V> SplayTreeMap.Entry<K, V> predecessor(SplayTreeMap.Entry<K, V> t) {
-        if (t == null)
+    // splays the least entry with key greater than (or equal to, if inclusive) the given one to the root
+    final SplayTreeMap.Entry<K, V> splayCeiling(Object key, boolean inclusive) {
+        if (root == null)
             return null;
-        else if (t.left != null) {
-            SplayTreeMap.Entry<K, V> p = t.left;
-            while (p.right != null)
+        SplayTreeMap.Entry<K, V> t = splay(key);
+        int cmp = compare(t.key, key);
+        if (cmp > 0 || (cmp == 0 && inclusive))
+            return t;
+        // t is the greatest key below, the answer is the least key of its right subtree
+        SplayTreeMap.Entry<K, V> r = t.right;
+        if (r == null)
+            return null;
+        r = splay(r, key); // r.left is empty now
+        t.right = null;
+        t.size -= r.size;
+        r.left = t;
+        r.size += t.size;
+        root = r;
+        return r;
+    }
+
+    // splays the greatest entry with key less than (or equal to, if inclusive) the given one to the root
+    final SplayTreeMap.Entry<K, V> splayFloor(Object key, boolean inclusive) {
+        if (root == null)
+            return null;
+        SplayTreeMap.Entry<K, V> t = splay(key);
+        int cmp = compare(t.key, key);
+        if (cmp < 0 || (cmp == 0 && inclusive))
+            return t;
+        SplayTreeMap.Entry<K, V> l = t.left;
+        if (l == null)
+            return null;
+        l = splay(l, key); // l.right is empty now
+        t.left = null;
+        t.size -= l.size;
+        l.right = t;
+        l.size += t.size;
+        root = l;
+        return l;
+    }
+
+    // find required or greater
+    final Entry<K, V> getCeilingEntry(Object k) {
+        SplayTreeMap.Entry<K, V> p = root, found = null;
+        while (p != null) {
+            int cmp = compare(k, p.key);
+            if (cmp < 0) {
+                found = p;
+                p = p.left;
+            } else if (cmp > 0) {
                 p = p.right;
-            return p;
-        } else {
-            SplayTreeMap.Entry<K, V> p = t.parent;
-            SplayTreeMap.Entry<K, V> ch = t;
-            while (p != null && ch == p.left) {
-                ch = p;
-                p = p.parent;
+            } else {
+                return p;
             }
-            return p;
         }
+        return found;
     }
 
-    // find required or greater
-    private Entry<K, V> getCeilingEntry(K k) {
-        SplayTreeMap.Entry<K, V> e = findClosest(k);
-        while (compare(e.key, k) < 0) {
-            e = successor(e);
-            if (e == null) {
-                break;
+    // find greater
+    final Entry<K, V> getHigherEntry(Object k) {
+        SplayTreeMap.Entry<K, V> p = root, found = null;
+        while (p != null) {
+            if (compare(k, p.key) < 0) {
+                found = p;
+                p = p.left;
+            } else {
+                p = p.right;
             }
         }
-        return e;
+        return found;
+    }
+
+    // find required or lower
+    final Entry<K, V> getFloorEntry(Object k) {
+        SplayTreeMap.Entry<K, V> p = root, found = null;
+        while (p != null) {
+            int cmp = compare(k, p.key);
+            if (cmp > 0) {
+                found = p;
+                p = p.right;
+            } else if (cmp < 0) {
+                p = p.left;
+            } else {
+                return p;
+            }
+        }
+        return found;
     }
 
     // find lower
-    private Entry<K, V> getLowerEntry(K k) {
-        SplayTreeMap.Entry<K, V> e = findClosest(k);
-        while (compare(e.key, k) >= 0) {
-            e = predecessor(e);
-            if (e == null) {
-                break;
+    final Entry<K, V> getLowerEntry(Object k) {
+        SplayTreeMap.Entry<K, V> p = root, found = null;
+        while (p != null) {
+            if (compare(k, p.key) > 0) {
+                found = p;
+                p = p.right;
+            } else {
+                p = p.left;
             }
         }
-        return e;
+        return found;
     }
 
 
@@ -725,20 +3071,22 @@ public class SplayTreeMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
         V value;
         SplayTreeMap.Entry<K, V> left;
         SplayTreeMap.Entry<K, V> right;
-        SplayTreeMap.Entry<K, V> parent;
+        // number of entries in the subtree rooted here, read with sizeOf(); the sign bit
+        // marks an entry that may be held by a snapshot, see SplayTreeMap.own()
+        int size;
 
-        Entry(K key, V value, SplayTreeMap.Entry<K, V> parent) {
+        Entry(K key, V value) {
             this.key = key;
             this.value = value;
-            this.parent = parent;
+            this.size = 1;
         }
 
-        Entry(K key, V value, SplayTreeMap.Entry<K, V> parent, SplayTreeMap.Entry<K, V> left, SplayTreeMap.Entry<K, V> right) {
+        Entry(K key, V value, SplayTreeMap.Entry<K, V> left, SplayTreeMap.Entry<K, V> right) {
             this.key = key;
             this.value = value;
-            this.parent = parent;
             this.right = right;
             this.left = left;
+            this.size = 1 + sizeOf(left) + sizeOf(right);
         }
 
         public K getKey() {
@@ -773,20 +3121,6 @@ public class SplayTreeMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
         public String toString() {
             return key + "=" + value;
         }
-
-        void setParent(SplayTreeMap.Entry<K, V> p) {
-            this.parent = p;
-        }
-
-        final void saveParent() {
-            if (left != null) {
-                left.setParent(this);
-            }
-            if (right != null) {
-                right.setParent(this);
-            }
-        }
-
     }
 
 
@@ -806,6 +3140,17 @@ public class SplayTreeMap<K, V> extends AbstractMap<K, V> implements SortedMap<K
         return (Objects.equals(o1, o2));
     }
 
+    // sign bit of Entry.size, set on entries a snapshot may hold
+    static final int SHARED = Integer.MIN_VALUE;
+
+    static int sizeOf(SplayTreeMap.Entry<?, ?> e) {
+        return (e == null) ? 0 : e.size & ~SHARED;
+    }
+
+    static <K, V> K keyOrNull(SplayTreeMap.Entry<K, V> e) {
+        return (e == null) ? null : e.key;
+    }
+
     static <K> K key(SplayTreeMap.Entry<K, ?> e) {
         if (e == null)
             throw new NoSuchElementException();
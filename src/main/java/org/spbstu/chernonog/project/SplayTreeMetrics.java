@@ -0,0 +1,324 @@
+package org.spbstu.chernonog.project;
+
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Opt-in statistics of a {@link SplayTreeMap}, see {@link SplayTreeMap#enableMetrics()}:
+ * the length of every splayed or searched path, the rotations made, how often a path
+ * was much longer than in a balanced tree of the same size, and latency histograms
+ * of {@code get}, {@code put} and {@code remove}. A map without metrics pays a null check.
+ * <p>
+ * Like the map, the metrics are not synchronized; a {@link #snapshot()} taken from another
+ * thread, e.g. by JMX, is consistent enough for monitoring but not exact.
+ */
+public class SplayTreeMetrics implements SplayTreeMetricsMXBean {
+
+    public enum Operation {
+        GET, PUT, REMOVE
+    }
+
+    // a path longer than this many times the depth of a balanced tree counts as degenerate
+    static final int DEGENERATE_FACTOR = 3;
+
+    private long splays;
+    private long totalDepth;
+    private int maxDepth;
+    private long rotations;
+    private long degenerateSplays;
+
+    private final EnumMap<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+
+    SplayTreeMetrics() {
+        for (Operation op : Operation.values())
+            latencies.put(op, new Histogram());
+    }
+
+    // one splay or search of a path of the given number of entries in a tree of the given size
+    final void recordAccess(int depth, int rotations, int size) {
+        splays++;
+        totalDepth += depth;
+        if (depth > maxDepth)
+            maxDepth = depth;
+        this.rotations += rotations;
+        if (depth > DEGENERATE_FACTOR * (32 - Integer.numberOfLeadingZeros(size)))
+            degenerateSplays++;
+    }
+
+    final void recordLatency(Operation op, long nanos) {
+        latencies.get(op).record(nanos);
+    }
+
+    @Override
+    public void reset() {
+        splays = totalDepth = rotations = degenerateSplays = 0;
+        maxDepth = 0;
+        for (Histogram h : latencies.values())
+            h.reset();
+    }
+
+    public Snapshot snapshot() {
+        EnumMap<Operation, Histogram> copies = new EnumMap<>(Operation.class);
+        for (Map.Entry<Operation, Histogram> e : latencies.entrySet())
+            copies.put(e.getKey(), e.getValue().copy());
+        return new Snapshot(splays, totalDepth, maxDepth, rotations, degenerateSplays, copies);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server under the given name,
+     * e.g. {@code org.spbstu.chernonog.project:type=SplayTreeMap,name=offsets}.
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    ///////MXBEAN ATTRIBUTES
+
+    @Override
+    public long getSplays() {
+        return splays;
+    }
+
+    @Override
+    public double getAverageDepth() {
+        return splays == 0 ? 0 : (double) totalDepth / splays;
+    }
+
+    @Override
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    @Override
+    public long getRotations() {
+        return rotations;
+    }
+
+    @Override
+    public long getDegenerateSplays() {
+        return degenerateSplays;
+    }
+
+    @Override
+    public long getGetCount() {
+        return latencies.get(Operation.GET).count();
+    }
+
+    @Override
+    public long getGetLatencyP50Nanos() {
+        return latencies.get(Operation.GET).percentile(50);
+    }
+
+    @Override
+    public long getGetLatencyP99Nanos() {
+        return latencies.get(Operation.GET).percentile(99);
+    }
+
+    @Override
+    public long getPutCount() {
+        return latencies.get(Operation.PUT).count();
+    }
+
+    @Override
+    public long getPutLatencyP50Nanos() {
+        return latencies.get(Operation.PUT).percentile(50);
+    }
+
+    @Override
+    public long getPutLatencyP99Nanos() {
+        return latencies.get(Operation.PUT).percentile(99);
+    }
+
+    @Override
+    public long getRemoveCount() {
+        return latencies.get(Operation.REMOVE).count();
+    }
+
+    @Override
+    public long getRemoveLatencyP50Nanos() {
+        return latencies.get(Operation.REMOVE).percentile(50);
+    }
+
+    @Override
+    public long getRemoveLatencyP99Nanos() {
+        return latencies.get(Operation.REMOVE).percentile(99);
+    }
+
+    /**
+     * Metrics frozen at the time {@link #snapshot()} was called.
+     */
+    public static final class Snapshot {
+        private final long splays;
+        private final long totalDepth;
+        private final int maxDepth;
+        private final long rotations;
+        private final long degenerateSplays;
+        private final EnumMap<Operation, Histogram> latencies;
+
+        Snapshot(long splays, long totalDepth, int maxDepth, long rotations, long degenerateSplays,
+                 EnumMap<Operation, Histogram> latencies) {
+            this.splays = splays;
+            this.totalDepth = totalDepth;
+            this.maxDepth = maxDepth;
+            this.rotations = rotations;
+            this.degenerateSplays = degenerateSplays;
+            this.latencies = latencies;
+        }
+
+        // splays and searches, including those made by navigation and bulk methods
+        public long splays() {
+            return splays;
+        }
+
+        public double averageDepth() {
+            return splays == 0 ? 0 : (double) totalDepth / splays;
+        }
+
+        public int maxDepth() {
+            return maxDepth;
+        }
+
+        public long rotations() {
+            return rotations;
+        }
+
+        public double rotationsPerSplay() {
+            return splays == 0 ? 0 : (double) rotations / splays;
+        }
+
+        // paths longer than three times the depth of a balanced tree
+        public long degenerateSplays() {
+            return degenerateSplays;
+        }
+
+        public long count(Operation op) {
+            return latencies.get(op).count();
+        }
+
+        /**
+         * @param percentile in [0, 100]
+         * @return latency not exceeded by the given share of operations, within about 3%
+         */
+        public long latencyNanos(Operation op, double percentile) {
+            return latencies.get(op).percentile(percentile);
+        }
+
+        public long maxLatencyNanos(Operation op) {
+            return latencies.get(op).max();
+        }
+
+        public double meanLatencyNanos(Operation op) {
+            return latencies.get(op).mean();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("splays=").append(splays)
+                    .append(", averageDepth=").append(String.format("%.2f", averageDepth()))
+                    .append(", maxDepth=").append(maxDepth)
+                    .append(", rotations=").append(rotations)
+                    .append(", degenerateSplays=").append(degenerateSplays);
+            for (Operation op : Operation.values())
+                sb.append(", ").append(op).append("[count=").append(count(op))
+                        .append(", p50=").append(latencyNanos(op, 50))
+                        .append("ns, p99=").append(latencyNanos(op, 99))
+                        .append("ns, max=").append(maxLatencyNanos(op)).append("ns]");
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Log-linear histogram in the manner of HdrHistogram: values below 64 are counted
+     * exactly, larger ones in 32 buckets per power of two, so any value is reported
+     * within about 3%.
+     */
+    static final class Histogram {
+        private static final int SUB_BITS = 5;
+        private static final int HALF = 1 << SUB_BITS;
+        private static final int LINEAR = 2 * HALF;
+        private static final int BUCKETS = LINEAR + (63 - SUB_BITS) * HALF;
+
+        private final long[] counts;
+        private long count;
+        private long sum;
+        private long max;
+
+        Histogram() {
+            counts = new long[BUCKETS];
+        }
+
+        private Histogram(Histogram h) {
+            counts = h.counts.clone();
+            count = h.count;
+            sum = h.sum;
+            max = h.max;
+        }
+
+        void record(long value) {
+            if (value < 0)
+                value = 0;
+            counts[index(value)]++;
+            count++;
+            sum += value;
+            if (value > max)
+                max = value;
+        }
+
+        static int index(long value) {
+            if (value < LINEAR)
+                return (int) value;
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+            return LINEAR + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+        }
+
+        // the greatest value counted in the bucket
+        static long highestValue(int index) {
+            if (index < LINEAR)
+                return index;
+            int shift = (index - LINEAR) / HALF + 1;
+            long sub = (index - LINEAR) % HALF + HALF;
+            return ((sub + 1) << shift) - 1;
+        }
+
+        long percentile(double percentile) {
+            if (count == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return Math.min(highestValue(i), max);
+            }
+            return max;
+        }
+
+        long count() {
+            return count;
+        }
+
+        long max() {
+            return max;
+        }
+
+        double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        void reset() {
+            Arrays.fill(counts, 0);
+            count = sum = max = 0;
+        }
+
+        Histogram copy() {
+            return new Histogram(this);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.spbstu.chernonog.project;
+
+
+/**
+ * JMX view of {@link SplayTreeMetrics}.
+ */
+public interface SplayTreeMetricsMXBean {
+    long getSplays();
+
+    double getAverageDepth();
+
+    int getMaxDepth();
+
+    long getRotations();
+
+    long getDegenerateSplays();
+
+    long getGetCount();
+
+    long getGetLatencyP50Nanos();
+
+    long getGetLatencyP99Nanos();
+
+    long getPutCount();
+
+    long getPutLatencyP50Nanos();
+
+    long getPutLatencyP99Nanos();
+
+    long getRemoveCount();
+
+    long getRemoveLatencyP50Nanos();
+
+    long getRemoveLatencyP99Nanos();
+
+    void reset();
+}
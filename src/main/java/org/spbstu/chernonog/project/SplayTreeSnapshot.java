@@ -0,0 +1,293 @@
+package org.spbstu.chernonog.project;
+
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Saves a {@link SplayTreeMap} to a file and reads it back with the same tree shape,
+ * so the keys splayed near the root stay there after a restart.
+ * <p>
+ * The file holds a header followed by one record per entry in post-order (children
+ * before their parent): the offsets of the left and right child records, or -1,
+ * then the key and the value as written by their {@link Codec}s. A snapshot is
+ * written to a temporary file next to the target and moved over it atomically,
+ * so a crash leaves either the old snapshot or the new one.
+ * <p>
+ * {@link #load} rebuilds the map in one sequential pass over the mapped file,
+ * without comparing keys. {@link #open} maps the file and answers lookups from it
+ * directly, decoding only the records on the search path.
+ */
+public final class SplayTreeSnapshot {
+
+    static final int MAGIC = 0x53504C59; // "SPLY"
+    static final int VERSION = 1;
+
+    // magic, version, entry count, root record offset, file length
+    static final int HEADER_SIZE = 5 * Integer.BYTES;
+
+    static final int NONE = -1;
+
+    private SplayTreeSnapshot() {
+    }
+
+    /**
+     * Binary form of keys or values in a snapshot.
+     */
+    public interface Codec<T> {
+
+        void write(T value, DataOutput out) throws IOException;
+
+        /**
+         * Reads a value at the position of the buffer and advances it. The value must
+         * copy what it needs out of the buffer rather than keep a view of it, such as
+         * {@code in.slice()}: the buffer maps the file, and {@link MappedSplayTreeMap#close()}
+         * unmaps it while the values read may still be in use.
+         */
+        T read(ByteBuffer in);
+
+        static Codec<String> strings() {
+            return new Codec<String>() {
+                @Override
+                public void write(String value, DataOutput out) throws IOException {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+
+                @Override
+                public String read(ByteBuffer in) {
+                    byte[] bytes = new byte[in.getInt()];
+                    in.get(bytes);
+                    return new String(bytes, StandardCharsets.UTF_8);
+                }
+            };
+        }
+
+        static Codec<Long> longs() {
+            return new Codec<Long>() {
+                @Override
+                public void write(Long value, DataOutput out) throws IOException {
+                    out.writeLong(value);
+                }
+
+                @Override
+                public Long read(ByteBuffer in) {
+                    return in.getLong();
+                }
+            };
+        }
+
+        static Codec<Integer> integers() {
+            return new Codec<Integer>() {
+                @Override
+                public void write(Integer value, DataOutput out) throws IOException {
+                    out.writeInt(value);
+                }
+
+                @Override
+                public Integer read(ByteBuffer in) {
+                    return in.getInt();
+                }
+            };
+        }
+
+        // fixed-width keys in the encoding of the off-heap map
+        static <T> Codec<T> of(KeyCodec<T> codec) {
+            return new Codec<T>() {
+                @Override
+                public void write(T value, DataOutput out) throws IOException {
+                    ByteBuffer buffer = ByteBuffer.allocate(codec.width());
+                    codec.encode(value, buffer, 0);
+                    out.write(buffer.array());
+                }
+
+                @Override
+                public T read(ByteBuffer in) {
+                    T value = codec.decode(in, in.position());
+                    in.position(in.position() + codec.width());
+                    return value;
+                }
+            };
+        }
+    }
+
+    /**
+     * Writes the map to the file, replacing it atomically.
+     *
+     * @throws IOException if writing fails or the snapshot would exceed 2 GB; the file is then left as it was
+     */
+    public static <K, V> void write(SplayTreeMap<K, V> map, Path file,
+                                    Codec<? super K> keyCodec, Codec<? super V> valueCodec) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+                out.write(new byte[HEADER_SIZE]);
+                int rootOffset = writeRecords(map.root, out, keyCodec, valueCodec);
+                out.flush();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).putInt(map.size()).putInt(rootOffset).putInt(out.size()).flip();
+                while (header.hasRemaining())
+                    channel.write(header, header.position());
+                channel.force(true);
+            }
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        syncDirectory(dir);
+    }
+
+    // makes the rename durable; some platforms, e.g. Windows, can't open or force a directory
+    private static void syncDirectory(Path dir) {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    // writes the subtree in post-order without recursion, the tree may be a long chain; returns the root offset
+    private static <K, V> int writeRecords(SplayTreeMap.Entry<K, V> root, DataOutputStream out,
+                                           Codec<? super K> keyCodec, Codec<? super V> valueCodec) throws IOException {
+        if (root == null)
+            return NONE;
+        @SuppressWarnings("unchecked")
+        SplayTreeMap.Entry<K, V>[] nodes = (SplayTreeMap.Entry<K, V>[]) new SplayTreeMap.Entry[16];
+        byte[] visited = new byte[16]; // children pushed so far: 0 none, 1 left, 2 both
+        int[] offsets = new int[16];    // offsets of the written subtrees not yet claimed by their parent
+        int depth = 0, written = 0;
+        nodes[depth++] = root;
+        while (depth > 0) {
+            SplayTreeMap.Entry<K, V> e = nodes[depth - 1];
+            SplayTreeMap.Entry<K, V> child = null;
+            if (visited[depth - 1] == 0) {
+                visited[depth - 1] = 1;
+                child = e.left;
+            } else if (visited[depth - 1] == 1) {
+                visited[depth - 1] = 2;
+                child = e.right;
+            } else {
+                depth--;
+                int right = e.right == null ? NONE : offsets[--written];
+                int left = e.left == null ? NONE : offsets[--written];
+                int offset = out.size();
+                if (offset == Integer.MAX_VALUE)
+                    throw new IOException("snapshot exceeds 2 GB");
+                out.writeInt(left);
+                out.writeInt(right);
+                keyCodec.write(e.key, out);
+                valueCodec.write(e.value, out);
+                if (written == offsets.length)
+                    offsets = Arrays.copyOf(offsets, written * 2);
+                offsets[written++] = offset;
+            }
+            if (child != null) {
+                if (depth == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, depth * 2);
+                    visited = Arrays.copyOf(visited, depth * 2);
+                }
+                nodes[depth] = child;
+                visited[depth++] = 0;
+            }
+        }
+        if (out.size() == Integer.MAX_VALUE)
+            throw new IOException("snapshot exceeds 2 GB");
+        return offsets[0];
+    }
+
+    /**
+     * Reads the whole snapshot into a new map with the given ordering, which has to be
+     * the one the snapshot was written with. Takes linear time and compares no keys.
+     * The mapping is left to the garbage collector, so values that still view it stay valid.
+     *
+     * @throws IOException if the file can't be read or is not a complete snapshot
+     */
+    public static <K, V> SplayTreeMap<K, V> load(Path file, Comparator<? super K> comparator,
+                                                 Codec<? extends K> keyCodec, Codec<? extends V> valueCodec) throws IOException {
+        MappedByteBuffer buffer = map(file);
+        try {
+            int count = checkHeader(buffer);
+            SplayTreeMap<K, V> map = new SplayTreeMap<>(comparator);
+            map.replaceTree(readRecords(buffer, count, keyCodec, valueCodec), count);
+            return map;
+        } catch (IOException | RuntimeException e) {
+            OffHeapSplayTreeMap.release(buffer); // nothing read is handed out
+            throw e;
+        }
+    }
+
+    /**
+     * Maps the snapshot for lookups straight from the file; see {@link MappedSplayTreeMap}.
+     *
+     * @throws IOException if the file can't be read or is not a complete snapshot
+     */
+    public static <K, V> MappedSplayTreeMap<K, V> open(Path file, Comparator<? super K> comparator,
+                                                       Codec<? extends K> keyCodec, Codec<? extends V> valueCodec) throws IOException {
+        MappedByteBuffer buffer = map(file);
+        try {
+            int count = checkHeader(buffer);
+            return new MappedSplayTreeMap<>(buffer, count, buffer.getInt(3 * Integer.BYTES), comparator, keyCodec, valueCodec);
+        } catch (IOException | RuntimeException e) {
+            OffHeapSplayTreeMap.release(buffer);
+            throw e;
+        }
+    }
+
+    static <K, V> SplayTreeMap.Entry<K, V> readRecords(ByteBuffer buffer, int count,
+                                                       Codec<? extends K> keyCodec, Codec<? extends V> valueCodec) throws IOException {
+        ByteBuffer in = buffer.duplicate();
+        in.position(HEADER_SIZE);
+        @SuppressWarnings("unchecked")
+        SplayTreeMap.Entry<K, V>[] stack = (SplayTreeMap.Entry<K, V>[]) new SplayTreeMap.Entry[16];
+        int depth = 0;
+        try {
+            for (int i = 0; i < count; i++) {
+                int left = in.getInt(), right = in.getInt();
+                K key = keyCodec.read(in);
+                V value = valueCodec.read(in);
+                SplayTreeMap.Entry<K, V> r = right == NONE ? null : stack[--depth];
+                SplayTreeMap.Entry<K, V> l = left == NONE ? null : stack[--depth];
+                if (depth == stack.length)
+                    stack = Arrays.copyOf(stack, depth * 2);
+                stack[depth++] = new SplayTreeMap.Entry<>(key, value, l, r);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("corrupt snapshot", e);
+        }
+        if (depth != (count == 0 ? 0 : 1) || in.hasRemaining())
+            throw new IOException("corrupt snapshot");
+        return count == 0 ? null : stack[0];
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE)
+                throw new IOException("not a snapshot: " + file);
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+    }
+
+    // returns the entry count
+    private static int checkHeader(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt(0) != MAGIC)
+            throw new IOException("not a snapshot");
+        if (buffer.getInt(Integer.BYTES) != VERSION)
+            throw new IOException("unsupported snapshot version " + buffer.getInt(Integer.BYTES));
+        int count = buffer.getInt(2 * Integer.BYTES);
+        int root = buffer.getInt(3 * Integer.BYTES);
+        if (buffer.getInt(4 * Integer.BYTES) != buffer.limit() || count < 0
+                || (count == 0) != (root == NONE) || root >= buffer.limit())
+            throw new IOException("corrupt snapshot");
+        return count;
+    }
+}
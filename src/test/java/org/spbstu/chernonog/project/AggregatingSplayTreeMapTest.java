@@ -0,0 +1,162 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AggregatingSplayTreeMapTest {
+
+    @Test
+    void sumOverRanges() {
+        AggregatingSplayTreeMap<Integer, Long, Long> map = new AggregatingSplayTreeMap<>(Monoid.longSum(), v -> v);
+        TreeMap<Integer, Long> expMap = new TreeMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 20_000; i++) {
+            int key = random.nextInt(2000);
+            switch (random.nextInt(4)) {
+                case 0:
+                case 1:
+                    long value = random.nextInt(1000) - 500;
+                    assertEquals(expMap.put(key, value), map.put(key, value));
+                    break;
+                case 2:
+                    assertEquals(expMap.remove(key), map.remove(key));
+                    break;
+                default:
+                    int to = key + random.nextInt(500);
+                    boolean fromInclusive = random.nextBoolean(), toInclusive = random.nextBoolean();
+                    assertEquals(sum(expMap.subMap(key, fromInclusive, to, toInclusive)),
+                            map.aggregate(key, fromInclusive, to, toInclusive));
+            }
+            assertEquals(expMap.size(), map.size());
+        }
+        assertEquals(expMap, map);
+        assertEquals(sum(expMap), map.aggregate());
+        assertEquals(sum(expMap.subMap(100, 1500)), map.aggregate(100, 1500));
+        assertEquals(sum(expMap), map.aggregate(-1, 5000));
+        assertEquals(0L, map.aggregate(5000, 6000));
+        assertEquals(0L, map.aggregate(7, 7));
+        assertThrows(IllegalArgumentException.class, () -> map.aggregate(10, 5));
+        map.clear();
+        assertEquals(0L, map.aggregate());
+        assertEquals(0L, map.aggregate(0, 10));
+    }
+
+    @Test
+    void nonCommutativeAggregateKeepsKeyOrder() {
+        AggregatingSplayTreeMap<Integer, String, String> map = new AggregatingSplayTreeMap<>(
+                Comparator.reverseOrder(), Monoid.of("", String::concat), v -> v);
+        TreeMap<Integer, String> expMap = new TreeMap<>(Comparator.reverseOrder());
+        Random random = new Random(2);
+        for (int i = 0; i < 3000; i++) {
+            int key = random.nextInt(300);
+            String value = Character.toString((char) ('a' + random.nextInt(26)));
+            if (random.nextInt(3) == 0) {
+                assertEquals(expMap.remove(key), map.remove(key));
+            } else {
+                assertEquals(expMap.put(key, value), map.put(key, value));
+            }
+            int from = random.nextInt(300), to = random.nextInt(300);
+            if (from < to) {
+                int t = from;
+                from = to;
+                to = t;
+            }
+            assertEquals(String.join("", expMap.subMap(from, to).values()), map.aggregate(from, to));
+            assertEquals(String.join("", expMap.values()), map.aggregate());
+        }
+        assertEquals(expMap.firstKey(), map.firstKey());
+        assertEquals(String.join("", expMap.values()), map.aggregate());
+        assertEquals(expMap.lastKey(), map.lastKey());
+        assertEquals(String.join("", expMap.values()), map.aggregate());
+    }
+
+    @Test
+    void maxAndCount() {
+        AggregatingSplayTreeMap<String, Integer, Integer> max = new AggregatingSplayTreeMap<>(
+                Monoid.max(Comparator.<Integer>naturalOrder()), v -> v);
+        AggregatingSplayTreeMap<String, Integer, Long> count = new AggregatingSplayTreeMap<>(Monoid.longSum(), v -> 1L);
+        String[] keys = {"d", "a", "f", "b", "e", "c"};
+        for (int i = 0; i < keys.length; i++) {
+            max.put(keys[i], i * 7 % 6);
+            count.put(keys[i], i);
+        }
+        assertEquals(5, max.aggregate());
+        assertEquals(3, max.aggregate("a", "c"));
+        assertNull(max.aggregate("g", "z"));
+        assertEquals(3L, count.aggregate("b", true, "d", true));
+        assertEquals(2L, count.aggregate("b", false, "d", true));
+        assertEquals(6L, count.aggregate());
+        max.put("b", 9);
+        assertEquals(9, max.aggregate("a", "c"));
+        Iterator<Map.Entry<String, Integer>> it = max.entrySet().iterator();
+        while (it.hasNext())
+            if (it.next().getValue() > 4)
+                it.remove();
+        assertEquals(4, max.aggregate());
+        assertEquals("adef", String.join("", max.keySet()));
+        assertThrows(UnsupportedOperationException.class, () -> max.entrySet().iterator().next().setValue(1));
+    }
+
+    @Test
+    void degenerateTree() {
+        AggregatingSplayTreeMap<Integer, Long, Long> map = new AggregatingSplayTreeMap<>(Monoid.longSum(), v -> v);
+        int n = 200_000;
+        for (int i = 0; i < n; i++)
+            map.put(i, (long) i);
+        assertEquals((long) n * (n - 1) / 2, map.aggregate());
+        assertEquals(1L, map.aggregate(0, 2));
+        assertEquals((long) (n - 1), map.aggregate(n - 1, n));
+        for (int i = n - 1; i >= 0; i -= 2)
+            map.remove(i);
+        assertEquals((long) n / 2 * (n / 2 - 1), map.aggregate());
+        assertThrows(NoSuchElementException.class, () -> new AggregatingSplayTreeMap<Integer, Long, Long>(
+                Monoid.longSum(), v -> v).firstKey());
+    }
+
+    @Test
+    void iterateChain() {
+        AggregatingSplayTreeMap<Integer, Long, Long> map = new AggregatingSplayTreeMap<>(Monoid.longSum(), v -> v);
+        TreeMap<Integer, Long> expMap = new TreeMap<>();
+        int n = 200_000;
+        for (int i = 0; i < n; i++) {
+            map.put(i, (long) i);
+            expMap.put(i, (long) i);
+        }
+        // the ascending puts leave a chain, the walk must not descend from the root for every step
+        long[] sum = {0};
+        map.forEach((k, v) -> sum[0] += v);
+        assertEquals((long) n * (n - 1) / 2, sum[0]);
+        assertEquals(expMap, map);
+        assertEquals(expMap.hashCode(), map.hashCode());
+        assertEquals(new ArrayList<>(expMap.values()), new ArrayList<>(map.values()));
+
+        // lookups splay the tree during the iteration, removals go through the iterator
+        Random random = new Random(3);
+        Iterator<Map.Entry<Integer, Long>> it = map.entrySet().iterator();
+        Iterator<Map.Entry<Integer, Long>> expIt = expMap.entrySet().iterator();
+        while (expIt.hasNext()) {
+            assertEquals(expIt.next(), it.next());
+            if (random.nextInt(4) == 0) {
+                int key = random.nextInt(n);
+                assertEquals(expMap.get(key), map.get(key));
+            }
+            if (random.nextInt(3) == 0) {
+                it.remove();
+                expIt.remove();
+            }
+        }
+        assertFalse(it.hasNext());
+        assertEquals(expMap, map);
+        assertEquals(sum(expMap), map.aggregate());
+    }
+
+    private static long sum(Map<Integer, Long> map) {
+        long sum = 0;
+        for (long v : map.values())
+            sum += v;
+        return sum;
+    }
+}
@@ -0,0 +1,99 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BytesSplayTreeMapTest {
+
+    // keys sharing prefixes of various lengths, with zero and 0xFF bytes and lengths around 8
+    private static byte[] randomKey(Random random) {
+        byte[] key = new byte[random.nextInt(24)];
+        int shared = random.nextInt(key.length + 1);
+        for (int i = 0; i < key.length; i++)
+            key[i] = i < shared ? (byte) (i * 7) : (byte) (random.nextInt(4) - 2);
+        return key;
+    }
+
+    @Test
+    void randomOps() {
+        BytesSplayTreeMap<Integer> map = new BytesSplayTreeMap<>();
+        TreeMap<byte[], Integer> expMap = new TreeMap<>(Arrays::compareUnsigned);
+        Random random = new Random(1);
+        for (int i = 0; i < 50_000; i++) {
+            byte[] key = randomKey(random);
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expMap.put(key, i), map.put(key, i));
+                    break;
+                case 1:
+                    assertEquals(expMap.remove(key), map.remove(key.clone()));
+                    break;
+                default:
+                    assertEquals(expMap.get(key), map.get(key.clone()));
+                    assertEquals(expMap.containsKey(key), map.containsKey(key));
+                    break;
+            }
+            assertEquals(expMap.size(), map.size());
+        }
+        byte[][] keys = map.keys();
+        assertEquals(expMap.size(), keys.length);
+        int i = 0;
+        for (byte[] key : expMap.keySet())
+            assertArrayEquals(key, keys[i++]);
+        assertArrayEquals(expMap.firstKey(), map.firstKey());
+        assertArrayEquals(expMap.lastKey(), map.lastKey());
+    }
+
+    @Test
+    void longCommonPrefixes() {
+        BytesSplayTreeMap<String> map = new BytesSplayTreeMap<>();
+        TreeMap<byte[], String> expMap = new TreeMap<>(Arrays::compareUnsigned);
+        byte[] common = new byte[40];
+        Arrays.fill(common, (byte) 0x80);
+        Random random = new Random(2);
+        for (int i = 0; i < 5000; i++) {
+            byte[] key = Arrays.copyOf(common, common.length + random.nextInt(3));
+            for (int j = common.length; j < key.length; j++)
+                key[j] = (byte) random.nextInt(256);
+            if (random.nextBoolean())
+                key[random.nextInt(common.length)] = (byte) random.nextInt(256);
+            map.put(key, "v" + i);
+            expMap.put(key, "v" + i);
+        }
+        for (byte[] key : expMap.keySet())
+            assertEquals(expMap.get(key), map.get(key.clone()));
+        assertEquals(expMap.get(common), map.get(common));
+        assertNull(map.get(new byte[0]));
+        List<byte[]> seen = new ArrayList<>();
+        map.forEach((key, value) -> seen.add(key));
+        assertEquals(expMap.size(), seen.size());
+        Iterator<byte[]> it = expMap.keySet().iterator();
+        for (byte[] key : seen)
+            assertArrayEquals(it.next(), key);
+    }
+
+    @Test
+    void prefixOrder() {
+        assertEquals(0x0102000000000000L, BytesSplayTreeMap.prefix(new byte[]{1, 2}, 0));
+        assertEquals(-1L, BytesSplayTreeMap.prefix(new byte[]{-1, -1, -1, -1, -1, -1, -1, -1, 5}, 0));
+        BytesSplayTreeMap<Integer> map = new BytesSplayTreeMap<>();
+        map.put(new byte[]{1, 0}, 2);
+        map.put(new byte[]{1}, 1);
+        map.put(new byte[]{1, 0, 0, 0, 0, 0, 0, 0, 0}, 3);
+        map.put(new byte[]{}, 0);
+        map.put(new byte[]{(byte) 0xFF}, 4);
+        List<Integer> values = new ArrayList<>();
+        map.forEach((key, value) -> values.add(value));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), values);
+        assertEquals(Integer.valueOf(3), map.get(new byte[]{1, 0, 0, 0, 0, 0, 0, 0, 0}));
+        assertNull(map.get(new byte[]{1, 0, 0}));
+        assertEquals("{[]=0, [1]=1, [1, 0]=2, [1, 0, 0, 0, 0, 0, 0, 0, 0]=3, [-1]=4}", map.toString());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertThrows(NoSuchElementException.class, map::firstKey);
+        assertThrows(NullPointerException.class, () -> map.put(null, 1));
+    }
+}
@@ -0,0 +1,178 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrentSplayTreeMapTest {
+
+    ConcurrentSplayTreeMap<Integer, String> map;
+    TreeMap<Integer, String> expMap;
+
+    @BeforeEach
+    void setUp() {
+        map = new ConcurrentSplayTreeMap<>();
+        expMap = new TreeMap<>();
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            keys.add(i);
+        }
+        Collections.shuffle(keys);
+        keys.forEach(key -> {
+            map.put(key, key.toString());
+            expMap.put(key, key.toString());
+        });
+    }
+
+    @Test
+    void queryOps() {
+        assertEquals(expMap, map);
+        assertEquals("5", map.get(5));
+        assertNull(map.get(-5));
+        assertTrue(map.containsKey(299));
+        assertTrue(map.containsValue("299"));
+        assertFalse(map.containsValue("300"));
+        assertEquals("5", map.remove(5));
+        assertNull(map.remove(5));
+        assertEquals(299, map.size());
+        assertThrows(NullPointerException.class, () -> map.get(null));
+        assertThrows(NullPointerException.class, () -> map.put(1, null));
+        assertThrows(ClassCastException.class, () -> map.get("as"));
+    }
+
+    @Test
+    void atomicOps() {
+        assertEquals("1", map.putIfAbsent(1, "one"));
+        assertNull(map.putIfAbsent(-1, "-1"));
+        assertFalse(map.remove(1, "one"));
+        assertTrue(map.remove(1, "1"));
+        assertFalse(map.replace(2, "two", "2"));
+        assertTrue(map.replace(2, "2", "two"));
+        assertEquals("two", map.replace(2, "2"));
+        assertNull(map.replace(1, "1"));
+        assertEquals("3!", map.compute(3, (k, v) -> v + "!"));
+        assertEquals("400", map.computeIfAbsent(400, Object::toString));
+    }
+
+    @Test
+    void sortedOps() {
+        assertEquals(0, map.firstKey());
+        assertEquals(299, map.lastKey());
+        SortedMap<Integer, String> sub = map.subMap(10, 20);
+        assertEquals(expMap.subMap(10, 20), sub);
+        assertEquals(10, sub.size());
+        assertEquals(10, sub.firstKey());
+        assertEquals(19, sub.lastKey());
+        assertEquals(expMap.headMap(50), map.headMap(50));
+        assertEquals(expMap.tailMap(250), map.tailMap(250));
+        assertEquals(expMap.subMap(12, 15), sub.subMap(12, 15));
+        assertThrows(IllegalArgumentException.class, () -> sub.subMap(5, 15));
+        assertThrows(IllegalArgumentException.class, () -> sub.put(30, "30"));
+        assertTrue(map.subMap(500, 600).isEmpty());
+        assertThrows(NoSuchElementException.class, () -> map.subMap(500, 600).firstKey());
+
+        sub.clear();
+        expMap.subMap(10, 20).clear();
+        assertEquals(expMap, map);
+    }
+
+    @Test
+    void iteratorIsWeaklyConsistent() {
+        Iterator<Map.Entry<Integer, String>> it = map.entrySet().iterator();
+        List<Integer> seen = new ArrayList<>();
+        while (it.hasNext()) {
+            int key = it.next().getKey();
+            seen.add(key);
+            // changes behind the iterator don't break it
+            map.remove(key + 1);
+            if (key < 300)
+                map.put(key + 1000, "late");
+            if (key % 2 == 0)
+                it.remove();
+        }
+        for (int i = 1; i < seen.size(); i++) {
+            assertTrue(seen.get(i - 1) < seen.get(i));
+        }
+        assertFalse(map.containsKey(0));
+        assertTrue(seen.contains(1000));
+    }
+
+    @Test
+    void entriesAreSnapshots() {
+        Map.Entry<Integer, String> e = map.entrySet().iterator().next();
+        assertThrows(UnsupportedOperationException.class, () -> e.setValue("x"));
+    }
+
+    @Test
+    void hitsAreSplayedInBatches() {
+        ConcurrentSplayTreeMap<Integer, String> hot = new ConcurrentSplayTreeMap<>(null, 1);
+        hot.putAll(expMap);
+        SplayTreeMetrics metrics = hot.m.enableMetrics();
+        for (int i = 0; i < 10_000; i++)
+            assertEquals("7", hot.get(7));
+        // about one batch per 64 hits, each splaying the keys recorded since the last one
+        long splays = metrics.snapshot().splays();
+        assertTrue(splays > 0 && splays < 10_000, String.valueOf(splays));
+        assertEquals(7, hot.m.root.key);
+        assertEquals(expMap, hot);
+    }
+
+    @Test
+    void concurrentReadersAndWriters() throws Exception {
+        ConcurrentSplayTreeMap<Integer, Integer> shared = new ConcurrentSplayTreeMap<>(null, 1);
+        for (int i = 0; i < 10_000; i += 2) {
+            shared.put(i, i);
+        }
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger wrongValues = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                Random random = new Random(id);
+                for (int i = 0; i < 50_000; i++) {
+                    int key = random.nextInt(10_000);
+                    if (id < 2) {
+                        // writers only touch odd keys
+                        if (key % 2 == 1) {
+                            if (random.nextBoolean())
+                                shared.put(key, key);
+                            else
+                                shared.remove(key);
+                        }
+                    } else {
+                        Integer value = shared.get(key);
+                        if (key % 2 == 0 ? !Integer.valueOf(key).equals(value) : value != null && value != key)
+                            wrongValues.incrementAndGet();
+                    }
+                    if (i % 5000 == 0) {
+                        int last = -1;
+                        for (Integer k : shared.headMap(2000).keySet()) {
+                            if (k <= last)
+                                wrongValues.incrementAndGet();
+                            last = k;
+                        }
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : futures) {
+            f.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertEquals(0, wrongValues.get());
+        for (int i = 0; i < 10_000; i += 2) {
+            assertEquals(i, shared.get(i));
+        }
+    }
+}
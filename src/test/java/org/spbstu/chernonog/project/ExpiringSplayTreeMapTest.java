@@ -0,0 +1,233 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpiringSplayTreeMapTest {
+
+    private long now = Long.MAX_VALUE - 1000; // the clock overflows during the tests
+
+    private <K, V> ExpiringSplayTreeMap<K, V> newMap() {
+        return new ExpiringSplayTreeMap<>(null, () -> now);
+    }
+
+    @Test
+    void lazyExpiry() {
+        ExpiringSplayTreeMap<String, Integer> map = newMap();
+        List<String> expired = new ArrayList<>();
+        map.setExpirationListener((k, v) -> expired.add(k + "=" + v));
+        map.put("a", 1, 10, TimeUnit.NANOSECONDS);
+        map.put("b", 2, 20, TimeUnit.NANOSECONDS);
+        map.put("c", 3);
+        assertEquals(10, map.remainingNanos("a"));
+        assertEquals(Long.MAX_VALUE, map.remainingNanos("c"));
+        now += 10;
+        assertNull(map.get("a"));
+        assertEquals(List.of("a=1"), expired);
+        assertEquals(-1, map.remainingNanos("a"));
+        assertEquals(2, map.get("b"));
+        assertTrue(map.expireAfter("b", 5, TimeUnit.NANOSECONDS));
+        assertFalse(map.expireAfter("a", 5, TimeUnit.NANOSECONDS));
+        now += 5;
+        assertFalse(map.containsKey("b"));
+        assertEquals(List.of("a=1", "b=2"), expired);
+        now += 1_000_000;
+        assertEquals(3, map.get("c"));
+        assertEquals(Map.of("c", 3), map);
+    }
+
+    @Test
+    void putReplacesDeadline() {
+        ExpiringSplayTreeMap<Integer, String> map = newMap();
+        map.put(1, "a", 10, TimeUnit.NANOSECONDS);
+        assertEquals("a", map.put(1, "b"));
+        now += 100;
+        assertEquals("b", map.put(1, "c", 10, TimeUnit.NANOSECONDS));
+        now += 10;
+        // the expired value is not returned
+        assertNull(map.put(1, "d", 10, TimeUnit.NANOSECONDS));
+        assertEquals("d", map.remove(1));
+        assertTrue(map.isEmpty());
+        map.put(2, "e", 1, TimeUnit.NANOSECONDS);
+        now++;
+        assertNull(map.remove(2));
+    }
+
+    @Test
+    void removeOfExpiredNotifiesListener() {
+        ExpiringSplayTreeMap<Integer, String> map = newMap();
+        List<String> expired = new ArrayList<>();
+        map.setExpirationListener((k, v) -> expired.add(k + "=" + v));
+        map.put(1, "a", 10, TimeUnit.NANOSECONDS);
+        map.put(2, "b", 10, TimeUnit.NANOSECONDS);
+        now += 10;
+        assertNull(map.remove(1));
+        assertEquals(List.of("1=a"), expired);
+        assertNull(map.put(2, "c"));
+        assertEquals(List.of("1=a", "2=b"), expired);
+        assertEquals("c", map.remove(2));
+        assertEquals(List.of("1=a", "2=b"), expired);
+    }
+
+    @Test
+    void sweepInExpiryOrder() {
+        ExpiringSplayTreeMap<Integer, Integer> map = newMap();
+        List<Integer> expired = new ArrayList<>();
+        map.setExpirationListener((k, v) -> expired.add(k));
+        for (int i = 0; i < 100; i++)
+            map.put(i, i, (i * 37) % 100 + 1, TimeUnit.NANOSECONDS);
+        for (int i = 100; i < 200; i++)
+            map.put(i, i);
+        now += 50;
+        assertEquals(0, map.sweep(0));
+        assertEquals(10, map.sweep(10));
+        assertEquals(40, map.sweep());
+        assertEquals(0, map.sweep());
+        assertEquals(50, expired.size());
+        for (int i = 0; i < 50; i++)
+            assertEquals(i + 1, (expired.get(i) * 37) % 100 + 1);
+        assertEquals(150, map.size());
+        now += 1000;
+        assertEquals(100, map.size());
+        assertEquals(100, expired.size());
+    }
+
+    @Test
+    void sweepCostFollowsExpired() {
+        ExpiringSplayTreeMap<Integer, Integer> map = newMap();
+        for (int i = 0; i < 100_000; i++)
+            map.put(i, i, i < 10 ? 1 : 1_000_000, TimeUnit.NANOSECONDS);
+        now++;
+        long start = System.nanoTime();
+        assertEquals(10, map.sweep());
+        for (int i = 0; i < 1000; i++)
+            assertEquals(0, map.sweep());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void navigationSkipsExpired() {
+        ExpiringSplayTreeMap<Integer, Integer> map = newMap();
+        for (int i = 0; i < 20; i++) {
+            if (i % 4 == 0)
+                map.put(i, i);
+            else
+                map.put(i, i, 5, TimeUnit.NANOSECONDS);
+        }
+        now += 5;
+        assertEquals(0, map.firstKey());
+        assertEquals(16, map.lastKey());
+        assertEquals(4, map.ceilingEntry(1).getKey());
+        assertEquals(8, map.higherEntry(4).getKey());
+        assertEquals(8, map.floorEntry(11).getKey());
+        assertEquals(12, map.lowerEntry(15).getKey());
+        assertNull(map.higherEntry(16));
+        assertEquals(List.of(0, 4, 8, 12, 16), new ArrayList<>(map.keySet()));
+        Iterator<Map.Entry<Integer, Integer>> it = map.entrySet().iterator();
+        while (it.hasNext())
+            if (it.next().getKey() % 8 == 0)
+                it.remove();
+        assertEquals(Map.of(4, 4, 12, 12), map);
+        map.clear();
+        assertThrows(NoSuchElementException.class, map::firstKey);
+        assertNull(map.lastEntry());
+    }
+
+    @Test
+    void navigableViews() {
+        ExpiringSplayTreeMap<Integer, Integer> map = newMap();
+        TreeMap<Integer, Integer> expMap = new TreeMap<>();
+        for (int i = 0; i < 100; i++) {
+            if (i % 3 == 0) {
+                map.put(i, i, 5, TimeUnit.NANOSECONDS);
+            } else {
+                map.put(i, i);
+                expMap.put(i, i);
+            }
+        }
+        now += 5;
+        List<NavigableMap<Integer, Integer>> views = List.of(map.headMap(50, true), map.tailMap(30, false),
+                map.subMap(10, true, 90, false), map.descendingMap(), map.descendingMap().subMap(80, false, 20, true),
+                map.subMap(20, true, 80, false).tailMap(41, true).descendingMap().headMap(60, false));
+        List<NavigableMap<Integer, Integer>> expViews = List.of(expMap.headMap(50, true), expMap.tailMap(30, false),
+                expMap.subMap(10, true, 90, false), expMap.descendingMap(), expMap.descendingMap().subMap(80, false, 20, true),
+                expMap.subMap(20, true, 80, false).tailMap(41, true).descendingMap().headMap(60, false));
+        for (int v = 0; v < views.size(); v++) {
+            NavigableMap<Integer, Integer> view = views.get(v);
+            NavigableMap<Integer, Integer> expView = expViews.get(v);
+            assertEquals(expView, view);
+            assertEquals(expView.size(), view.size());
+            assertEquals(new ArrayList<>(expView.keySet()), new ArrayList<>(view.keySet()));
+            assertEquals(new ArrayList<>(expView.descendingKeySet()), new ArrayList<>(view.descendingKeySet()));
+            assertEquals(expView.firstEntry(), view.firstEntry());
+            assertEquals(expView.lastKey(), view.lastKey());
+            for (int k = -1; k <= 100; k++) {
+                assertEquals(expView.ceilingKey(k), view.ceilingKey(k));
+                assertEquals(expView.higherKey(k), view.higherKey(k));
+                assertEquals(expView.floorKey(k), view.floorKey(k));
+                assertEquals(expView.lowerKey(k), view.lowerKey(k));
+                assertEquals(expView.containsKey(k), view.containsKey(k));
+            }
+        }
+        NavigableMap<Integer, Integer> head = map.headMap(50, false);
+        assertThrows(IllegalArgumentException.class, () -> head.put(50, 50));
+        assertThrows(IllegalArgumentException.class, () -> head.tailMap(60, true));
+        assertEquals(expMap.pollFirstEntry(), head.pollFirstEntry());
+        assertEquals(expMap.descendingMap().pollLastEntry(), map.descendingMap().pollLastEntry());
+        assertEquals(expMap.pollLastEntry(), map.pollLastEntry());
+        head.navigableKeySet().headSet(10).clear();
+        expMap.headMap(10).clear();
+        assertEquals(expMap, map);
+        map.tailMap(90).clear();
+        expMap.tailMap(90).clear();
+        assertEquals(expMap, map);
+    }
+
+    @Test
+    void randomOps() {
+        ExpiringSplayTreeMap<Integer, Integer> map = new ExpiringSplayTreeMap<>(Comparator.reverseOrder(), () -> now);
+        TreeMap<Integer, Integer> expMap = new TreeMap<>(Comparator.reverseOrder());
+        Map<Integer, Long> deadlines = new HashMap<>();
+        Set<Integer> expired = new HashSet<>();
+        map.setExpirationListener((k, v) -> expired.add(k));
+        Random random = new Random(4);
+        for (int i = 0; i < 20_000; i++) {
+            now += random.nextInt(3);
+            // drops expired entries from the model
+            deadlines.entrySet().removeIf(e -> e.getValue() - now <= 0 && expMap.remove(e.getKey()) != null);
+            int key = random.nextInt(300);
+            switch (random.nextInt(5)) {
+                case 0:
+                    assertEquals(expMap.put(key, i), map.put(key, i));
+                    deadlines.remove(key);
+                    break;
+                case 1:
+                    int ttl = random.nextInt(100) + 1;
+                    assertEquals(expMap.put(key, i), map.put(key, i, ttl, TimeUnit.NANOSECONDS));
+                    deadlines.put(key, now + ttl);
+                    break;
+                case 2:
+                    assertEquals(expMap.remove(key), map.remove(key));
+                    deadlines.remove(key);
+                    break;
+                case 3:
+                    assertEquals(expMap.get(key), map.get(key));
+                    assertEquals(expMap.ceilingEntry(key), map.ceilingEntry(key));
+                    break;
+                default:
+                    map.sweep(random.nextInt(5));
+            }
+        }
+        assertEquals(expMap, map);
+        assertEquals(new ArrayList<>(expMap.keySet()), new ArrayList<>(map.keySet()));
+        expired.clear();
+        now += 1000;
+        int live = expMap.size() - deadlines.size();
+        assertEquals(live, map.size());
+        assertTrue(expired.containsAll(deadlines.keySet()));
+    }
+}
@@ -0,0 +1,158 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexedSplayTreeMapTest {
+
+    @Test
+    void randomOps() {
+        IndexedSplayTreeMap<Integer, String> map = new IndexedSplayTreeMap<>();
+        TreeMap<Integer, String> expMap = new TreeMap<>();
+        Random random = new Random(17);
+        for (int i = 0; i < 50_000; i++) {
+            int key = random.nextInt(3000);
+            switch (random.nextInt(4)) {
+                case 0:
+                    String value = String.valueOf(i);
+                    assertEquals(expMap.put(key, value), map.put(key, value));
+                    break;
+                case 1:
+                    assertEquals(expMap.remove(key), map.remove(key));
+                    break;
+                case 2:
+                    assertEquals(expMap.containsKey(key), map.containsKey(key));
+                    break;
+                default:
+                    assertEquals(expMap.get(key), map.get(key));
+                    break;
+            }
+            assertEquals(expMap.size(), map.size());
+        }
+        assertEquals(expMap, map);
+        assertEquals(new ArrayList<>(expMap.entrySet()), new ArrayList<>(map.entrySet()));
+        assertEquals(expMap.firstKey(), map.firstKey());
+        assertEquals(expMap.lastKey(), map.lastKey());
+    }
+
+    @Test
+    void churnReusesSlots() {
+        IndexedSplayTreeMap<Integer, Integer> map = new IndexedSplayTreeMap<>(null, 1000);
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, i);
+        }
+        assertEquals(1000, map.capacity());
+        Random random = new Random(19);
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextInt(1000);
+            assertEquals(key, map.remove(key));
+            assertNull(map.put(key, key));
+        }
+        assertEquals(1000, map.capacity());
+        assertEquals(1000, map.size());
+        map.put(1000, 1000);
+        assertTrue(map.capacity() > 1000);
+    }
+
+    @Test
+    void sequentialKeys() {
+        IndexedSplayTreeMap<Integer, Integer> map = new IndexedSplayTreeMap<>(Comparator.reverseOrder());
+        int n = 1_000_000;
+        for (int i = 0; i < n; i++) {
+            map.put(i, i);
+        }
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, map.get(i));
+        }
+        assertEquals(n - 1, map.firstKey());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, map.remove(i));
+        }
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void iterator() {
+        IndexedSplayTreeMap<Integer, String> map = new IndexedSplayTreeMap<>();
+        for (int i = 99; i >= 0; i--) {
+            map.put(i, String.valueOf(i));
+        }
+        int expected = 0;
+        for (Iterator<Map.Entry<Integer, String>> it = map.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Integer, String> e = it.next();
+            assertEquals(expected++, e.getKey());
+            map.get(99 - e.getKey()); // lookups splay but don't disturb the iteration
+            if (e.getKey() % 2 == 0)
+                it.remove();
+            else
+                e.setValue("odd");
+        }
+        assertEquals(100, expected);
+        assertEquals(50, map.size());
+        assertEquals("odd", map.get(1));
+        assertFalse(map.containsKey(2));
+
+        Iterator<Integer> keys = map.keySet().iterator();
+        keys.next();
+        map.put(1000, "x");
+        assertThrows(ConcurrentModificationException.class, keys::next);
+        assertThrows(ConcurrentModificationException.class, () -> map.forEach((k, v) -> map.remove(k)));
+    }
+
+    @Test
+    void iterateChain() {
+        IndexedSplayTreeMap<Integer, Integer> map = new IndexedSplayTreeMap<>();
+        TreeMap<Integer, Integer> expMap = new TreeMap<>();
+        int n = 200_000;
+        for (int i = 0; i < n; i++) {
+            map.put(i, i);
+            expMap.put(i, i);
+        }
+        // the ascending puts leave a chain, the walk must not descend from the root for every step
+        long[] sum = {0};
+        map.forEach((k, v) -> sum[0] += v);
+        assertEquals((long) n * (n - 1) / 2, sum[0]);
+        assertEquals(expMap, map);
+        assertEquals(expMap.hashCode(), map.hashCode());
+
+        // lookups splay the tree during the iteration, removals go through the iterator
+        Random random = new Random(3);
+        Iterator<Map.Entry<Integer, Integer>> it = map.entrySet().iterator();
+        Iterator<Map.Entry<Integer, Integer>> expIt = expMap.entrySet().iterator();
+        while (expIt.hasNext()) {
+            assertEquals(expIt.next(), it.next());
+            if (random.nextInt(4) == 0) {
+                int key = random.nextInt(n);
+                assertEquals(expMap.get(key), map.get(key));
+            }
+            if (random.nextInt(3) == 0) {
+                it.remove();
+                expIt.remove();
+            }
+        }
+        assertFalse(it.hasNext());
+        assertEquals(expMap, map);
+    }
+
+    @Test
+    void clearKeepsCapacity() {
+        IndexedSplayTreeMap<String, Integer> map = new IndexedSplayTreeMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put("k" + i, i);
+        }
+        int capacity = map.capacity();
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get("k1"));
+        assertThrows(NoSuchElementException.class, map::firstKey);
+        map.put("a", 1);
+        assertEquals(Collections.singletonMap("a", 1), map);
+        assertEquals(capacity, map.capacity());
+        assertThrows(NullPointerException.class, () -> map.put(null, 1));
+        assertTrue(map.entrySet().remove(new AbstractMap.SimpleEntry<>("a", 1)));
+        assertTrue(map.isEmpty());
+    }
+}
@@ -0,0 +1,115 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapSplayTreeMapTest {
+
+    @Test
+    void randomOps() {
+        try (OffHeapSplayTreeMap<Long> map = new OffHeapSplayTreeMap<>(KeyCodec.longs(), -1)) {
+            TreeMap<Long, Long> expMap = new TreeMap<>();
+            Random random = new Random(23);
+            for (int i = 0; i < 50_000; i++) {
+                long key = random.nextInt(3000) - 1500L;
+                switch (random.nextInt(4)) {
+                    case 0:
+                        assertEquals(expMap.getOrDefault(key, -1L), map.put(key, i));
+                        expMap.put(key, (long) i);
+                        break;
+                    case 1:
+                        Long removed = expMap.remove(key);
+                        assertEquals(removed == null ? -1 : removed, map.remove(key));
+                        break;
+                    case 2:
+                        assertEquals(expMap.containsKey(key), map.containsKey(key));
+                        break;
+                    default:
+                        assertEquals(expMap.getOrDefault(key, -1L), map.get(key));
+                        break;
+                }
+                assertEquals(expMap.size(), map.size());
+            }
+            assertEquals(expMap.toString(), map.toString());
+            assertEquals(expMap.firstKey(), map.firstKey());
+            assertEquals(expMap.lastKey(), map.lastKey());
+        }
+    }
+
+    @Test
+    void uuidKeysAcrossChunks() {
+        int n = 3 << OffHeapSplayTreeMap.CHUNK_SHIFT;
+        try (OffHeapSplayTreeMap<UUID> map = new OffHeapSplayTreeMap<>(KeyCodec.uuids())) {
+            TreeMap<UUID, Long> expMap = new TreeMap<>();
+            Random random = new Random(29);
+            for (int i = 0; i < n; i++) {
+                UUID key = new UUID(random.nextLong(), random.nextLong());
+                map.put(key, i);
+                expMap.put(key, (long) i);
+            }
+            assertEquals(expMap.size(), map.size());
+            for (Map.Entry<UUID, Long> e : expMap.entrySet()) {
+                assertEquals(e.getValue(), map.get(e.getKey()));
+            }
+            List<UUID> keys = new ArrayList<>();
+            map.forEach((key, value) -> keys.add(key));
+            assertEquals(new ArrayList<>(expMap.keySet()), keys);
+            assertEquals(expMap.firstKey(), map.firstKey());
+            assertEquals(expMap.lastKey(), map.lastKey());
+            assertTrue(map.allocatedBytes() >= 32L * n);
+        }
+    }
+
+    @Test
+    void removedNodesAreReused() {
+        try (OffHeapSplayTreeMap<Long> map = new OffHeapSplayTreeMap<>(KeyCodec.longs())) {
+            for (long i = 0; i < 1000; i++) {
+                map.put(i, i);
+            }
+            long allocated = map.allocatedBytes();
+            for (int round = 0; round < 200; round++) {
+                for (long i = 0; i < 1000; i++) {
+                    assertEquals(i, map.remove(i));
+                }
+                assertTrue(map.isEmpty());
+                for (long i = 1000; i > 0; i--) {
+                    map.put(i - 1, i - 1);
+                }
+            }
+            assertEquals(allocated, map.allocatedBytes());
+            map.clear();
+            assertThrows(NoSuchElementException.class, map::lastKey);
+        }
+    }
+
+    @Test
+    void unsignedByteKeys() {
+        try (OffHeapSplayTreeMap<byte[]> map = new OffHeapSplayTreeMap<>(KeyCodec.bytes(3))) {
+            map.put(new byte[]{1, 2, 3}, 1);
+            map.put(new byte[]{(byte) 0xff, 0, 0}, 2);
+            map.put(new byte[]{1, 2, (byte) 0x80}, 3);
+            map.put(new byte[]{0, 0, 0}, 4);
+            assertArrayEquals(new byte[]{0, 0, 0}, map.firstKey());
+            assertArrayEquals(new byte[]{(byte) 0xff, 0, 0}, map.lastKey());
+            assertEquals(3, map.get(new byte[]{1, 2, (byte) 0x80}));
+            assertEquals(0, map.get(new byte[]{1, 2, 4}));
+            assertThrows(IllegalArgumentException.class, () -> map.put(new byte[2], 1));
+            assertThrows(NullPointerException.class, () -> map.put(null, 1));
+        }
+    }
+
+    @Test
+    void closedMap() {
+        OffHeapSplayTreeMap<Long> map = new OffHeapSplayTreeMap<>(KeyCodec.longs());
+        map.put(1L, 1);
+        map.close();
+        map.close();
+        assertEquals(0, map.allocatedBytes());
+        assertThrows(IllegalStateException.class, () -> map.get(1L));
+        assertThrows(IllegalStateException.class, () -> map.put(2L, 2));
+        assertThrows(IllegalStateException.class, map::firstKey);
+    }
+}
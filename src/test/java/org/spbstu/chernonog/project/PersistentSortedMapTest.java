@@ -0,0 +1,134 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentSortedMapTest {
+
+    private static int height(PersistentSortedMap.Node<?, ?> node) {
+        return node == null ? 0 : 1 + Math.max(height(node.left), height(node.right));
+    }
+
+    private static void checkHeap(PersistentSortedMap.Node<?, ?> node) {
+        if (node == null)
+            return;
+        if (node.left != null)
+            assertTrue(node.left.priority <= node.priority);
+        if (node.right != null)
+            assertTrue(node.right.priority <= node.priority);
+        checkHeap(node.left);
+        checkHeap(node.right);
+    }
+
+    @Test
+    void versionsStayIntact() {
+        PersistentSortedMap<Integer, Integer> map = PersistentSortedMap.empty();
+        TreeMap<Integer, Integer> expMap = new TreeMap<>();
+        List<PersistentSortedMap<Integer, Integer>> versions = new ArrayList<>();
+        List<TreeMap<Integer, Integer>> expVersions = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 20_000; i++) {
+            int key = random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                map = map.minus(key);
+                expMap.remove(key);
+            } else {
+                map = map.plus(key, i);
+                expMap.put(key, i);
+            }
+            assertEquals(expMap.get(key), map.get(key));
+            assertEquals(expMap.size(), map.size());
+            if (i % 1000 == 0) {
+                versions.add(map);
+                expVersions.add(new TreeMap<>(expMap));
+            }
+        }
+        assertEquals(expMap, map);
+        assertEquals(new ArrayList<>(expMap.entrySet()), new ArrayList<>(map.entrySet()));
+        for (int i = 0; i < versions.size(); i++)
+            assertEquals(expVersions.get(i), versions.get(i));
+        checkHeap(map.root);
+    }
+
+    @Test
+    void sharesStructure() {
+        PersistentSortedMap<Integer, String> map = PersistentSortedMap.empty();
+        for (int i = 0; i < 1000; i++)
+            map = map.plus(i, "v" + i);
+        PersistentSortedMap<Integer, String> next = map.plus(500, "x");
+        assertEquals("v500", map.get(500));
+        assertEquals("x", next.get(500));
+        // only the path to the key was copied
+        Set<PersistentSortedMap.Node<Integer, String>> old = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Map.Entry<Integer, String> e : map.entrySet())
+            old.add((PersistentSortedMap.Node<Integer, String>) e);
+        int copied = 0;
+        for (Map.Entry<Integer, String> e : next.entrySet())
+            if (!old.contains(e))
+                copied++;
+        assertTrue(copied <= height(map.root), copied + " > " + height(map.root));
+
+        String value = map.get(3);
+        assertSame(map, map.plus(3, value));
+        assertSame(map, map.minus(5000));
+        assertSame(map, map.headMap(5000));
+        assertSame(map, map.tailMap(-1));
+    }
+
+    @Test
+    void balancedUnderSortedInserts() {
+        PersistentSortedMap<Integer, Integer> map = PersistentSortedMap.empty();
+        for (int i = 0; i < 100_000; i++)
+            map = map.plus(i, i);
+        assertTrue(height(map.root) < 60, "height " + height(map.root));
+        for (int i = 0; i < 100_000; i += 2)
+            map = map.minus(i);
+        assertEquals(50_000, map.size());
+        assertTrue(height(map.root) < 60, "height " + height(map.root));
+        checkHeap(map.root);
+    }
+
+    @Test
+    void ranges() {
+        PersistentSortedMap<Integer, Integer> built = PersistentSortedMap.empty(Comparator.reverseOrder());
+        TreeMap<Integer, Integer> expMap = new TreeMap<>(Comparator.reverseOrder());
+        Random random = new Random(2);
+        for (int i = 0; i < 500; i++) {
+            int key = random.nextInt(2000);
+            built = built.plus(key, i);
+            expMap.put(key, i);
+        }
+        PersistentSortedMap<Integer, Integer> map = built;
+        assertEquals(expMap.firstKey(), map.firstKey());
+        assertEquals(expMap.lastKey(), map.lastKey());
+        for (int i = 0; i < 200; i++) {
+            int a = random.nextInt(2100) - 50, b = random.nextInt(2100) - 50;
+            int from = Math.max(a, b), to = Math.min(a, b);
+            assertEquals(expMap.subMap(from, to), map.subMap(from, to));
+            assertEquals(expMap.headMap(a), map.headMap(a));
+            assertEquals(expMap.tailMap(a), map.tailMap(a));
+            assertEquals(expMap.headMap(a).size(), map.headMap(a).size());
+        }
+        assertThrows(IllegalArgumentException.class, () -> map.subMap(1, 2));
+        assertSame(map.comparator(), map.headMap(7).comparator());
+    }
+
+    @Test
+    void immutable() {
+        PersistentSortedMap<String, Integer> map = PersistentSortedMap.copyOf(new TreeMap<>(Map.of("a", 1, "b", 2)));
+        assertEquals(Map.of("a", 1, "b", 2), map);
+        assertThrows(UnsupportedOperationException.class, () -> map.put("c", 3));
+        assertThrows(UnsupportedOperationException.class, () -> map.remove("a"));
+        assertThrows(UnsupportedOperationException.class, () -> map.entrySet().iterator().next().setValue(0));
+        assertThrows(UnsupportedOperationException.class, () -> map.entrySet().iterator().remove());
+        assertThrows(NoSuchElementException.class, () -> PersistentSortedMap.<String, Integer>empty().firstKey());
+        assertThrows(NullPointerException.class, () -> PersistentSortedMap.<String, Integer>empty().plus(null, 1));
+        assertSame(map, PersistentSortedMap.copyOf(map));
+        assertEquals(Map.of("a", 1, "b", 2, "c", 3), map.plusAll(Map.of("c", 3)));
+        assertTrue(map.entrySet().contains(new AbstractMap.SimpleEntry<>("a", 1)));
+        assertFalse(map.entrySet().contains(new AbstractMap.SimpleEntry<>("a", 2)));
+    }
+}
@@ -0,0 +1,117 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrimitiveSplayTreeMapTest {
+
+    @Test
+    void longLongRandomOps() {
+        LongLongSplayTreeMap map = new LongLongSplayTreeMap(-1);
+        TreeMap<Long, Long> expMap = new TreeMap<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 50_000; i++) {
+            long key = random.nextInt(3000) - 1500L;
+            switch (random.nextInt(4)) {
+                case 0:
+                    assertEquals(expMap.getOrDefault(key, -1L), map.put(key, i));
+                    expMap.put(key, (long) i);
+                    break;
+                case 1:
+                    Long removed = expMap.remove(key);
+                    assertEquals(removed == null ? -1 : removed, map.remove(key));
+                    break;
+                case 2:
+                    assertEquals(expMap.containsKey(key), map.containsKey(key));
+                    break;
+                default:
+                    assertEquals(expMap.getOrDefault(key, -1L), map.get(key));
+                    break;
+            }
+            assertEquals(expMap.size(), map.size());
+        }
+        assertArrayEquals(expMap.keySet().stream().mapToLong(Long::longValue).toArray(), map.keys());
+        assertEquals(expMap.firstKey(), map.firstKey());
+        assertEquals(expMap.lastKey(), map.lastKey());
+        assertEquals(expMap.toString(), map.toString());
+    }
+
+    @Test
+    void longLongExtremeKeys() {
+        LongLongSplayTreeMap map = new LongLongSplayTreeMap();
+        assertEquals(0, map.noEntryValue());
+        assertThrows(NoSuchElementException.class, map::firstKey);
+        map.put(Long.MAX_VALUE, 1);
+        map.put(Long.MIN_VALUE, 2);
+        map.put(0, 3);
+        assertEquals(Long.MIN_VALUE, map.firstKey());
+        assertEquals(Long.MAX_VALUE, map.lastKey());
+        assertEquals(2, map.get(Long.MIN_VALUE));
+        assertEquals(7, map.getOrDefault(5, 7));
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertEquals("{}", map.toString());
+    }
+
+    @Test
+    void longLongSequentialKeys() {
+        LongLongSplayTreeMap map = new LongLongSplayTreeMap();
+        int n = 1_000_000;
+        for (long i = 0; i < n; i++) {
+            map.put(i, 2 * i);
+        }
+        for (long i = 0; i < n; i++) {
+            assertEquals(2 * i, map.get(i));
+        }
+        for (long i = n - 1; i >= 0; i--) {
+            assertEquals(2 * i, map.remove(i));
+        }
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void intObjRandomOps() {
+        IntObjSplayTreeMap<String> map = new IntObjSplayTreeMap<>();
+        TreeMap<Integer, String> expMap = new TreeMap<>();
+        Random random = new Random(13);
+        for (int i = 0; i < 50_000; i++) {
+            int key = random.nextInt(3000) - 1500;
+            switch (random.nextInt(4)) {
+                case 0:
+                    String value = i % 100 == 0 ? null : String.valueOf(i);
+                    assertEquals(expMap.put(key, value), map.put(key, value));
+                    break;
+                case 1:
+                    assertEquals(expMap.remove(key), map.remove(key));
+                    break;
+                case 2:
+                    assertEquals(expMap.containsKey(key), map.containsKey(key));
+                    break;
+                default:
+                    assertEquals(expMap.get(key), map.get(key));
+                    break;
+            }
+            assertEquals(expMap.size(), map.size());
+        }
+        assertArrayEquals(expMap.keySet().stream().mapToInt(Integer::intValue).toArray(), map.keys());
+        assertEquals(expMap.firstKey(), map.firstKey());
+        assertEquals(expMap.lastKey(), map.lastKey());
+        assertEquals(expMap.toString(), map.toString());
+    }
+
+    @Test
+    void intObjForEach() {
+        IntObjSplayTreeMap<String> map = new IntObjSplayTreeMap<>();
+        for (int i = 9; i >= 0; i--) {
+            map.put(i, String.valueOf(i));
+        }
+        List<String> values = new ArrayList<>();
+        map.forEach((key, value) -> values.add(value));
+        assertEquals(Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"), values);
+        assertThrows(ConcurrentModificationException.class, () -> map.forEach((key, value) -> map.remove(key)));
+        assertThrows(NullPointerException.class, () -> map.forEach(null));
+    }
+}
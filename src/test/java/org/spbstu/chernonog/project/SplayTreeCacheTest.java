@@ -0,0 +1,175 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SplayTreeCacheTest {
+
+    @Test
+    void sizeBoundAndEvictedEntries() {
+        SplayTreeCache<Integer, Integer> cache = new SplayTreeCache<>(null, 100);
+        Map<Integer, Integer> evicted = new HashMap<>();
+        cache.setEvictionListener((k, v) -> assertNull(evicted.put(k, v)));
+        Random random = new Random(1);
+        Map<Integer, Integer> inserted = new HashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt(1_000_000);
+            if (inserted.containsKey(key))
+                continue;
+            inserted.put(key, i);
+            cache.put(key, i);
+            assertTrue(cache.size() <= 100);
+        }
+        assertEquals(100, cache.size());
+        assertEquals(100, cache.weight());
+        assertEquals(inserted.size() - 100, evicted.size());
+        assertEquals(evicted.size(), cache.stats().evictionCount());
+        for (Map.Entry<Integer, Integer> e : inserted.entrySet()) {
+            Integer value = cache.asMap().get(e.getKey());
+            if (value == null)
+                assertEquals(e.getValue(), evicted.get(e.getKey()));
+            else
+                assertEquals(e.getValue(), value);
+        }
+        checkSizes(cache);
+    }
+
+    @Test
+    void hotKeysSurvive() {
+        SplayTreeCache<Integer, Integer> cache = new SplayTreeCache<>(null, 200);
+        Random random = new Random(2);
+        for (int i = 0; i < 20_000; i++) {
+            cache.put(i, i);
+            cache.computeIfAbsent(-1 - random.nextInt(10), k -> k);
+        }
+        // evicting uniformly at random would miss a hot key about once in 20 lookups
+        assertTrue(cache.stats().missCount() < 200, cache.stats().toString());
+        // the most recent keys are near the root and are kept
+        assertTrue(cache.containsKey(19_999));
+        checkSizes(cache);
+    }
+
+    @Test
+    void stats() {
+        SplayTreeCache<String, String> cache = new SplayTreeCache<>(null, 2);
+        assertEquals(1.0, cache.stats().hitRate());
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("c"));
+        assertEquals("3", cache.computeIfAbsent("c", k -> "3"));
+        assertEquals("3", cache.computeIfAbsent("c", k -> fail()));
+        assertNull(cache.computeIfAbsent("d", k -> null));
+        SplayTreeCache.Stats stats = cache.stats();
+        assertEquals(2, stats.hitCount());
+        assertEquals(3, stats.missCount());
+        assertEquals(0.4, stats.hitRate(), 1e-9);
+        assertEquals(1, stats.evictionCount());
+        assertEquals(1, stats.evictionWeight());
+        assertEquals(2, cache.size());
+        assertEquals("3", cache.remove("c"));
+        assertEquals(1, cache.weight());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+        assertEquals(2, cache.stats().hitCount());
+        assertThrows(NullPointerException.class, () -> cache.put("a", null));
+    }
+
+    @Test
+    void weightBound() {
+        SplayTreeCache<Integer, String> cache = new SplayTreeCache<>(null, 1000, (k, v) -> v.length());
+        List<String> evicted = new ArrayList<>();
+        cache.setEvictionListener((k, v) -> evicted.add(v));
+        Random random = new Random(3);
+        long total = 0;
+        for (int i = 0; i < 3000; i++) {
+            String value = "x".repeat(random.nextInt(50));
+            String old = cache.put(random.nextInt(500), value);
+            total += value.length() - (old == null ? 0 : old.length());
+            assertTrue(cache.weight() <= 1000);
+            long weight = 0;
+            for (String v : cache.asMap().values())
+                weight += v.length();
+            assertEquals(weight, cache.weight());
+        }
+        long evictedWeight = evicted.stream().mapToLong(String::length).sum();
+        assertEquals(evictedWeight, cache.stats().evictionWeight());
+        assertEquals(total - evictedWeight, cache.weight());
+        // heavier than the whole cache
+        int size = cache.size();
+        long weight = cache.weight();
+        cache.put(-1, "x".repeat(1001));
+        assertEquals(size, cache.size());
+        assertEquals(weight, cache.weight());
+        assertEquals(1001, evicted.get(evicted.size() - 1).length());
+        checkSizes(cache);
+    }
+
+    @Test
+    void heavyEntryEvictsOnlyItself() {
+        SplayTreeCache<Integer, Integer> cache = new SplayTreeCache<>(null, 100, (k, v) -> v);
+        List<Integer> evicted = new ArrayList<>();
+        cache.setEvictionListener((k, v) -> evicted.add(k));
+        for (int i = 0; i < 50; i++)
+            cache.put(i, 1);
+        assertNull(cache.put(50, 500));
+        assertEquals(50, cache.size());
+        assertEquals(50, cache.weight());
+        assertEquals(1, cache.stats().evictionCount());
+        assertEquals(500, cache.stats().evictionWeight());
+        assertEquals(List.of(50), evicted);
+        // replacing a cached value with a heavy one drops the mapping
+        assertEquals(1, cache.put(7, 500));
+        assertFalse(cache.containsKey(7));
+        assertEquals(49, cache.size());
+        assertEquals(49, cache.weight());
+        assertEquals(List.of(50, 7), evicted);
+        checkSizes(cache);
+    }
+
+    @Test
+    void rangeView() {
+        SplayTreeCache<Integer, Integer> cache = new SplayTreeCache<>(Comparator.reverseOrder(), 10);
+        TreeMap<Integer, Integer> expMap = new TreeMap<>(Comparator.reverseOrder());
+        for (int i = 0; i < 10; i++) {
+            cache.put(i * 3, i);
+            expMap.put(i * 3, i);
+        }
+        assertEquals(expMap, cache.asMap());
+        assertEquals(expMap.subMap(20, true, 5, false), cache.asMap().subMap(20, true, 5, false));
+        assertEquals(expMap.ceilingEntry(10), cache.asMap().ceilingEntry(10));
+        assertEquals(expMap.firstKey(), cache.asMap().firstKey());
+        assertThrows(UnsupportedOperationException.class, () -> cache.asMap().put(1, 1));
+        assertThrows(UnsupportedOperationException.class, () -> cache.asMap().headMap(10).clear());
+        assertEquals(0, cache.stats().hitCount() + cache.stats().missCount());
+    }
+
+    @Test
+    void removeDeepLeafEmptiesTree() {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>();
+        TreeMap<Integer, Integer> expMap = new TreeMap<>();
+        for (int i = 0; i < 300; i++) {
+            map.put(i * 7 % 300, i);
+            expMap.put(i * 7 % 300, i);
+        }
+        map.freeze();
+        SplayTreeMap.Entry<Integer, Integer> root = map.root;
+        while (!map.isEmpty()) {
+            SplayTreeMap.Entry<Integer, Integer> e = map.removeDeepLeaf();
+            assertEquals(expMap.remove(e.key), e.value);
+            assertEquals(expMap, map);
+            assertEquals(expMap.size(), SplayTreeMap.sizeOf(map.root));
+        }
+        assertNotSame(root, map.root);
+        assertNull(map.removeDeepLeaf());
+    }
+
+    private static void checkSizes(SplayTreeCache<?, ?> cache) {
+        assertEquals(cache.size(), cache.asMap().size());
+        assertEquals(cache.size(), cache.asMap().entrySet().stream().count());
+    }
+}
@@ -0,0 +1,304 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SplayTreeMapBulkTest {
+
+    TreeMap<Integer, String> expMap;
+
+    @BeforeEach
+    void setUp() {
+        expMap = new TreeMap<>();
+        for (int i = 0; i < 1000; i++) {
+            expMap.put(3 * i, Integer.toString(3 * i));
+        }
+    }
+
+    @Test
+    void fromSortedMap() {
+        SplayTreeMap<Integer, String> map = new SplayTreeMap<>(expMap);
+        assertEquals(expMap, map);
+        assertEquals(expMap.size(), map.size());
+        assertEquals(new ArrayList<>(expMap.keySet()), new ArrayList<>(map.keySet()));
+        assertEquals(500, map.rank(1500));
+        assertEquals(expMap.firstEntry(), map.select(0));
+        assertEquals(expMap.lastEntry(), map.select(999));
+    }
+
+    @Test
+    void fromSortedMapKeepsComparator() {
+        TreeMap<Integer, String> reversed = new TreeMap<>(Comparator.reverseOrder());
+        reversed.putAll(expMap);
+        SplayTreeMap<Integer, String> map = new SplayTreeMap<>(reversed);
+        assertEquals(reversed.comparator(), map.comparator());
+        assertEquals(new ArrayList<>(reversed.keySet()), new ArrayList<>(map.keySet()));
+        assertNull(map.put(1, "1"));
+        assertEquals(reversed.ceilingKey(1), map.higherKey(1));
+    }
+
+    @Test
+    void fromMapAndPutAll() {
+        Map<Integer, String> sorted = expMap;
+        SplayTreeMap<Integer, String> map = new SplayTreeMap<>(sorted);
+        assertEquals(expMap, map);
+
+        map = new SplayTreeMap<>(new HashMap<>(expMap));
+        assertEquals(expMap, map);
+
+        // a differently ordered source must not be trusted
+        TreeMap<Integer, String> reversed = new TreeMap<>(Comparator.reverseOrder());
+        reversed.putAll(expMap);
+        map = new SplayTreeMap<>();
+        map.putAll(reversed);
+        assertEquals(new ArrayList<>(expMap.keySet()), new ArrayList<>(map.keySet()));
+    }
+
+    @Test
+    void fromSortedIterator() {
+        SplayTreeMap<Integer, String> map = SplayTreeMap.fromSorted(null,
+                expMap.entrySet().stream().iterator(), true);
+        assertEquals(expMap, map);
+
+        Map<Integer, Integer> squares = IntStream.range(0, 100).boxed()
+                .collect(Collectors.toMap(i -> i, i -> i * i));
+        SplayTreeMap<Integer, Integer> squareMap = SplayTreeMap.fromSorted(Comparator.naturalOrder(),
+                new TreeMap<>(squares).entrySet().iterator(), false);
+        assertEquals(squares, squareMap);
+        assertEquals(81, squareMap.get(9));
+    }
+
+    @Test
+    void fromSortedOfUnknownSizeIsBalanced() {
+        for (int n = 0; n <= 300; n++) {
+            SplayTreeMap<Integer, String> map = SplayTreeMap.fromSorted(null,
+                    expMap.headMap(3 * n).entrySet().stream().iterator(), true);
+            int completeHeight = 32 - Integer.numberOfLeadingZeros(n);
+            assertTrue(height(map.root) <= completeHeight + 1, "size " + n);
+            assertEquals(n, map.size());
+            assertEquals(expMap.headMap(3 * n), map);
+            for (int i = 0; i < n; i++)
+                assertEquals(i, map.rank(3 * i));
+        }
+    }
+
+    @Test
+    void fromSortedOfKnownSize() {
+        SplayTreeMap<Integer, String> map = SplayTreeMap.fromSorted(null,
+                expMap.entrySet().iterator(), expMap.size(), true);
+        assertEquals(10, height(map.root));
+        assertEquals(expMap, map);
+
+        // the rest of the iterator is left unread
+        Iterator<Map.Entry<Integer, String>> it = expMap.entrySet().iterator();
+        assertEquals(expMap.headMap(30), SplayTreeMap.fromSorted(null, it, 10, false));
+        assertEquals(30, it.next().getKey());
+
+        assertThrows(NoSuchElementException.class, () -> SplayTreeMap.fromSorted(null,
+                expMap.entrySet().iterator(), expMap.size() + 1, false));
+        assertThrows(IllegalArgumentException.class, () -> SplayTreeMap.fromSorted(null,
+                expMap.entrySet().iterator(), -1, false));
+    }
+
+    private static int height(SplayTreeMap.Entry<?, ?> e) {
+        return e == null ? 0 : 1 + Math.max(height(e.left), height(e.right));
+    }
+
+    @Test
+    void fromSortedChecksOrder() {
+        List<Map.Entry<Integer, String>> unsorted = new ArrayList<>(expMap.entrySet());
+        Collections.swap(unsorted, 10, 11);
+        assertThrows(IllegalArgumentException.class, () -> SplayTreeMap.fromSorted(null, unsorted.iterator(), true));
+
+        List<Map.Entry<Integer, String>> duplicates = new ArrayList<>(expMap.entrySet());
+        duplicates.add(5, duplicates.get(5));
+        assertThrows(IllegalArgumentException.class, () -> SplayTreeMap.fromSorted(null, duplicates.iterator(), true));
+
+        assertTrue(SplayTreeMap.fromSorted(null, Collections.<Map.Entry<Integer, String>>emptyIterator(), true).isEmpty());
+    }
+
+    @Test
+    void putAllSorted() {
+        for (int batch : new int[]{3, 50, 400, 5000}) {
+            SplayTreeMap<Integer, String> map = new SplayTreeMap<>(expMap);
+            TreeMap<Integer, String> exp = new TreeMap<>(expMap);
+            TreeMap<Integer, String> entries = new TreeMap<>();
+            Random random = new Random(batch);
+            for (int i = 0; i < batch; i++) {
+                int key = random.nextInt(4000);
+                entries.put(key, "new" + key);
+            }
+            map.putAllSorted(entries.entrySet());
+            exp.putAll(entries);
+            assertEquals(exp, map);
+            assertEquals(exp.size(), map.size());
+            int index = 0;
+            for (Integer key : exp.keySet()) {
+                assertEquals(index++, map.rank(key));
+            }
+        }
+    }
+
+    @Test
+    void putAllSortedUnsortedAndDuplicates() {
+        SplayTreeMap<Integer, String> map = new SplayTreeMap<>();
+        List<Map.Entry<Integer, String>> entries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            entries.add(new AbstractMap.SimpleEntry<>(i / 2, "v" + i));
+        }
+        map.putAllSorted(entries);
+        assertEquals(50, map.size());
+        assertEquals("v99", map.get(49));
+        Collections.reverse(entries);
+        map.putAllSorted(entries);
+        assertEquals(50, map.size());
+        assertEquals("v98", map.get(49));
+        assertThrows(NullPointerException.class,
+                () -> map.putAllSorted(Collections.nCopies(20, new AbstractMap.SimpleEntry<>(null, "x"))));
+    }
+
+    @Test
+    void putAllUnsortedMap() {
+        SplayTreeMap<Integer, String> map = new SplayTreeMap<>(expMap);
+        Map<Integer, String> batch = new HashMap<>();
+        for (int i = 0; i < 2000; i += 7) {
+            batch.put(i, "x" + i);
+        }
+        map.putAll(batch);
+        expMap.putAll(batch);
+        assertEquals(expMap, map);
+        assertEquals(new ArrayList<>(expMap.keySet()), new ArrayList<>(map.keySet()));
+    }
+
+    @Test
+    void removeAll() {
+        for (int batch : new int[]{5, 40, 700}) {
+            SplayTreeMap<Integer, String> map = new SplayTreeMap<>(expMap);
+            TreeMap<Integer, String> exp = new TreeMap<>(expMap);
+            List<Integer> keys = new ArrayList<>();
+            Random random = new Random(batch);
+            for (int i = 0; i < batch; i++) {
+                keys.add(random.nextInt(3500));
+            }
+            assertEquals(exp.keySet().removeAll(keys), map.removeAll(keys));
+            assertEquals(exp, map);
+            assertEquals(exp.size(), map.size());
+            assertEquals(exp.firstKey(), map.select(0).getKey());
+            assertEquals(exp.lastKey(), map.select(exp.size() - 1).getKey());
+        }
+        SplayTreeMap<Integer, String> map = new SplayTreeMap<>(expMap);
+        assertFalse(map.removeAll(Arrays.asList(1, 2, 4, 5, 7, 8, 10, 11, 13, 14)));
+        assertTrue(map.removeAll(expMap.keySet()));
+        assertTrue(map.isEmpty());
+        assertFalse(map.removeAll(Collections.singleton(3)));
+    }
+
+    @Test
+    void bulkOpsInvalidateIterators() {
+        SplayTreeMap<Integer, String> map = new SplayTreeMap<>(expMap);
+        Iterator<Integer> it = map.keySet().iterator();
+        it.next();
+        map.putAllSorted(new TreeMap<>(Collections.singletonMap(1, "1")).entrySet());
+        assertThrows(ConcurrentModificationException.class, it::next);
+
+        Iterator<Integer> values = map.keySet().iterator();
+        assertEquals(0, values.next());
+        // only values change, the iteration goes on over the rebuilt tree
+        map.putAllSorted(new TreeMap<>(expMap).entrySet());
+        assertEquals(1, values.next());
+        assertEquals(3, values.next());
+    }
+
+    @Test
+    void getAll() {
+        SplayTreeMap<Integer, String> map = new SplayTreeMap<>(expMap);
+        SplayTreeMetrics metrics = map.enableMetrics();
+        Random random = new Random(6);
+        for (int batch : new int[]{0, 1, 10, 500, 5000}) {
+            List<Integer> keys = new ArrayList<>();
+            for (int i = 0; i < batch; i++) {
+                keys.add(random.nextInt(3100) - 50);
+            }
+            Map<Integer, String> exp = new LinkedHashMap<>();
+            for (int key : new TreeSet<>(keys)) {
+                if (expMap.containsKey(key))
+                    exp.put(key, expMap.get(key));
+            }
+            long splays = metrics.snapshot().splays();
+            SplayTreeMap<Integer, String> found = map.getAll(keys);
+            assertEquals(exp, found);
+            assertEquals(new ArrayList<>(exp.keySet()), new ArrayList<>(found.keySet()));
+            if (batch < 8) // sparse, looked up one by one
+                continue;
+            assertEquals(exp.isEmpty() ? 0 : 1, metrics.snapshot().splays() - splays);
+            if (!exp.isEmpty())
+                assertEquals(Collections.max(exp.keySet()), map.root.key);
+        }
+        assertEquals(expMap, map);
+        assertTrue(new SplayTreeMap<Integer, String>().getAll(Arrays.asList(1, 2)).isEmpty());
+
+        // ascending puts leave a chain, the keys found deep in it are splayed
+        SplayTreeMap<Integer, String> chain = new SplayTreeMap<>();
+        for (int i = 0; i < 2000; i++) {
+            chain.put(i, "");
+        }
+        SplayTreeMetrics chainMetrics = chain.enableMetrics();
+        assertEquals(1000, chain.getAll(IntStream.range(500, 1500).boxed().collect(Collectors.toList())).size());
+        assertTrue(chainMetrics.snapshot().splays() > 1);
+        assertTrue(chain.containsAll(IntStream.range(0, 2000).boxed().collect(Collectors.toList())));
+        assertThrows(NullPointerException.class, () -> map.getAll(Collections.singleton(null)));
+    }
+
+    @Test
+    void getAllUsesComparator() {
+        SplayTreeMap<byte[], Integer> bytes = new SplayTreeMap<>(Arrays::compareUnsigned);
+        for (int i = 0; i < 300; i++) {
+            bytes.put(new byte[]{(byte) i, (byte) (i >>> 8)}, i);
+        }
+        for (int batch : new int[]{1, 100}) { // sparse and swept
+            List<byte[]> keys = new ArrayList<>();
+            for (int i = batch - 1; i >= 0; i--) {
+                keys.add(new byte[]{(byte) (3 * i), (byte) (3 * i >>> 8)});
+            }
+            SplayTreeMap<byte[], Integer> found = bytes.getAll(keys);
+            assertEquals(batch, found.size());
+            for (byte[] key : keys) {
+                int i = (key[0] & 0xff) | key[1] << 8;
+                assertEquals(i, found.get(new byte[]{(byte) i, (byte) (i >>> 8)}));
+            }
+            assertEquals(0, found.firstKey()[0]);
+        }
+
+        SplayTreeMap<String, Integer> names = new SplayTreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        names.put("b", 2);
+        names.put("A", 1);
+        SplayTreeMap<String, Integer> found = names.getAll(Arrays.asList("B", "a", "b", "c"));
+        assertEquals(Arrays.asList("A", "b"), new ArrayList<>(found.keySet()));
+        assertEquals(1, found.get("a"));
+        assertEquals(2, found.get("B"));
+    }
+
+    @Test
+    void containsAll() {
+        SplayTreeMap<Integer, String> map = new SplayTreeMap<>(Comparator.reverseOrder());
+        map.putAll(expMap);
+        assertTrue(map.containsAll(Collections.emptyList()));
+        assertTrue(map.containsAll(Arrays.asList(2997, 0, 3, 300, 3, 9, 6, 12, 2400)));
+        assertEquals(0, map.root.key);
+        assertFalse(map.containsAll(Arrays.asList(0, 3, 6, 9, 12, 15, 18, 4)));
+        assertTrue(map.containsAll(Arrays.asList(3, 0)));
+        assertFalse(map.containsAll(Arrays.asList(3, 1)));
+        assertTrue(map.keySet().containsAll(expMap.keySet()));
+        assertFalse(map.keySet().containsAll(Arrays.asList(3, 1)));
+        assertTrue(map.headMap(300).keySet().containsAll(Arrays.asList(303, 2997)));
+        assertFalse(map.headMap(300).keySet().containsAll(Arrays.asList(300, 2997)));
+        assertFalse(new SplayTreeMap<Integer, String>().containsAll(Collections.singleton(1)));
+        assertEquals(expMap, map);
+    }
+}
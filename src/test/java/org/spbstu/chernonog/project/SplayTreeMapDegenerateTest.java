@@ -0,0 +1,91 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SplayTreeMapDegenerateTest {
+
+    private static final int N = 1_000_000;
+
+    @Test
+    void ascendingPutThenGet() {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>();
+        for (int i = 0; i < N; i++) {
+            assertNull(map.put(i, i));
+        }
+        assertEquals(N, map.size());
+        // the tree is a chain now, the first lookup walks all of it
+        assertEquals(0, map.get(0));
+        for (int i = 0; i < N; i++) {
+            assertEquals(i, map.get(i));
+        }
+        assertEquals(0, map.firstKey());
+        assertEquals(N - 1, map.lastKey());
+    }
+
+    @Test
+    void descendingPutThenRemove() {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>();
+        for (int i = N - 1; i >= 0; i--) {
+            map.put(i, i);
+        }
+        assertEquals(N - 1, map.remove(N - 1));
+        for (int i = 0; i < N - 1; i++) {
+            assertEquals(i, map.remove(i));
+        }
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void alternatingPut() {
+        // 0, N, 1, N - 1, ... grows a zig-zag path
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>();
+        for (int lo = 0, hi = N; lo <= hi; lo++, hi--) {
+            map.put(lo, lo);
+            map.put(hi, hi);
+        }
+        assertEquals(N / 2, map.get(N / 2));
+        assertEquals(N + 1, map.size());
+        int expected = 0;
+        for (Integer key : map.keySet()) {
+            assertEquals(expected++, key);
+        }
+    }
+
+    @Test
+    void ascendingIteratorRemove() {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>();
+        for (int i = 0; i < N; i++) {
+            map.put(i, i);
+        }
+        map.entrySet().removeIf(e -> e.getKey() % 2 == 1);
+        assertEquals(N / 2, map.size());
+        assertFalse(map.containsKey(N - 1));
+        assertTrue(map.containsKey(N - 2));
+    }
+
+    @Test
+    void randomOpsMatchTreeMap() {
+        Random random = new Random(42);
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>();
+        TreeMap<Integer, Integer> expMap = new TreeMap<>();
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextInt(1000);
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(expMap.put(key, i), map.put(key, i));
+                    break;
+                case 1:
+                    assertEquals(expMap.remove(key), map.remove(key));
+                    break;
+                default:
+                    assertEquals(expMap.get(key), map.get(key));
+            }
+        }
+        assertEquals(expMap, map);
+        assertEquals(new ArrayList<>(expMap.keySet()), new ArrayList<>(map.keySet()));
+    }
+}
@@ -47,6 +47,25 @@ public class SplayTreeMapEntrySetTest {
         );
     }
 
+    @Test
+    void iteratorWithLookups() {
+        // every lookup splays and reshapes the tree under the iterator
+        List<Integer> visited = new ArrayList<>();
+        Iterator<Map.Entry<Integer, String>> it = entrySet.iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, String> e = it.next();
+            visited.add(e.getKey());
+            map.get(8 - e.getKey());
+            if (e.getKey() % 3 == 0)
+                it.remove();
+            map.containsKey(e.getKey() + 1);
+        }
+        Collections.sort(keys);
+        assertEquals(keys, visited);
+        keys.removeIf(key -> key % 3 == 0);
+        assertEquals(keys, new ArrayList<>(map.keySet()));
+    }
+
     @Test
     void subContains() {
         assertTrue(map.subMap(2, 12).entrySet().contains(map.getLastEntry()));
@@ -0,0 +1,110 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SplayTreeMapFingerTest {
+
+    SplayTreeMap<Integer, String> map;
+    TreeMap<Integer, String> expMap;
+
+    @BeforeEach
+    void setUp() {
+        map = new SplayTreeMap<>();
+        expMap = new TreeMap<>();
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            keys.add(2 * i);
+        }
+        Collections.shuffle(keys, new Random(37));
+        keys.forEach(key -> {
+            map.put(key, key.toString());
+            expMap.put(key, key.toString());
+        });
+    }
+
+    @Test
+    void slidingWindow() {
+        SplayTreeMap.Finger<Integer, String> finger = map.fingerAt(-10);
+        assertEquals(expMap.firstEntry(), finger.entry());
+        Random random = new Random(41);
+        int key = 0;
+        for (int i = 0; i < 20_000; i++) {
+            key += random.nextInt(9) - 3;
+            assertEquals(expMap.ceilingEntry(key), finger.seek(key));
+        }
+        assertNull(finger.seek(10_000));
+        assertNull(finger.next());
+        assertEquals(expMap.ceilingEntry(9998), finger.seek(9998));
+    }
+
+    @Test
+    void randomSeeks() {
+        SplayTreeMap.Finger<Integer, String> finger = map.fingerAt(0);
+        Random random = new Random(43);
+        for (int i = 0; i < 20_000; i++) {
+            int key = random.nextInt(10_100) - 50;
+            assertEquals(expMap.ceilingEntry(key), finger.seek(key));
+        }
+    }
+
+    @Test
+    void scanWithNext() {
+        SplayTreeMap.Finger<Integer, String> finger = map.fingerAt(100);
+        List<Map.Entry<Integer, String>> seen = new ArrayList<>();
+        for (Map.Entry<Integer, String> e = finger.entry(); e != null && e.getKey() < 200; e = finger.next()) {
+            seen.add(e);
+        }
+        assertEquals(new ArrayList<>(expMap.subMap(100, 200).entrySet()), seen);
+    }
+
+    @Test
+    void fingersDoNotSplay() {
+        Integer root = map.root.key;
+        SplayTreeMap.Finger<Integer, String> finger = map.fingerAt(17);
+        for (int key = 17; key < 3000; key += 5) {
+            finger.seek(key);
+        }
+        assertEquals(root, map.root.key);
+    }
+
+    @Test
+    void surviveChanges() {
+        SplayTreeMap.Finger<Integer, String> finger = map.fingerAt(500);
+        Random random = new Random(47);
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt(10_000);
+            switch (random.nextInt(4)) {
+                case 0:
+                    assertEquals(expMap.put(key, "x"), map.put(key, "x"));
+                    break;
+                case 1:
+                    assertEquals(expMap.remove(key), map.remove(key));
+                    break;
+                case 2:
+                    map.get(key);
+                    break;
+                default:
+                    Map.Entry<Integer, String> ceiling = expMap.ceilingEntry(key);
+                    assertEquals(ceiling, finger.seek(key));
+                    assertEquals(ceiling == null ? null : expMap.higherEntry(ceiling.getKey()), finger.next());
+                    break;
+            }
+        }
+    }
+
+    @Test
+    void emptyMap() {
+        SplayTreeMap<Integer, String> empty = new SplayTreeMap<>();
+        SplayTreeMap.Finger<Integer, String> finger = empty.fingerAt(1);
+        assertNull(finger.entry());
+        assertNull(finger.next());
+        empty.put(5, "5");
+        assertEquals(new AbstractMap.SimpleImmutableEntry<>(5, "5"), finger.seek(1));
+        assertThrows(UnsupportedOperationException.class, () -> finger.entry().setValue("x"));
+    }
+}
@@ -0,0 +1,287 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SplayTreeMapFreezeTest {
+
+    @Test
+    void peekDoesNotSplay() {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>();
+        TreeMap<Integer, Integer> expMap = new TreeMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            int key = random.nextInt(5000) * 2;
+            map.put(key, i);
+            expMap.put(key, i);
+        }
+        SplayTreeMap.Entry<Integer, Integer> root = map.root;
+        SplayTreeMetrics metrics = map.enableMetrics();
+        for (int i = 0; i < 1000; i++) {
+            int key = random.nextInt(10_100) - 50;
+            assertEquals(expMap.get(key), map.peekGet(key));
+            assertEquals(expMap.containsKey(key), map.peekContainsKey(key));
+            assertEquals(expMap.ceilingEntry(key), map.peekCeilingEntry(key));
+            assertEquals(expMap.higherEntry(key), map.peekHigherEntry(key));
+            assertEquals(expMap.floorEntry(key), map.peekFloorEntry(key));
+            assertEquals(expMap.lowerEntry(key), map.peekLowerEntry(key));
+        }
+        assertEquals(expMap.firstEntry(), map.peekFirstEntry());
+        assertEquals(expMap.lastEntry(), map.peekLastEntry());
+        assertThrows(UnsupportedOperationException.class, () -> map.peekFirstEntry().setValue(0));
+        assertSame(root, map.root);
+        assertEquals(0, metrics.snapshot().splays());
+        assertNull(new SplayTreeMap<Integer, Integer>().peekFirstEntry());
+    }
+
+    @Test
+    void snapshotSurvivesChanges() {
+        for (SplayPolicy policy : Arrays.asList(SplayPolicy.always(), SplayPolicy.semiSplay())) {
+            SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>(null, policy);
+            TreeMap<Integer, Integer> expMap = new TreeMap<>();
+            Random random = new Random(2);
+            for (int i = 0; i < 2000; i++) {
+                int key = random.nextInt(4000);
+                map.put(key, i);
+                expMap.put(key, i);
+            }
+            FrozenSplayTreeMap<Integer, Integer> frozen = map.freeze();
+            TreeMap<Integer, Integer> expFrozen = new TreeMap<>(expMap);
+            for (int i = 0; i < 5000; i++) {
+                int key = random.nextInt(4000);
+                switch (random.nextInt(5)) {
+                    case 0:
+                        assertEquals(expMap.put(key, -i), map.put(key, -i));
+                        break;
+                    case 1:
+                        assertEquals(expMap.remove(key), map.remove(key));
+                        break;
+                    case 2:
+                        assertEquals(expMap.get(key), map.get(key));
+                        break;
+                    case 3:
+                        assertEquals(expMap.pollFirstEntry(), map.pollFirstEntry());
+                        break;
+                    default:
+                        if (i % 500 == 0)
+                            frozen = checkAndRefreeze(frozen, expFrozen, map, expMap);
+                        break;
+                }
+            }
+            map.replaceAll((k, v) -> v + 1);
+            expMap.replaceAll((k, v) -> v + 1);
+            assertEquals(expMap, map);
+            assertEquals(expFrozen, frozen);
+        }
+    }
+
+    private static FrozenSplayTreeMap<Integer, Integer> checkAndRefreeze(FrozenSplayTreeMap<Integer, Integer> frozen,
+                                                                        TreeMap<Integer, Integer> expFrozen,
+                                                                        SplayTreeMap<Integer, Integer> map,
+                                                                        TreeMap<Integer, Integer> expMap) {
+        assertEquals(expFrozen, frozen);
+        assertEquals(expFrozen.size(), frozen.size());
+        expFrozen.clear();
+        expFrozen.putAll(expMap);
+        return map.freeze();
+    }
+
+    @Test
+    void writesThroughViews() {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>();
+        for (int i = 0; i < 100; i++)
+            map.put(i, i);
+        FrozenSplayTreeMap<Integer, Integer> frozen = map.freeze();
+        for (Map.Entry<Integer, Integer> e : map.entrySet())
+            e.setValue(-e.getValue());
+        assertEquals(Integer.valueOf(-5), map.get(5));
+        assertEquals(Integer.valueOf(5), frozen.get(5));
+
+        frozen = map.freeze();
+        map.entrySet().parallelStream().forEach(e -> e.setValue(0));
+        assertEquals(Integer.valueOf(-7), frozen.get(7));
+        assertEquals(Integer.valueOf(0), map.get(7));
+
+        frozen = map.freeze();
+        List<Map.Entry<Integer, Integer>> entries = new ArrayList<>();
+        for (int i = 50; i < 150; i++)
+            entries.add(new AbstractMap.SimpleEntry<>(i, 1));
+        map.putAllSorted(entries);
+        map.removeAll(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15));
+        assertEquals(100, frozen.size());
+        assertEquals(Integer.valueOf(0), frozen.get(60));
+        assertEquals(Integer.valueOf(0), frozen.get(0));
+        assertEquals(134, map.size());
+
+        frozen = map.freeze();
+        map.clear();
+        assertEquals(134, frozen.size());
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void copiesOnlyWhatChanges() {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>();
+        Random random = new Random(4);
+        for (int i = 0; i < 1000; i++)
+            map.put(random.nextInt(5000), i);
+        TreeMap<Integer, Integer> expMap = new TreeMap<>(map);
+        FrozenSplayTreeMap<Integer, Integer> frozen = map.freeze();
+        Set<SplayTreeMap.Entry<Integer, Integer>> frozenEntries = entries(map);
+        // read-only iteration copies nothing
+        SplayTreeMap.Entry<Integer, Integer> root = map.root;
+        assertFalse(map.containsValue(-1));
+        assertTrue(map.equals(expMap));
+        assertEquals(expMap.hashCode(), map.hashCode());
+        assertEquals(expMap.toString(), map.toString());
+        assertSame(root, map.root);
+        assertEquals(frozenEntries, entries(map));
+        // a lookup copies its search path
+        int key = expMap.lastKey();
+        int depth = 1;
+        for (SplayTreeMap.Entry<Integer, Integer> p = map.root; p.key != key; p = key < p.key ? p.left : p.right)
+            depth++;
+        map.get(key);
+        Set<SplayTreeMap.Entry<Integer, Integer>> copied = entries(map);
+        copied.removeAll(frozenEntries);
+        assertTrue(copied.size() <= depth);
+        // writing through an entry copies it, the snapshot keeps the old value
+        for (Map.Entry<Integer, Integer> e : map.entrySet())
+            if (e.getKey() % 2 == 0)
+                assertEquals(expMap.put(e.getKey(), -1), e.setValue(-1));
+        assertEquals(expMap, map);
+        assertNotEquals(expMap, frozen);
+
+        // entries split off, frozen there and joined back are still copied
+        SplayTreeMap<Integer, Integer> upper = map.splitAt(2500);
+        FrozenSplayTreeMap<Integer, Integer> frozenUpper = upper.freeze();
+        TreeMap<Integer, Integer> expUpper = new TreeMap<>(upper);
+        map.join(upper);
+        for (int k : expUpper.keySet())
+            map.put(k, 0);
+        assertEquals(expUpper, frozenUpper);
+        // the marks set on shared entries do not show in the sizes the snapshot reads
+        int rank = 0;
+        for (int k : expUpper.keySet())
+            assertEquals(rank++, frozenUpper.rank(k));
+
+        for (SplayPolicy policy : Arrays.asList(SplayPolicy.depthThreshold(1000), SplayPolicy.semiSplay())) {
+            SplayTreeMap<Integer, Integer> other = new SplayTreeMap<>(null, policy);
+            other.putAll(expMap);
+            frozen = other.freeze();
+            for (int k : expMap.keySet()) {
+                assertEquals(expMap.get(k), other.replace(k, 7));
+                assertTrue(other.replace(k, 7, 8));
+            }
+            assertEquals(expMap, frozen);
+            assertEquals(Integer.valueOf(8), other.get(expMap.firstKey()));
+        }
+    }
+
+    // the entries of the tree by identity
+    private static Set<SplayTreeMap.Entry<Integer, Integer>> entries(SplayTreeMap<Integer, Integer> map) {
+        Set<SplayTreeMap.Entry<Integer, Integer>> entries = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<SplayTreeMap.Entry<Integer, Integer>> stack = new ArrayDeque<>();
+        if (map.root != null)
+            stack.push(map.root);
+        while (!stack.isEmpty()) {
+            SplayTreeMap.Entry<Integer, Integer> e = stack.pop();
+            entries.add(e);
+            if (e.left != null)
+                stack.push(e.left);
+            if (e.right != null)
+                stack.push(e.right);
+        }
+        return entries;
+    }
+
+    @Test
+    void navigationAndThaw() {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>(Comparator.reverseOrder());
+        TreeMap<Integer, Integer> expMap = new TreeMap<>(Comparator.reverseOrder());
+        for (int i = 0; i < 500; i += 5) {
+            map.put(i, i);
+            expMap.put(i, i);
+        }
+        FrozenSplayTreeMap<Integer, Integer> frozen = map.freeze();
+        assertEquals(expMap.firstKey(), frozen.firstKey());
+        assertEquals(expMap.lastKey(), frozen.lastKey());
+        assertEquals(expMap.firstEntry(), frozen.firstEntry());
+        assertEquals(expMap.lastEntry(), frozen.lastEntry());
+        assertSame(map.comparator(), frozen.comparator());
+        for (int key = -3; key < 503; key++) {
+            assertEquals(expMap.ceilingEntry(key), frozen.ceilingEntry(key));
+            assertEquals(expMap.higherEntry(key), frozen.higherEntry(key));
+            assertEquals(expMap.floorEntry(key), frozen.floorEntry(key));
+            assertEquals(expMap.lowerEntry(key), frozen.lowerEntry(key));
+            assertEquals(expMap.headMap(key).size(), frozen.rank(key));
+        }
+        assertEquals(new ArrayList<>(expMap.entrySet()), new ArrayList<>(frozen.entrySet()));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.put(1, 1));
+        assertThrows(UnsupportedOperationException.class, () -> frozen.entrySet().iterator().next().setValue(1));
+        assertThrows(UnsupportedOperationException.class, () -> {
+            Iterator<Map.Entry<Integer, Integer>> it = frozen.entrySet().iterator();
+            it.next();
+            it.remove();
+        });
+
+        SplayTreeMap<Integer, Integer> thawed = frozen.thaw();
+        thawed.put(1000, 1000);
+        thawed.remove(0);
+        thawed.get(250);
+        assertEquals(expMap, frozen);
+        assertEquals(expMap, map);
+        assertEquals(expMap.size(), thawed.size());
+        assertTrue(thawed.containsKey(1000));
+        assertEquals(expMap.comparator(), thawed.comparator());
+        assertThrows(NoSuchElementException.class, () -> new SplayTreeMap<Integer, Integer>().freeze().firstKey());
+    }
+
+    @Test
+    void readersWhileWriting() throws Exception {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>();
+        for (int i = 0; i < 10_000; i++)
+            map.put(i, i);
+        FrozenSplayTreeMap<Integer, Integer> frozen = map.freeze();
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int seed = t;
+                results.add(readers.submit(() -> {
+                    Random random = new Random(seed);
+                    long checked = 0;
+                    while (!done.get() || checked < 10_000) {
+                        int key = random.nextInt(10_000);
+                        assertEquals(Integer.valueOf(key), frozen.get(key));
+                        assertEquals(key, (int) frozen.ceilingEntry(key).getKey());
+                        checked++;
+                    }
+                    long sum = 0;
+                    for (Map.Entry<Integer, Integer> e : frozen.entrySet())
+                        sum += e.getValue();
+                    return sum;
+                }));
+            }
+            Random random = new Random(9);
+            for (int i = 0; i < 200_000; i++) {
+                int key = random.nextInt(20_000);
+                if (random.nextBoolean())
+                    map.put(key, -key);
+                else
+                    map.remove(key);
+            }
+            done.set(true);
+            for (Future<Long> result : results)
+                assertEquals(49_995_000L, (long) result.get());
+        } finally {
+            readers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SplayTreeMapNavigableTest {
+
+    SplayTreeMap<Integer, String> map;
+    TreeMap<Integer, String> expMap;
+
+    @BeforeEach
+    void setUp() {
+        map = new SplayTreeMap<>();
+        expMap = new TreeMap<>();
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            keys.add(2 * i);
+        }
+        Collections.shuffle(keys);
+        keys.forEach(key -> {
+            map.put(key, key.toString());
+            expMap.put(key, key.toString());
+        });
+    }
+
+    @Test
+    void closestEntries() {
+        for (int key = -2; key <= 101; key++) {
+            assertEquals(expMap.ceilingEntry(key), map.ceilingEntry(key));
+            assertEquals(expMap.floorEntry(key), map.floorEntry(key));
+            assertEquals(expMap.higherEntry(key), map.higherEntry(key));
+            assertEquals(expMap.lowerEntry(key), map.lowerEntry(key));
+            assertEquals(expMap.ceilingKey(key), map.ceilingKey(key));
+            assertEquals(expMap.floorKey(key), map.floorKey(key));
+            assertEquals(expMap.higherKey(key), map.higherKey(key));
+            assertEquals(expMap.lowerKey(key), map.lowerKey(key));
+        }
+        assertEquals(expMap, map);
+    }
+
+    @Test
+    void closestEntriesEmpty() {
+        map.clear();
+        assertNull(map.ceilingEntry(1));
+        assertNull(map.lowerKey(1));
+        assertNull(map.firstEntry());
+        assertNull(map.pollLastEntry());
+    }
+
+    @Test
+    void pollEntries() {
+        while (!expMap.isEmpty()) {
+            assertEquals(expMap.pollFirstEntry(), map.pollFirstEntry());
+            assertEquals(expMap.pollLastEntry(), map.pollLastEntry());
+            assertEquals(expMap.size(), map.size());
+        }
+        assertNull(map.pollFirstEntry());
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void exportedEntriesAreImmutable() {
+        assertThrows(UnsupportedOperationException.class, () -> map.firstEntry().setValue("x"));
+        assertThrows(UnsupportedOperationException.class, () -> map.ceilingEntry(3).setValue("x"));
+    }
+
+    @Test
+    void descendingMap() {
+        NavigableMap<Integer, String> descending = map.descendingMap();
+        assertEquals(new ArrayList<>(expMap.descendingMap().keySet()), new ArrayList<>(descending.keySet()));
+        assertEquals(98, descending.firstKey());
+        assertEquals(0, descending.lastKey());
+        assertEquals(expMap.descendingMap().ceilingKey(51), descending.ceilingKey(51));
+        assertEquals(expMap.descendingMap().higherKey(50), descending.higherKey(50));
+        assertEquals(map, descending.descendingMap());
+    }
+
+    @Test
+    void navigableKeySet() {
+        NavigableSet<Integer> keys = map.navigableKeySet();
+        NavigableSet<Integer> expKeys = expMap.navigableKeySet();
+        assertEquals(expKeys, keys);
+        assertEquals(expKeys.ceiling(33), keys.ceiling(33));
+        assertEquals(expKeys.lower(0), keys.lower(0));
+        assertEquals(new ArrayList<>(expKeys.descendingSet()), new ArrayList<>(keys.descendingSet()));
+        assertEquals(new ArrayList<>(expKeys.subSet(10, true, 20, true)), new ArrayList<>(keys.subSet(10, true, 20, true)));
+
+        List<Integer> descending = new ArrayList<>();
+        keys.descendingIterator().forEachRemaining(descending::add);
+        assertEquals(new ArrayList<>(expKeys.descendingSet()), descending);
+
+        assertTrue(keys.remove(10));
+        assertFalse(keys.remove(11));
+        assertFalse(map.containsKey(10));
+        assertEquals(0, keys.pollFirst());
+        assertEquals(98, keys.pollLast());
+    }
+
+    @Test
+    void inclusiveSubMaps() {
+        for (int lo = -1; lo <= 20; lo++) {
+            for (int hi = lo; hi <= 20; hi++) {
+                for (boolean loInclusive : new boolean[]{true, false}) {
+                    for (boolean hiInclusive : new boolean[]{true, false}) {
+                        NavigableMap<Integer, String> exp = expMap.subMap(lo, loInclusive, hi, hiInclusive);
+                        NavigableMap<Integer, String> sub = map.subMap(lo, loInclusive, hi, hiInclusive);
+                        assertEquals(new ArrayList<>(exp.entrySet()), new ArrayList<>(sub.entrySet()));
+                        assertEquals(new ArrayList<>(exp.descendingMap().entrySet()),
+                                new ArrayList<>(sub.descendingMap().entrySet()));
+                        assertEquals(exp.size(), sub.size());
+                        assertEquals(exp.isEmpty(), sub.isEmpty());
+                        assertEquals(exp.firstEntry(), sub.firstEntry());
+                        assertEquals(exp.lastEntry(), sub.lastEntry());
+                        assertEquals(exp.ceilingKey(lo + 1), sub.ceilingKey(lo + 1));
+                        assertEquals(exp.lowerKey(hi), sub.lowerKey(hi));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void headTailMaps() {
+        assertEquals(expMap.headMap(10, true), map.headMap(10, true));
+        assertEquals(expMap.headMap(10, false), map.headMap(10, false));
+        assertEquals(expMap.tailMap(90, true), map.tailMap(90, true));
+        assertEquals(expMap.tailMap(90, false), map.tailMap(90, false));
+        assertEquals(new ArrayList<>(expMap.headMap(10, true).descendingKeySet()),
+                new ArrayList<>(map.headMap(10, true).descendingKeySet()));
+        assertThrows(IllegalArgumentException.class, () -> map.headMap(10, false).tailMap(10, true));
+        assertEquals(Collections.singletonMap(10, "10"), map.headMap(10, true).tailMap(10, true));
+    }
+
+    @Test
+    void descendingSubMap() {
+        NavigableMap<Integer, String> exp = expMap.descendingMap().subMap(40, true, 20, false);
+        NavigableMap<Integer, String> sub = map.descendingMap().subMap(40, true, 20, false);
+        assertEquals(new ArrayList<>(exp.keySet()), new ArrayList<>(sub.keySet()));
+        assertEquals(exp.headMap(30, false), sub.headMap(30, false));
+        assertEquals(exp.tailMap(30, false), sub.tailMap(30, false));
+        assertEquals(exp.pollFirstEntry(), sub.pollFirstEntry());
+        assertEquals(exp.pollLastEntry(), sub.pollLastEntry());
+        assertEquals(expMap, map);
+
+        sub.entrySet().removeIf(e -> e.getKey() % 4 == 0);
+        exp.entrySet().removeIf(e -> e.getKey() % 4 == 0);
+        assertEquals(expMap, map);
+    }
+
+    @Test
+    void values() {
+        assertEquals(new ArrayList<>(expMap.values()), new ArrayList<>(map.values()));
+        assertTrue(map.values().remove("12"));
+        assertFalse(map.values().remove("13"));
+        assertFalse(map.containsKey(12));
+    }
+}
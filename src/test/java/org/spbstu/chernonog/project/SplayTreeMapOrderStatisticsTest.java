@@ -0,0 +1,95 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SplayTreeMapOrderStatisticsTest {
+
+    SplayTreeMap<Integer, String> map;
+    TreeMap<Integer, String> expMap;
+
+    @BeforeEach
+    void setUp() {
+        map = new SplayTreeMap<>();
+        expMap = new TreeMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            int key = random.nextInt(1000);
+            if (random.nextInt(4) == 0) {
+                map.remove(key);
+                expMap.remove(key);
+            } else {
+                map.put(key, Integer.toString(key));
+                expMap.put(key, Integer.toString(key));
+            }
+        }
+    }
+
+    @Test
+    void rank() {
+        for (int key = -1; key <= 1001; key++) {
+            assertEquals(expMap.headMap(key).size(), map.rank(key));
+        }
+    }
+
+    @Test
+    void select() {
+        int index = 0;
+        for (Map.Entry<Integer, String> e : expMap.entrySet()) {
+            assertEquals(e, map.select(index++));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> map.select(-1));
+        assertThrows(IndexOutOfBoundsException.class, () -> map.select(map.size()));
+    }
+
+    @Test
+    void countInRange() {
+        Random random = new Random(11);
+        for (int i = 0; i < 1000; i++) {
+            int lo = random.nextInt(1100) - 50;
+            int hi = lo + random.nextInt(200);
+            boolean loInclusive = random.nextBoolean();
+            boolean hiInclusive = random.nextBoolean();
+            assertEquals(expMap.subMap(lo, loInclusive, hi, hiInclusive).size(),
+                    map.countInRange(lo, loInclusive, hi, hiInclusive));
+        }
+        assertEquals(expMap.subMap(100, 200).size(), map.countInRange(100, 200));
+        assertThrows(IllegalArgumentException.class, () -> map.countInRange(5, 4));
+    }
+
+    @Test
+    void subMapSize() {
+        assertEquals(expMap.headMap(500).size(), map.headMap(500).size());
+        assertEquals(expMap.tailMap(500, false).size(), map.tailMap(500, false).size());
+        assertEquals(expMap.descendingMap().subMap(700, 300).size(), map.descendingMap().subMap(700, 300).size());
+        NavigableMap<Integer, String> sub = map.subMap(200, true, 400, true);
+        int size = sub.size();
+        Integer key = sub.firstKey();
+        sub.remove(key);
+        assertEquals(size - 1, sub.size());
+        assertEquals(size - 1, sub.entrySet().size());
+        sub.put(key, "again");
+        assertEquals(size, sub.size());
+        assertTrue(map.subMap(2000, 3000).isEmpty());
+        assertEquals(0, map.subMap(2000, 3000).size());
+    }
+
+    @Test
+    void sizesSurviveRemovals() {
+        List<Integer> keys = new ArrayList<>(expMap.keySet());
+        Collections.shuffle(keys, new Random(3));
+        for (Integer key : keys) {
+            map.remove(key);
+            expMap.remove(key);
+            if (!expMap.isEmpty()) {
+                assertEquals(expMap.lastKey(), map.select(map.size() - 1).getKey());
+                assertEquals(expMap.size() / 2, map.rank(map.select(expMap.size() / 2).getKey()));
+            }
+        }
+        assertTrue(map.isEmpty());
+    }
+}
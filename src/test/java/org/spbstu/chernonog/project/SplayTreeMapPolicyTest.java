@@ -0,0 +1,141 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SplayTreeMapPolicyTest {
+
+    private static final List<SplayPolicy> POLICIES = Arrays.asList(
+            SplayPolicy.always(),
+            SplayPolicy.semiSplay(),
+            SplayPolicy.depthThreshold(0),
+            SplayPolicy.depthThreshold(8),
+            SplayPolicy.probabilistic(0.1),
+            depth -> SplayPolicy.Restructuring.NONE
+    );
+
+    @Test
+    void randomOps() {
+        for (SplayPolicy policy : POLICIES) {
+            SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>(null, policy);
+            TreeMap<Integer, Integer> expMap = new TreeMap<>();
+            Random random = new Random(7);
+            for (int i = 0; i < 20_000; i++) {
+                int key = random.nextInt(2000);
+                switch (random.nextInt(4)) {
+                    case 0:
+                        assertEquals(expMap.put(key, i), map.put(key, i));
+                        break;
+                    case 1:
+                        assertEquals(expMap.remove(key), map.remove(key));
+                        break;
+                    case 2:
+                        assertEquals(expMap.containsKey(key), map.containsKey(key));
+                        break;
+                    default:
+                        assertEquals(expMap.get(key), map.get(key));
+                        break;
+                }
+            }
+            assertEquals(expMap, map);
+            assertEquals(expMap.size(), map.size());
+            // subtree sizes survive the rotations
+            int index = 0;
+            for (Integer key : expMap.keySet()) {
+                assertEquals(index, map.rank(key));
+                assertEquals(key, map.select(index++).getKey());
+            }
+        }
+    }
+
+    @Test
+    void sequentialInsertsWithThreshold() {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>(null, SplayPolicy.depthThreshold(20));
+        int n = 100_000;
+        for (int i = 0; i < n; i++) {
+            map.put(i, i);
+        }
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, map.get(i));
+        }
+        assertEquals(n, map.size());
+        assertEquals(n - 1, map.lastKey());
+    }
+
+    @Test
+    void semiSplayShortensPath() {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>(null, SplayPolicy.semiSplay());
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, i);
+        }
+        int deepest = 0;
+        for (int key = 1; key < 1000; key++) {
+            if (depth(map, key) > depth(map, deepest))
+                deepest = key;
+        }
+        int before = depth(map, deepest);
+        assertTrue(before >= 2);
+        assertEquals(deepest, map.get(deepest));
+        assertTrue(depth(map, deepest) <= before / 2 + 1);
+    }
+
+    @Test
+    void noRestructuringKeepsRoot() {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>(null, SplayPolicy.depthThreshold(100));
+        for (int key : new int[]{50, 25, 75, 10, 30}) {
+            map.put(key, key);
+        }
+        assertEquals(50, map.root.key);
+        map.get(10);
+        map.get(30);
+        assertEquals(50, map.root.key);
+        assertEquals(10, map.firstKey());
+        assertEquals(10, map.root.key);
+    }
+
+    @Test
+    void iteratorWithLookups() {
+        for (SplayPolicy policy : POLICIES) {
+            SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>(null, policy);
+            for (int i = 0; i < 500; i++) {
+                map.put((i * 37) % 500, i);
+            }
+            int expected = 0;
+            for (Iterator<Integer> it = map.keySet().iterator(); it.hasNext(); ) {
+                int key = it.next();
+                assertEquals(expected++, key);
+                map.get(499 - key);
+            }
+            assertEquals(500, expected);
+        }
+    }
+
+    @Test
+    void splitKeepsPolicy() {
+        SplayPolicy policy = SplayPolicy.semiSplay();
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>(null, policy);
+        for (int i = 0; i < 10; i++) {
+            map.put(i, i);
+        }
+        assertSame(policy, map.splitAt(5).splayPolicy());
+        assertSame(SplayPolicy.ALWAYS, new SplayTreeMap<Integer, Integer>().splayPolicy());
+    }
+
+    @Test
+    void invalidPolicies() {
+        assertThrows(IllegalArgumentException.class, () -> SplayPolicy.depthThreshold(-1));
+        assertThrows(IllegalArgumentException.class, () -> SplayPolicy.probabilistic(1.5));
+        assertThrows(IllegalArgumentException.class, () -> SplayPolicy.probabilistic(Double.NaN));
+        assertThrows(NullPointerException.class, () -> new SplayTreeMap<Integer, Integer>(null, null));
+    }
+
+    private static int depth(SplayTreeMap<Integer, Integer> map, int key) {
+        int depth = 0;
+        for (SplayTreeMap.Entry<Integer, Integer> p = map.root; p.key != key; depth++)
+            p = key < p.key ? p.left : p.right;
+        return depth;
+    }
+}
@@ -0,0 +1,188 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SplayTreeMapSplitJoinTest {
+
+    SplayTreeMap<Integer, String> map;
+    TreeMap<Integer, String> expMap;
+
+    @BeforeEach
+    void setUp() {
+        map = new SplayTreeMap<>();
+        expMap = new TreeMap<>();
+        List<Integer> keys = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            keys.add(2 * i);
+        }
+        Collections.shuffle(keys);
+        keys.forEach(key -> {
+            map.put(key, key.toString());
+            expMap.put(key, key.toString());
+        });
+    }
+
+    @Test
+    void splitAt() {
+        for (int key : new int[]{50, 51}) {
+            SplayTreeMap<Integer, String> lower = new SplayTreeMap<>(map);
+            SplayTreeMap<Integer, String> upper = lower.splitAt(key);
+            assertEquals(expMap.headMap(key), lower);
+            assertEquals(expMap.tailMap(key), upper);
+            assertEquals(expMap.headMap(key).size(), lower.size());
+            assertEquals(expMap.tailMap(key).size(), upper.size());
+            assertEquals(key + 1 >> 1, upper.rank(upper.firstKey()) + lower.size());
+        }
+    }
+
+    @Test
+    void splitAtEnds() {
+        SplayTreeMap<Integer, String> upper = map.splitAt(1000);
+        assertTrue(upper.isEmpty());
+        assertEquals(expMap, map);
+
+        upper = map.splitAt(-1);
+        assertTrue(map.isEmpty());
+        assertEquals(expMap, upper);
+        assertNull(map.firstEntry());
+        assertThrows(NullPointerException.class, () -> map.splitAt(null));
+    }
+
+    @Test
+    void join() {
+        SplayTreeMap<Integer, String> upper = map.splitAt(101);
+        map.join(upper);
+        assertEquals(expMap, map);
+        assertTrue(upper.isEmpty());
+        assertEquals(expMap.size(), map.size());
+
+        // the other map may also go in front
+        SplayTreeMap<Integer, String> lower = new SplayTreeMap<>();
+        lower.put(-5, "-5");
+        lower.put(-3, "-3");
+        map.join(lower);
+        expMap.put(-5, "-5");
+        expMap.put(-3, "-3");
+        assertEquals(new ArrayList<>(expMap.entrySet()), new ArrayList<>(map.entrySet()));
+        assertEquals(2, map.rank(0));
+    }
+
+    @Test
+    void joinEmpty() {
+        SplayTreeMap<Integer, String> empty = new SplayTreeMap<>();
+        map.join(empty);
+        assertEquals(expMap, map);
+        empty.join(map);
+        assertEquals(expMap, empty);
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void joinExceptions() {
+        SplayTreeMap<Integer, String> overlapping = new SplayTreeMap<>();
+        overlapping.put(51, "51");
+        assertThrows(IllegalArgumentException.class, () -> map.join(overlapping));
+        assertThrows(IllegalArgumentException.class, () -> map.join(map));
+        SplayTreeMap<Integer, String> reversed = new SplayTreeMap<>(Comparator.reverseOrder());
+        reversed.put(500, "500");
+        assertThrows(IllegalArgumentException.class, () -> map.join(reversed));
+        assertEquals(expMap, map);
+    }
+
+    @Test
+    void joinInvalidatesIterators() {
+        SplayTreeMap<Integer, String> upper = map.splitAt(100);
+        upper.put(300, "300");
+        Iterator<Integer> it = upper.keySet().iterator();
+        map.join(upper);
+        assertThrows(ConcurrentModificationException.class, it::next);
+    }
+
+    @Test
+    void removeRange() {
+        Random random = new Random(7);
+        for (int i = 0; i < 300; i++) {
+            if (random.nextInt(3) == 0) {
+                for (int j = 0; j < 20; j++) {
+                    int key = random.nextInt(250);
+                    map.put(key, "");
+                    expMap.put(key, "");
+                }
+            }
+            int from = random.nextInt(260) - 5, to = from + random.nextInt(60);
+            boolean fromInclusive = random.nextBoolean(), toInclusive = random.nextBoolean();
+            NavigableMap<Integer, String> range = expMap.subMap(from, fromInclusive, to, toInclusive);
+            int expRemoved = range.size();
+            range.clear();
+            assertEquals(expRemoved, map.removeRange(from, fromInclusive, to, toInclusive));
+            assertEquals(expMap, map);
+            assertEquals(expMap.size(), map.size());
+            assertEquals(expMap.size(), SplayTreeMap.sizeOf(map.root));
+            if (!expMap.isEmpty())
+                assertEquals(expMap.lastEntry(), map.select(expMap.size() - 1));
+        }
+        assertEquals(0, map.removeRange(5, 5));
+        assertThrows(IllegalArgumentException.class, () -> map.removeRange(5, 4));
+    }
+
+    @Test
+    void subMapClear() {
+        map.headMap(20).clear();
+        expMap.headMap(20).clear();
+        assertEquals(expMap, map);
+        map.tailMap(180, false).clear();
+        expMap.tailMap(180, false).clear();
+        assertEquals(expMap, map);
+        map.subMap(51, 101).entrySet().clear();
+        expMap.subMap(51, 101).entrySet().clear();
+        assertEquals(expMap, map);
+        map.descendingMap().headMap(170, true).keySet().clear();
+        expMap.descendingMap().headMap(170, true).keySet().clear();
+        assertEquals(expMap, map);
+        map.subMap(30, true, 40, true).values().clear();
+        expMap.subMap(30, true, 40, true).values().clear();
+        assertEquals(expMap, map);
+        assertEquals(expMap.size(), map.size());
+        assertEquals(expMap.size(), SplayTreeMap.sizeOf(map.root));
+        assertEquals(new ArrayList<>(expMap.keySet()), new ArrayList<>(map.keySet()));
+
+        Iterator<Integer> it = map.keySet().iterator();
+        map.subMap(1000, 2000).clear(); // nothing removed
+        it.next();
+        map.headMap(100).clear();
+        assertThrows(ConcurrentModificationException.class, it::next);
+        map.descendingMap().clear();
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void removeRangeKeepsSnapshot() {
+        FrozenSplayTreeMap<Integer, String> frozen = map.freeze();
+        map.headMap(100).clear();
+        expMap.headMap(100).clear();
+        assertEquals(expMap, map);
+        assertEquals(100, frozen.size());
+        assertEquals("0", frozen.get(0));
+    }
+
+    @Test
+    void removeRangeFromLowEnd() {
+        SplayTreeMap<Integer, Integer> big = new SplayTreeMap<>();
+        for (int i = 0; i < 1_000_000; i++)
+            big.put(i, i);
+        SplayTreeMetrics metrics = big.enableMetrics();
+        for (int i = 1; i <= 100; i++) {
+            assertEquals(9_000, big.headMap(i * 10_000 - 1_000).size() - big.headMap((i - 1) * 10_000).size());
+            big.headMap(i * 10_000).clear();
+            assertEquals(1_000_000 - i * 10_000, big.size());
+        }
+        assertTrue(big.isEmpty());
+        // a few splays for each clear and each size query, none per removed entry
+        assertTrue(metrics.snapshot().splays() < 100 * 8);
+    }
+}
@@ -0,0 +1,131 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SplayTreeMapSpliteratorTest {
+
+    private static SplayTreeMap<Integer, Integer> randomMap(TreeMap<Integer, Integer> expMap, int size, long seed) {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>();
+        Random random = new Random(seed);
+        while (expMap.size() < size) {
+            int key = random.nextInt(size * 10);
+            expMap.put(key, key * 2);
+            map.put(key, key * 2);
+        }
+        return map;
+    }
+
+    @Test
+    void parallelStreams() {
+        TreeMap<Integer, Integer> expMap = new TreeMap<>();
+        SplayTreeMap<Integer, Integer> map = randomMap(expMap, 50_000, 1);
+        assertEquals(new ArrayList<>(expMap.keySet()), map.keySet().parallelStream().collect(Collectors.toList()));
+        assertEquals(new ArrayList<>(expMap.values()), map.values().parallelStream().collect(Collectors.toList()));
+        assertEquals(new ArrayList<>(expMap.entrySet()), map.entrySet().parallelStream().collect(Collectors.toList()));
+        assertEquals(expMap.values().stream().mapToLong(v -> v).sum(),
+                map.values().parallelStream().mapToLong(v -> v).sum());
+        assertEquals(expMap.size(), map.entrySet().parallelStream().filter(e -> e.getValue() == e.getKey() * 2).count());
+    }
+
+    @Test
+    void subMaps() {
+        TreeMap<Integer, Integer> expMap = new TreeMap<>();
+        SplayTreeMap<Integer, Integer> map = randomMap(expMap, 2000, 2);
+        Random random = new Random(3);
+        for (int i = 0; i < 200; i++) {
+            int a = random.nextInt(21_000) - 500, b = random.nextInt(21_000) - 500;
+            int lo = Math.min(a, b), hi = Math.max(a, b);
+            boolean loInclusive = random.nextBoolean(), hiInclusive = random.nextBoolean();
+            NavigableMap<Integer, Integer> exp = expMap.subMap(lo, loInclusive, hi, hiInclusive);
+            NavigableMap<Integer, Integer> sub = map.subMap(lo, loInclusive, hi, hiInclusive);
+            Spliterator<Map.Entry<Integer, Integer>> spliterator = sub.entrySet().spliterator();
+            assertEquals(exp.size(), spliterator.estimateSize());
+            assertEquals(new ArrayList<>(exp.entrySet()),
+                    StreamSupport.stream(spliterator, true).collect(Collectors.toList()));
+            assertEquals(new ArrayList<>(exp.keySet()),
+                    sub.keySet().parallelStream().collect(Collectors.toList()));
+            assertEquals(new ArrayList<>(expMap.headMap(hi, hiInclusive).keySet()),
+                    map.headMap(hi, hiInclusive).keySet().parallelStream().collect(Collectors.toList()));
+            assertEquals(new ArrayList<>(exp.descendingMap().keySet()),
+                    sub.descendingMap().keySet().parallelStream().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void splitsAreExact() {
+        TreeMap<Integer, Integer> expMap = new TreeMap<>();
+        SplayTreeMap<Integer, Integer> map = randomMap(expMap, 1001, 4);
+        Spliterator<Integer> right = map.keySet().spliterator();
+        int characteristics = right.characteristics();
+        for (int flag : new int[]{Spliterator.SORTED, Spliterator.ORDERED, Spliterator.DISTINCT,
+                Spliterator.SIZED, Spliterator.SUBSIZED})
+            assertEquals(flag, characteristics & flag);
+        assertNull(right.getComparator());
+        Spliterator<Integer> left = right.trySplit();
+        assertEquals(500, left.estimateSize());
+        assertEquals(501, right.estimateSize());
+        List<Integer> keys = new ArrayList<>();
+        left.forEachRemaining(keys::add);
+        assertTrue(right.tryAdvance(keys::add));
+        right.forEachRemaining(keys::add);
+        assertEquals(new ArrayList<>(expMap.keySet()), keys);
+        assertFalse(right.tryAdvance(keys::add));
+        assertEquals(0, map.values().spliterator().characteristics() & Spliterator.SORTED);
+        assertEquals(Spliterator.NONNULL, characteristics & Spliterator.NONNULL);
+        SplayTreeMap<Integer, Integer> nulls = new SplayTreeMap<>(Comparator.nullsFirst(Comparator.<Integer>naturalOrder()));
+        nulls.put(null, 0);
+        nulls.put(1, 1);
+        assertEquals(0, nulls.keySet().spliterator().characteristics() & Spliterator.NONNULL);
+        assertEquals(Arrays.asList(null, 1), nulls.keySet().stream().collect(Collectors.toList()));
+        Comparator<? super Map.Entry<Integer, Integer>> comparator = map.entrySet().spliterator().getComparator();
+        assertTrue(comparator.compare(map.firstEntry(), map.lastEntry()) < 0);
+    }
+
+    @Test
+    void traversalDoesNotSplay() {
+        TreeMap<Integer, Integer> expMap = new TreeMap<>();
+        SplayTreeMap<Integer, Integer> map = randomMap(expMap, 1000, 5);
+        SplayTreeMap.Entry<Integer, Integer> root = map.root;
+        assertEquals(expMap.size(), map.entrySet().parallelStream().count());
+        map.keySet().parallelStream().forEach(key -> assertTrue(key >= 0));
+        assertSame(root, map.root);
+    }
+
+    @Test
+    void splaysDuringTraversal() {
+        TreeMap<Integer, Integer> expMap = new TreeMap<>();
+        SplayTreeMap<Integer, Integer> map = randomMap(expMap, 1000, 6);
+        List<Integer> keys = new ArrayList<>();
+        Random random = new Random(7);
+        map.keySet().spliterator().forEachRemaining(key -> {
+            keys.add(key);
+            map.get(random.nextInt(10_000));
+        });
+        assertEquals(new ArrayList<>(expMap.keySet()), keys);
+    }
+
+    @Test
+    void concurrentModification() {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>();
+        for (int i = 0; i < 100; i++)
+            map.put(i, i);
+        Spliterator<Integer> spliterator = map.keySet().spliterator();
+        spliterator.tryAdvance(key -> {
+        });
+        map.put(1000, 0);
+        assertThrows(ConcurrentModificationException.class, () -> spliterator.tryAdvance(key -> {
+        }));
+        assertThrows(ConcurrentModificationException.class,
+                () -> map.values().spliterator().forEachRemaining(value -> map.remove(value)));
+        // late binding: changes before the first use are seen
+        Spliterator<Integer> late = map.keySet().spliterator();
+        map.put(2000, 0);
+        assertEquals(map.size(), late.estimateSize());
+    }
+}
@@ -0,0 +1,138 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SplayTreeMetricsTest {
+
+    @Test
+    void disabledByDefault() {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>();
+        assertNull(map.metrics());
+        SplayTreeMetrics metrics = map.enableMetrics();
+        assertSame(metrics, map.enableMetrics());
+        assertSame(metrics, map.metrics());
+        map.disableMetrics();
+        assertNull(map.metrics());
+        map.put(1, 1);
+        assertEquals(0, metrics.snapshot().splays());
+    }
+
+    @Test
+    void countsOperations() {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>();
+        SplayTreeMetrics metrics = map.enableMetrics();
+        Random random = new Random(5);
+        for (int i = 0; i < 1000; i++)
+            map.put(random.nextInt(500), i);
+        for (int i = 0; i < 300; i++)
+            map.get(random.nextInt(500));
+        for (int i = 0; i < 100; i++)
+            map.containsKey(random.nextInt(500));
+        for (int i = 0; i < 50; i++)
+            map.remove(random.nextInt(500));
+        SplayTreeMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(1000, snapshot.count(SplayTreeMetrics.Operation.PUT));
+        assertEquals(400, snapshot.count(SplayTreeMetrics.Operation.GET));
+        assertEquals(50, snapshot.count(SplayTreeMetrics.Operation.REMOVE));
+        assertTrue(snapshot.splays() >= 1449);
+        assertTrue(snapshot.averageDepth() >= 1);
+        assertTrue(snapshot.maxDepth() >= snapshot.averageDepth());
+        assertTrue(snapshot.rotations() > 0);
+        assertTrue(snapshot.latencyNanos(SplayTreeMetrics.Operation.GET, 50)
+                <= snapshot.latencyNanos(SplayTreeMetrics.Operation.GET, 99));
+        assertTrue(snapshot.latencyNanos(SplayTreeMetrics.Operation.GET, 99)
+                <= snapshot.maxLatencyNanos(SplayTreeMetrics.Operation.GET));
+        assertNotNull(snapshot.toString());
+    }
+
+    @Test
+    void detectsDegenerateShape() {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>();
+        for (int i = 0; i < 1000; i++)
+            map.put(i, i);
+        SplayTreeMetrics metrics = map.enableMetrics();
+        // ascending inserts leave a chain, the first lookup walks all of it
+        map.get(0);
+        SplayTreeMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.splays());
+        assertEquals(1000, snapshot.maxDepth());
+        assertEquals(1, snapshot.degenerateSplays());
+        // the key is at the root now
+        for (int i = 0; i < 10; i++)
+            map.get(0);
+        assertEquals(1, metrics.snapshot().degenerateSplays());
+    }
+
+    @Test
+    void policyPaths() {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>(null, SplayPolicy.depthThreshold(1000));
+        for (int i = 0; i < 100; i++)
+            map.put(i, i);
+        SplayTreeMetrics metrics = map.enableMetrics();
+        map.get(50);
+        SplayTreeMetrics.Snapshot snapshot = metrics.snapshot();
+        assertEquals(1, snapshot.splays());
+        assertEquals(0, snapshot.rotations());
+        assertTrue(snapshot.maxDepth() > 1);
+    }
+
+    @Test
+    void histogramPrecision() {
+        Random random = new Random(11);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            long highest = SplayTreeMetrics.Histogram.highestValue(SplayTreeMetrics.Histogram.index(value));
+            assertTrue(highest >= value);
+            assertTrue(highest - value <= value * 0.032, value + " -> " + highest);
+        }
+        SplayTreeMetrics.Histogram histogram = new SplayTreeMetrics.Histogram();
+        for (int i = 1; i <= 10_000; i++)
+            histogram.record(i * 100L);
+        assertEquals(500_000, histogram.percentile(50), 500_000 * 0.03);
+        assertEquals(990_000, histogram.percentile(99), 990_000 * 0.03);
+        assertEquals(1_000_000, histogram.percentile(100));
+        assertEquals(500_050, histogram.mean(), 1e-6);
+    }
+
+    @Test
+    void snapshotAndReset() {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>();
+        SplayTreeMetrics metrics = map.enableMetrics();
+        map.put(1, 1);
+        map.get(1);
+        SplayTreeMetrics.Snapshot snapshot = metrics.snapshot();
+        map.get(1);
+        assertEquals(1, snapshot.count(SplayTreeMetrics.Operation.GET));
+        metrics.reset();
+        assertEquals(0, metrics.getSplays());
+        assertEquals(0, metrics.snapshot().count(SplayTreeMetrics.Operation.GET));
+        assertEquals(1, snapshot.count(SplayTreeMetrics.Operation.GET));
+    }
+
+    @Test
+    void mbean() throws Exception {
+        SplayTreeMap<Integer, Integer> map = new SplayTreeMap<>();
+        SplayTreeMetrics metrics = map.enableMetrics();
+        ObjectName name = metrics.registerMBean("org.spbstu.chernonog.project:type=SplayTreeMap,name=test");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (int i = 0; i < 10; i++)
+                map.put(i, i);
+            map.get(3);
+            assertEquals(10L, server.getAttribute(name, "PutCount"));
+            assertEquals(1L, server.getAttribute(name, "GetCount"));
+            assertEquals(metrics.getSplays(), server.getAttribute(name, "Splays"));
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "PutCount"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package org.spbstu.chernonog.project;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SplayTreeSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    private SplayTreeMap<Integer, String> randomMap(int n) {
+        SplayTreeMap<Integer, String> map = new SplayTreeMap<>();
+        Random random = new Random(31);
+        for (int i = 0; i < n; i++) {
+            int key = random.nextInt(10 * n);
+            map.put(key, "v" + key);
+        }
+        return map;
+    }
+
+    @Test
+    void writeAndLoadKeepShape() throws IOException {
+        SplayTreeMap<Integer, String> map = randomMap(10_000);
+        Integer hot = map.keySet().stream().skip(1234).findFirst().orElseThrow();
+        map.get(hot);
+        Path file = dir.resolve("map.snapshot");
+        SplayTreeSnapshot.write(map, file, SplayTreeSnapshot.Codec.integers(), SplayTreeSnapshot.Codec.strings());
+
+        SplayTreeMap<Integer, String> loaded = SplayTreeSnapshot.load(file, null,
+                SplayTreeSnapshot.Codec.integers(), SplayTreeSnapshot.Codec.strings());
+        assertEquals(hot, loaded.root.key);
+        assertEquals(map, loaded);
+        assertEquals(new ArrayList<>(map.entrySet()), new ArrayList<>(loaded.entrySet()));
+        assertEquals(map.rank(hot), loaded.rank(hot));
+        loaded.put(-1, "new");
+        assertEquals(-1, loaded.firstKey());
+    }
+
+    @Test
+    void degenerateTree() throws IOException {
+        // ascending inserts leave a chain as deep as the map is large
+        SplayTreeMap<Long, Long> map = new SplayTreeMap<>();
+        for (long i = 0; i < 200_000; i++) {
+            map.put(i, -i);
+        }
+        Path file = dir.resolve("chain.snapshot");
+        SplayTreeSnapshot.write(map, file, SplayTreeSnapshot.Codec.of(KeyCodec.longs()), SplayTreeSnapshot.Codec.longs());
+        SplayTreeMap<Long, Long> loaded = SplayTreeSnapshot.load(file, null,
+                SplayTreeSnapshot.Codec.of(KeyCodec.longs()), SplayTreeSnapshot.Codec.longs());
+        assertEquals(200_000, loaded.size());
+        assertEquals(199_999L, loaded.root.key);
+        assertEquals(-5L, loaded.get(5L));
+    }
+
+    @Test
+    void mappedLookups() throws IOException {
+        SplayTreeMap<Integer, String> map = randomMap(5000);
+        Path file = dir.resolve("map.snapshot");
+        SplayTreeSnapshot.write(map, file, SplayTreeSnapshot.Codec.integers(), SplayTreeSnapshot.Codec.strings());
+        try (MappedSplayTreeMap<Integer, String> mapped = SplayTreeSnapshot.open(file, null,
+                SplayTreeSnapshot.Codec.integers(), SplayTreeSnapshot.Codec.strings())) {
+            assertEquals(map.size(), mapped.size());
+            for (int key = -1; key < 50_001; key++) {
+                assertEquals(map.get(key), mapped.get(key));
+            }
+            assertEquals(map.firstKey(), mapped.firstKey());
+            assertEquals(map.lastKey(), mapped.lastKey());
+            assertEquals(new ArrayList<>(map.entrySet()), new ArrayList<>(mapped.entrySet()));
+            assertEquals(map, mapped.toSplayTreeMap());
+            assertThrows(UnsupportedOperationException.class, () -> mapped.put(1, "x"));
+        }
+    }
+
+    @Test
+    void emptyMapAndComparator() throws IOException {
+        Path file = dir.resolve("empty.snapshot");
+        SplayTreeSnapshot.write(new SplayTreeMap<String, Long>(Comparator.reverseOrder()), file,
+                SplayTreeSnapshot.Codec.strings(), SplayTreeSnapshot.Codec.longs());
+        SplayTreeMap<String, Long> loaded = SplayTreeSnapshot.load(file, Comparator.reverseOrder(),
+                SplayTreeSnapshot.Codec.strings(), SplayTreeSnapshot.Codec.longs());
+        assertTrue(loaded.isEmpty());
+        loaded.put("a", 1L);
+        loaded.put("b", 2L);
+        assertEquals("b", loaded.firstKey());
+        try (MappedSplayTreeMap<String, Long> mapped = SplayTreeSnapshot.open(file, Comparator.reverseOrder(),
+                SplayTreeSnapshot.Codec.strings(), SplayTreeSnapshot.Codec.longs())) {
+            assertTrue(mapped.isEmpty());
+            assertNull(mapped.get("a"));
+            assertThrows(NoSuchElementException.class, mapped::firstKey);
+        }
+    }
+
+    @Test
+    void loadedViewsStayValid() throws IOException {
+        // reads views of the mapped file instead of copying, which the contract forbids
+        SplayTreeSnapshot.Codec<ByteBuffer> views = new SplayTreeSnapshot.Codec<ByteBuffer>() {
+            @Override
+            public void write(ByteBuffer value, DataOutput out) throws IOException {
+                out.writeInt(value.remaining());
+                out.write(value.array(), value.position(), value.remaining());
+            }
+
+            @Override
+            public ByteBuffer read(ByteBuffer in) {
+                int length = in.getInt();
+                ByteBuffer view = in.slice().limit(length);
+                in.position(in.position() + length);
+                return view;
+            }
+        };
+        SplayTreeMap<Integer, ByteBuffer> map = new SplayTreeMap<>();
+        for (int i = 0; i < 1000; i++)
+            map.put(i, ByteBuffer.wrap(("v" + i).getBytes()));
+        Path file = dir.resolve("views.snapshot");
+        SplayTreeSnapshot.write(map, file, SplayTreeSnapshot.Codec.integers(), views);
+        SplayTreeMap<Integer, ByteBuffer> loaded = SplayTreeSnapshot.load(file, null,
+                SplayTreeSnapshot.Codec.integers(), views);
+        System.gc();
+        assertEquals(map, loaded);
+    }
+
+    @Test
+    void replacesAtomically() throws IOException {
+        Path file = dir.resolve("map.snapshot");
+        SplayTreeSnapshot.write(randomMap(100), file, SplayTreeSnapshot.Codec.integers(), SplayTreeSnapshot.Codec.strings());
+        SplayTreeMap<Integer, String> failing = new SplayTreeMap<>();
+        failing.put(1, "1");
+        failing.put(2, null);
+        // the value codec fails half way through, the old snapshot stays
+        assertThrows(NullPointerException.class, () -> SplayTreeSnapshot.write(failing, file,
+                SplayTreeSnapshot.Codec.integers(), SplayTreeSnapshot.Codec.strings()));
+        assertEquals(randomMap(100), SplayTreeSnapshot.load(file, null,
+                SplayTreeSnapshot.Codec.integers(), SplayTreeSnapshot.Codec.strings()));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void rejectsDamagedFiles() throws IOException {
+        Path file = dir.resolve("map.snapshot");
+        SplayTreeSnapshot.write(randomMap(100), file, SplayTreeSnapshot.Codec.integers(), SplayTreeSnapshot.Codec.strings());
+        byte[] bytes = Files.readAllBytes(file);
+
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+        assertThrows(IOException.class, () -> SplayTreeSnapshot.load(file, null,
+                SplayTreeSnapshot.Codec.integers(), SplayTreeSnapshot.Codec.strings()));
+
+        byte[] wrongMagic = bytes.clone();
+        ByteBuffer.wrap(wrongMagic).putInt(0, 42);
+        Files.write(file, wrongMagic);
+        assertThrows(IOException.class, () -> SplayTreeSnapshot.open(file, null,
+                SplayTreeSnapshot.Codec.integers(), SplayTreeSnapshot.Codec.strings()));
+
+        byte[] wrongCount = bytes.clone();
+        ByteBuffer.wrap(wrongCount).putInt(2 * Integer.BYTES, 99);
+        Files.write(file, wrongCount);
+        assertThrows(IOException.class, () -> SplayTreeSnapshot.load(file, null,
+                SplayTreeSnapshot.Codec.integers(), SplayTreeSnapshot.Codec.strings()));
+    }
+}